@@ -0,0 +1,133 @@
+package org.mellowd.compiler;
+
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.expressions.Expression;
+import org.mellowd.intermediate.executable.expressions.ReferenceResolution;
+import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.intermediate.functions.Argument;
+import org.mellowd.intermediate.functions.Parameters;
+import org.mellowd.intermediate.variables.FrameLayout;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Predicate;
+
+/**
+ * A pass that runs over compiled code before it is executed and may replace any node in it.
+ * <p>
+ * Each node is responsible for passing its own children through the pass via
+ * {@link Expression#transform(CodePass)} and {@link Statement#transform(CodePass)}, and then
+ * calling the hook that describes it, like {@link #foldIfConstant(Expression, Expression[])}
+ * for a pure expression. Every hook leaves the code as it is unless a pass overrides it.
+ */
+public abstract class CodePass {
+
+    /**
+     * Run the pass over the code of every block in {@code mellowD} that is waiting to be executed.
+     *
+     * @param mellowD the compiled song
+     */
+    public void run(MellowD mellowD) {
+        for (MellowDBlock block : mellowD.listBlocks())
+            block.transformCode(this);
+    }
+
+    public Statement transform(Statement statement) {
+        return statement.transform(this);
+    }
+
+    public <T> Expression<T> transform(Expression<T> expression) {
+        return expression.transform(this);
+    }
+
+    /**
+     * Transform the values of the {@code args} in place.
+     *
+     * @param args the arguments of a call
+     */
+    public void transformArguments(Argument<?>[] args) {
+        for (int i = 0; i < args.length; i++)
+            args[i] = transformArgument(args[i]);
+    }
+
+    private <T> Argument<T> transformArgument(Argument<T> arg) {
+        if (arg.isDeclaredNull())
+            return arg;
+
+        Expression<T> value = transform(arg.getValue());
+        return value == arg.getValue() ? arg : new Argument<>(arg.getName(), value);
+    }
+
+    /**
+     * Enter the code of a block. Each call to this is paired with a call to {@link #exitBlock()}.
+     *
+     * @param locals the layout of the block's locals
+     */
+    public void enterBlock(FrameLayout locals) { }
+
+    public void exitBlock() { }
+
+    /**
+     * Enter the body of a function. Each call to this is paired with a call to {@link #exitFunction()}.
+     *
+     * @param parameters the parameters of the function
+     * @param captured   the layout of the values captured when the function was declared
+     */
+    public void enterFunction(Parameters parameters, FrameLayout captured) { }
+
+    public void exitFunction() { }
+
+    /**
+     * Called when the code being transformed stores a value under the {@code name}.
+     *
+     * @param name the name being stored to
+     *
+     * @return the layout the name was declared in or null if the pass does not track frames
+     */
+    public FrameLayout declareLocal(QualifiedName name) {
+        return null;
+    }
+
+    /**
+     * @param reference the reference to a variable
+     *
+     * @return the expression to read the variable with
+     */
+    public Expression<Object> resolve(ReferenceResolution reference) {
+        return reference;
+    }
+
+    /**
+     * Called by a runtime check on the already transformed {@code checked} expression.
+     *
+     * @param check   the check
+     * @param checked the expression being checked
+     * @param passes  tests if a static type of the {@code checked} expression passes the check
+     * @param <T>     the type of the check
+     *
+     * @return the expression to use in place of the {@code check}
+     */
+    public <T> Expression<T> eliminateCheck(Expression<T> check, Expression<?> checked, Predicate<StaticType> passes) {
+        return check;
+    }
+
+    /**
+     * Called by a pure expression, one whose result depends on nothing but its inputs.
+     *
+     * @param expression the pure expression
+     * @param inputs     the already transformed inputs of the {@code expression}
+     * @param <T>        the type of the expression
+     *
+     * @return the expression to use in place of the {@code expression}
+     */
+    public <T> Expression<T> foldIfConstant(Expression<T> expression, Expression<?>... inputs) {
+        return foldIfConstant(expression, Arrays.asList(inputs));
+    }
+
+    /**
+     * @see #foldIfConstant(Expression, Expression[])
+     */
+    public <T> Expression<T> foldIfConstant(Expression<T> expression, Collection<? extends Expression<?>> inputs) {
+        return expression;
+    }
+}
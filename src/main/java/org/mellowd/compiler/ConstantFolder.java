@@ -0,0 +1,73 @@
+package org.mellowd.compiler;
+
+import org.mellowd.intermediate.executable.expressions.Constant;
+import org.mellowd.intermediate.executable.expressions.Expression;
+import org.mellowd.intermediate.variables.Memory;
+import org.mellowd.intermediate.variables.SymbolTable;
+import org.mellowd.midi.TimingEnvironment;
+
+import java.util.Collection;
+
+/**
+ * An optimization pass that runs over compiled code before it is executed. Any expression
+ * whose inputs are all {@link Constant}s, such as a literal melody, rhythm, chord or phrase,
+ * is evaluated once and replaced with a {@link Constant} holding the result. Without this
+ * those expressions are rebuilt every time they are executed, which in a live session means
+ * every cycle.
+ */
+public class ConstantFolder extends CodePass {
+    // The environment constants are evaluated in. Nothing is defined in its memory and it has
+    // no timing so an expression that looks at either is not constant and fails to fold.
+    private static class ConstantEnvironment implements ExecutionEnvironment {
+        private final Memory memory = new SymbolTable();
+
+        @Override
+        public boolean isPercussion() {
+            return false;
+        }
+
+        @Override
+        public Memory getMemory() {
+            return memory;
+        }
+
+        @Override
+        public TimingEnvironment getTimingEnvironment() {
+            throw new IllegalStateException("Constant expressions have no timing environment");
+        }
+    }
+
+    private final ExecutionEnvironment constantEnvironment = new ConstantEnvironment();
+    private int folded = 0;
+
+    /**
+     * Replace the {@code expression} with a constant if all of its {@code inputs} are constant.
+     */
+    @Override
+    public <T> Expression<T> foldIfConstant(Expression<T> expression, Collection<? extends Expression<?>> inputs) {
+        if (expression instanceof Constant)
+            return expression;
+
+        for (Expression<?> input : inputs)
+            if (!(input instanceof Constant))
+                return expression;
+
+        T value;
+        try {
+            value = expression.evaluate(this.constantEnvironment);
+        } catch (RuntimeException e) {
+            //Leave it to fail at runtime where the error is reported like any other
+            return expression;
+        }
+
+        this.folded++;
+        return new Constant<>(value);
+    }
+
+    /**
+     * @return the total number of nodes folded by this folder
+     */
+    public int getFoldedCount() {
+        return folded;
+    }
+}
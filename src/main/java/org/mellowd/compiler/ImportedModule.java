@@ -0,0 +1,62 @@
+package org.mellowd.compiler;
+
+import org.mellowd.intermediate.executable.expressions.Expression;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A parsed source module that may be imported by any number of songs. The parse tree
+ * is never modified after it is parsed so it can be safely shared between compilers.
+ * The compiled values of the top level definitions are filled in lazily the first time
+ * an import selects them.
+ */
+public class ImportedModule {
+    private final String name;
+    private final String contentHash;
+    private final MellowDParser.SongContext song;
+
+    private final Map<MellowDParser.AssignStmtContext, Expression<?>> definitions;
+
+    public ImportedModule(String name, String contentHash, MellowDParser.SongContext song) {
+        this.name = name;
+        this.contentHash = contentHash;
+        this.song = song;
+        this.definitions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return the dot separated import path this module was resolved from
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the hex encoded hash of the source this module was parsed from
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * @return the parse tree of the module source
+     */
+    public MellowDParser.SongContext getSong() {
+        return song;
+    }
+
+    /**
+     * Lookup the compiled value of the top level {@code definition}, compiling it
+     * with the {@code compiler} if this is the first time it has been requested.
+     *
+     * @param definition the assignment in this module's parse tree
+     * @param compiler   compiles the value expression on a cache miss
+     *
+     * @return the compiled value expression
+     */
+    public Expression<?> getDefinition(MellowDParser.AssignStmtContext definition, Supplier<Expression<?>> compiler) {
+        return this.definitions.computeIfAbsent(definition, d -> compiler.get());
+    }
+}
@@ -1,21 +1,30 @@
 package org.mellowd.compiler;
 
 import org.mellowd.intermediate.executable.CodeExecutor;
+import org.mellowd.intermediate.executable.ExecutionEngine;
+import org.mellowd.intermediate.executable.PooledExecutionEngine;
+import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.intermediate.executable.statements.SyncStatement;
 import org.mellowd.intermediate.functions.DefaultFunctions;
 import org.mellowd.intermediate.variables.AlreadyDefinedException;
+import org.mellowd.intermediate.variables.ConcurrentSymbolTable;
 import org.mellowd.intermediate.variables.Memory;
-import org.mellowd.intermediate.variables.SymbolTable;
 import org.mellowd.io.CompositeSourceFinder;
 import org.mellowd.io.SourceFinder;
 import org.mellowd.midi.*;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.Queue;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class MellowD implements ExecutionEnvironment {
     private SourceFinder srcFinder;
+    private ModuleCache moduleCache;
+    private final TypeInference typeInference;
 
     private final Memory globals;
     private final Map<String, MellowDBlock> blocks;
@@ -24,10 +33,18 @@ public class MellowD implements ExecutionEnvironment {
     private final Queue<Integer> channelsAvailable;
     private final Queue<Integer> drumChannelsAvailable;
 
+    private ExecutionEngine executionEngine;
+    private final Map<String, Long> executionTimes;
+    private final Map<String, Long> syncWaitTimes;
+    private boolean compileCode;
+    private long executionTimeoutMs;
+
     public MellowD(SourceFinder finder, TimingEnvironment timingEnvironment) {
         this.srcFinder = finder;
+        this.moduleCache = ModuleCache.getInstance();
+        this.typeInference = new TypeInference();
 
-        this.globals = new SymbolTable();
+        this.globals = new ConcurrentSymbolTable();
         this.blocks = new HashMap<>();
         this.timingEnvironment = timingEnvironment;
         addDefaultsToGlobals();
@@ -36,6 +53,13 @@ public class MellowD implements ExecutionEnvironment {
         this.channelsAvailable.addAll(GeneralMidiConstants.REGULAR_CHANNELS);
         this.drumChannelsAvailable = new LinkedList<>();
         this.drumChannelsAvailable.addAll(GeneralMidiConstants.DRUM_CHANNELS);
+
+        this.executionEngine = PooledExecutionEngine.getShared();
+        this.executionTimes = new LinkedHashMap<>();
+        this.syncWaitTimes = new LinkedHashMap<>();
+        this.compileCode = true;
+        //No limit, a long song takes as long as it takes
+        this.executionTimeoutMs = 0;
     }
 
     private void addDefaultsToGlobals() {
@@ -98,35 +122,154 @@ public class MellowD implements ExecutionEnvironment {
         this.srcFinder = new CompositeSourceFinder(this.srcFinder, finder);
     }
 
+    public ModuleCache getModuleCache() {
+        return this.moduleCache;
+    }
+
+    public void setModuleCache(ModuleCache moduleCache) {
+        this.moduleCache = moduleCache;
+    }
+
+    /**
+     * @return the types of the constants defined in this song so far
+     */
+    public TypeInference getTypeInference() {
+        return this.typeInference;
+    }
+
     @Override
     public TimingEnvironment getTimingEnvironment() {
         return timingEnvironment;
     }
 
+    public ExecutionEngine getExecutionEngine() {
+        return this.executionEngine;
+    }
+
+    public void setExecutionEngine(ExecutionEngine executionEngine) {
+        this.executionEngine = executionEngine;
+    }
+
+    public boolean isCompilingCode() {
+        return this.compileCode;
+    }
+
+    /**
+     * @param compileCode true if the code of each block should be compiled by the
+     *                    {@link StatementCompiler} before it is executed, false to
+     *                    interpret it
+     */
+    public void setCompileCode(boolean compileCode) {
+        this.compileCode = compileCode;
+    }
+
+    /**
+     * @param unit the unit to return the timeout in
+     *
+     * @return the longest {@link #execute()} waits for the blocks to finish or 0 if it waits
+     * for as long as they take
+     */
+    public long getExecutionTimeout(TimeUnit unit) {
+        return unit.convert(this.executionTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param timeout the longest {@link #execute()} waits for the blocks to finish before
+     *                cancelling them. There is no limit unless one is set, a block waiting
+     *                in a sync that can never complete will then hang the execution.
+     * @param unit    the unit of the {@code timeout}
+     */
+    public void setExecutionTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0)
+            throw new IllegalArgumentException("Execution timeout must be positive: " + timeout);
+        this.executionTimeoutMs = unit.toMillis(timeout);
+    }
+
+    /**
+     * @return the time in nanoseconds each block took to execute in the last
+     * call to {@link #execute()}
+     */
+    public Map<String, Long> getExecutionTimes() {
+        return Collections.unmodifiableMap(this.executionTimes);
+    }
+
+    /**
+     * @return the time in nanoseconds each block spent waiting for other blocks to
+     * catch up in a sync during the last call to {@link #execute()}
+     */
+    public Map<String, Long> getSyncWaitTimes() {
+        return Collections.unmodifiableMap(this.syncWaitTimes);
+    }
+
     public synchronized MIDISequence execute() throws Exception {
         MIDISequence sequence = new MIDISequence(this.timingEnvironment);
         this.blocks.values().forEach(block ->
                 block.getMIDIChannel().replaceTrack(sequence.getOrCreateTrack(block.getName())));
 
-        Queue<CodeExecutor> executors = new LinkedList<>();
-        for (MellowDBlock block : this.blocks.values()) {
-            CodeExecutor executor = block.createExecutor();
-            executors.add(executor);
-            executor.start();
-        }
+        List<CodeExecutor> executors = new ArrayList<>(this.blocks.size());
+        for (MellowDBlock block : this.blocks.values())
+            executors.add(block.createExecutor(this.compileCode));
 
+        this.executionTimes.clear();
+        this.syncWaitTimes.clear();
         try {
-            while (!executors.isEmpty()) {
-                CodeExecutor executor = executors.poll();
-                executor.join(3000L); //Wait for the thread to finish
-                if (executor.errorWhileExecuting()) {
-                    throw executor.getExecutionError();
-                }
+            List<CompletableFuture<Long>> results = this.executionEngine.executeAll(executors);
+
+            //Wait until every block is done or one of them fails, whichever comes first. A block
+            //that was cancelled because another failed should not hide the original failure.
+            CompletableFuture<Object> firstFailure = new CompletableFuture<>();
+            results.forEach(result -> result.whenComplete((time, error) -> {
+                if (error != null && !(unwrapCompletion(error) instanceof CancellationException))
+                    firstFailure.completeExceptionally(error);
+            }));
+            CompletableFuture<Object> done = CompletableFuture.anyOf(firstFailure,
+                    CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[results.size()])));
+            try {
+                if (this.executionTimeoutMs > 0)
+                    done.get(this.executionTimeoutMs, TimeUnit.MILLISECONDS);
+                else
+                    done.get();
+            } catch (TimeoutException e) {
+                executors.forEach(CodeExecutor::cancel);
+                throw new TimeoutException("Execution did not finish within " + this.executionTimeoutMs + " ms");
+            } catch (ExecutionException e) {
+                //The other blocks may be waiting in a sync with the one that failed
+                executors.forEach(CodeExecutor::cancel);
+                throw unwrapExecutionError(e.getCause());
+            } catch (InterruptedException e) {
+                executors.forEach(CodeExecutor::cancel);
+                throw e;
             }
+
+            for (int i = 0; i < executors.size(); i++)
+                this.executionTimes.put(executors.get(i).getName(), results.get(i).join());
+            for (MellowDBlock block : this.blocks.values())
+                this.syncWaitTimes.put(block.getName(), totalSyncWaitTime(block));
         } finally {
             this.blocks.values().forEach(MellowDBlock::clearCode);
         }
 
         return sequence;
     }
+
+    private static long totalSyncWaitTime(MellowDBlock block) {
+        long waitTime = 0;
+        for (Statement statement : block.getCode())
+            if (statement instanceof SyncStatement)
+                waitTime += ((SyncStatement) statement).getWaitTime();
+        return waitTime;
+    }
+
+    private static Throwable unwrapCompletion(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null)
+            error = error.getCause();
+        return error;
+    }
+
+    private static Exception unwrapExecutionError(Throwable error) {
+        error = unwrapCompletion(error);
+        if (error instanceof Error)
+            throw (Error) error;
+        return (Exception) error;
+    }
 }
@@ -3,8 +3,9 @@ package org.mellowd.compiler;
 import org.mellowd.intermediate.*;
 import org.mellowd.intermediate.executable.CodeExecutor;
 import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.intermediate.variables.FrameLayout;
 import org.mellowd.intermediate.variables.Memory;
-import org.mellowd.intermediate.variables.SymbolTable;
 import org.mellowd.midi.MIDIChannel;
 import org.mellowd.midi.TimingEnvironment;
 import org.mellowd.primitives.Beat;
@@ -15,7 +16,7 @@ import java.util.concurrent.atomic.AtomicReference;
 public class MellowDBlock implements Output, ExecutionEnvironment {
     public static final QualifiedName GLOBALS_NS = QualifiedName.ofUnqualified("this");
 
-    private final Memory blockLocals;
+    private final Frame blockLocals;
     private final String name;
     private final MIDIChannel channel;
     private final AtomicReference<Statement[]> code;
@@ -25,7 +26,7 @@ public class MellowDBlock implements Output, ExecutionEnvironment {
     private GradualDynamicChange gradualStart = null;
 
     public MellowDBlock(Memory globalMemory, String name, MIDIChannel channel) {
-        this.blockLocals = new SymbolTable(globalMemory);
+        this.blockLocals = new Frame(new FrameLayout(), globalMemory);
         this.blockLocals.setNamespace(GLOBALS_NS, globalMemory);
         this.name = name;
         this.channel = channel;
@@ -49,6 +50,19 @@ public class MellowDBlock implements Output, ExecutionEnvironment {
         return this.code.get();
     }
 
+    public void transformCode(CodePass pass) {
+        Statement[] code = this.code.get();
+        Statement[] transformed = new Statement[code.length];
+        pass.enterBlock(this.blockLocals.getLayout());
+        try {
+            for (int i = 0; i < code.length; i++)
+                transformed[i] = pass.transform(code[i]);
+        } finally {
+            pass.exitBlock();
+        }
+        this.code.compareAndSet(code, transformed);
+    }
+
     public void clearCode() {
         this.code.set(new Statement[0]);
     }
@@ -62,7 +76,20 @@ public class MellowDBlock implements Output, ExecutionEnvironment {
     }
 
     public CodeExecutor createExecutor() {
-        return new CodeExecutor(name, this, this, Arrays.asList(code.get()));
+        return createExecutor(false);
+    }
+
+    /**
+     * @param compile true if the code should be run through the {@link StatementCompiler}
+     *                rather than interpreted
+     *
+     * @return an executor for the code appended to this block
+     */
+    public CodeExecutor createExecutor(boolean compile) {
+        Statement[] code = this.code.get();
+        if (compile)
+            code = StatementCompiler.compileAll(code);
+        return new CodeExecutor(name, this, this, Arrays.asList(code));
     }
 
     public MIDIChannel getMIDIChannel() {
@@ -129,6 +156,15 @@ public class MellowDBlock implements Output, ExecutionEnvironment {
             throw new NullPointerException("Cannot put a null playable into the output");
     }
 
+    @Override
+    public void repeat(int times, Runnable iteration) {
+        //A gradual dynamic change that is waiting for its end counts the duration of each phrase
+        if (durationSinceGradualStart == null)
+            channel.repeat(times, iteration);
+        else
+            Output.super.repeat(times, iteration);
+    }
+
     @Override
     public long getStateTime() {
         return channel.getStateTime();
@@ -23,8 +23,12 @@ import org.mellowd.midi.MIDIControl;
 import org.mellowd.midi.Pedal;
 import org.mellowd.primitives.*;
 
-import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public class MellowDCompiler extends MellowDParserBaseVisitor {
@@ -53,7 +57,20 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
     private static final Constant<Articulation> ARTICULATION_STACCATO = new Constant<>(Articulation.STACCATO);
     private static final Constant<Articulation> ARTICULATION_TENUTO = new Constant<>(Articulation.TENUTO);
 
+    // Loading an import blocks on reading the source so it has its own threads
+    private static final AtomicInteger importLoaderThreadCount = new AtomicInteger();
+    private static final ExecutorService IMPORT_LOADER = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "MellowD-ImportLoader-" + importLoaderThreadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
     protected final MellowD mellowD;
+    private final List<ImportedModule> importedModules = new ArrayList<>();
+    private final TypeCheckEliminator topLevelChecks;
+    private final ConstantFolder topLevelFolder;
+    private final SlotResolver topLevelSlots;
+    private boolean copySourceText = false;
     protected final ConcatenationDelegate<Melody> melodyConcatenationDelegate = new ConcatenationDelegate<>();
     protected final ConcatenationDelegate<Chord> chordConcatenationDelegate = new ConcatenationDelegate<>();
     protected final ConcatenationDelegate<Rhythm> rhythmConcatenationDelegate = new ConcatenationDelegate<>();
@@ -64,6 +81,9 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
 
     public MellowDCompiler(MellowD mellowD) {
         this.mellowD = mellowD;
+        this.topLevelChecks = new TypeCheckEliminator(mellowD.getTypeInference());
+        this.topLevelFolder = new ConstantFolder();
+        this.topLevelSlots = new SlotResolver();
 
         this.melodyConcatenationDelegate.addDelegate(Melody.class, Melody::append);
         this.melodyConcatenationDelegate.addDelegate(Articulated.class, Melody::append);
@@ -81,6 +101,23 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
         this.rhythmParamType = Slurrable.class;
     }
 
+    /**
+     * @param copySourceText true if the code compiled should copy the source text it links
+     *                       to rather than refer back into the source. This is needed when the
+     *                       code outlives the source it was compiled from.
+     */
+    public void setCopySourceText(boolean copySourceText) {
+        this.copySourceText = copySourceText;
+    }
+
+    private SourceLink linkTo(ParserRuleContext ctx) {
+        return new SourceLink(ctx, this.copySourceText);
+    }
+
+    private SourceLink linkTo(TerminalNode node) {
+        return new SourceLink(node, this.copySourceText);
+    }
+
     @Override
     public QualifiedName visitName(MellowDParser.NameContext ctx) {
         List<TerminalNode> fullyQualifiedID = ctx.IDENTIFIER();
@@ -100,7 +137,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
 
     private <T> Expression<T> lookupName(MellowDParser.NameContext ctx, Class<T> desiredType) {
         QualifiedName identifier = visitName(ctx);
-        return new RuntimeTypeCheck<>(desiredType, new ReferenceResolution(identifier), new SourceLink(ctx));
+        return new RuntimeTypeCheck<>(desiredType, new ReferenceResolution(identifier), linkTo(ctx));
     }
 
     private Expression<Object> lookupName(MellowDParser.NameContext ctx) {
@@ -116,11 +153,11 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
         if (name != null) {
             valueExpr = lookupName(name);
             refName = visitName(name);
-            link = new SourceLink(name);
+            link = linkTo(name);
         } else {
             valueExpr = new Constant<>(Chord.resolve(getText(chordId)));
             refName = QualifiedName.ofUnqualified(getText(chordId));
-            link = new SourceLink(chordId);
+            link = linkTo(chordId);
         }
 
         valueExpr = new RuntimeNullCheck<>(refName, valueExpr, link);
@@ -141,7 +178,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
     public Expression<Integer> visitNumberOrId(MellowDParser.NumberOrIdContext ctx) {
         MellowDParser.NameContext idCtx = ctx.name();
         if (idCtx != null)
-            return new RuntimeNullCheck<>(visitName(idCtx), lookupName(idCtx, Integer.class), new SourceLink(idCtx));
+            return new RuntimeNullCheck<>(visitName(idCtx), lookupName(idCtx, Integer.class), linkTo(idCtx));
         return new Constant<>(visitNumber(ctx.number()));
     }
 
@@ -220,7 +257,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
     public Expression<Chord> visitChord(MellowDParser.ChordContext ctx) {
         MellowDParser.CallContext call = ctx.call();
         if (call != null)
-            return new RuntimeTypeCheck<>(Chord.class, visitCall(call), new SourceLink(ctx));
+            return new RuntimeTypeCheck<>(Chord.class, visitCall(call), linkTo(ctx));
 
         // Otherwise build from the params
         Concatenation<Chord> result = new Concatenation<>(Chord::new, this.chordConcatenationDelegate);
@@ -243,14 +280,14 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
             return visitChord(chord);
 
         Expression<?> valueExpr = compileIndexedNameOrChordLiteral(ctx.name(), ctx.CHORD_IDENTIFIER(), ctx.index());
-        return new RuntimeUnionTypeCheck(valueExpr, this.chordParamTypes, new SourceLink(ctx));
+        return new RuntimeUnionTypeCheck(valueExpr, this.chordParamTypes, linkTo(ctx));
     }
 
     @Override
     public Expression<Melody> visitMelody(MellowDParser.MelodyContext ctx) {
         MellowDParser.CallContext call = ctx.call();
         if (call != null)
-            return new RuntimeTypeCheck<>(Melody.class, visitCall(call), new SourceLink(ctx));
+            return new RuntimeTypeCheck<>(Melody.class, visitCall(call), linkTo(ctx));
 
         // Otherwise build from the params
         Concatenation<Melody> result = new Concatenation<>(Melody::new, this.melodyConcatenationDelegate);
@@ -285,7 +322,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
             paramExpr = compileIndexedNameOrChordLiteral(ctx.name(), ctx.CHORD_IDENTIFIER(), ctx.index());
         }
 
-        SourceLink link = new SourceLink(ctx);
+        SourceLink link = linkTo(ctx);
         if (articulation != null) {
             Expression<Articulatable> resolvedArticulatable = new RuntimeTypeCheck<>(Articulatable.class, paramExpr, link);
             resolvedArticulatable = new RuntimeNullCheck<>(QualifiedName.ofUnqualified(getText(ctx)), resolvedArticulatable, link);
@@ -313,7 +350,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
     public Expression<Rhythm> visitRhythm(MellowDParser.RhythmContext ctx) {
         MellowDParser.CallContext call = ctx.call();
         if (call != null)
-            return new RuntimeTypeCheck<>(Rhythm.class, visitCall(call), new SourceLink(ctx));
+            return new RuntimeTypeCheck<>(Rhythm.class, visitCall(call), linkTo(ctx));
 
         // Otherwise build from the params
         return buildRhythm(ctx.rhythmParam());
@@ -373,7 +410,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
         MellowDParser.NameContext identifier = ctx.name();
         Expression<?> idExpr = lookupName(identifier);
 
-        SourceLink link = new SourceLink(ctx);
+        SourceLink link = linkTo(ctx);
 
         MellowDParser.IndexContext index = ctx.index();
 
@@ -520,7 +557,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
     }
 
 
-    public Statement visitAssignStmt(MellowDParser.AssignStmtContext ctx, boolean isField) {
+    public AssignmentStatement visitAssignStmt(MellowDParser.AssignStmtContext ctx, boolean isField) {
         boolean percussionToggle = ctx.STAR() != null;
         boolean isConstant = ctx.KEYWORD_DEF() != null;
 
@@ -540,7 +577,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
 
     @Override
     public Statement visitDynamicChangeStmt(MellowDParser.DynamicChangeStmtContext ctx) {
-        SourceLink link = new SourceLink(ctx);
+        SourceLink link = linkTo(ctx);
         if (ctx.ARROWS_L() != null)
             return new ContextFreeStatement(link, new GradualDynamicChange(ctx.dynamic, true));
         else if (ctx.ARROWS_R() != null)
@@ -551,7 +588,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
 
     @Override
     public Statement visitPerformStmt(MellowDParser.PerformStmtContext ctx) {
-        SourceLink link = new SourceLink(ctx);
+        SourceLink link = linkTo(ctx);
 
         Expression<Melody> lhs;
 
@@ -636,7 +673,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
                 }
         }
 
-        return new OnceStatement(new ContextFreeStatement(new SourceLink(ctx), playable));
+        return new OnceStatement(new ContextFreeStatement(linkTo(ctx), playable));
     }
 
     @Override
@@ -667,7 +704,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
             MellowDParser.NameContext name = call.name();
 
             Expression<Closure> procedure = lookupName(name, Closure.class);
-            procedure = new RuntimeNullCheck<>(visitName(name), procedure, new SourceLink(call));
+            procedure = new RuntimeNullCheck<>(visitName(name), procedure, linkTo(call));
             Argument<?>[] arguments = visitArgumentList(call.argumentList());
 
             return new PerformProcedureStatement(procedure, arguments);
@@ -716,8 +753,12 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
             return visitPerformStmt(performStmt);
 
         MellowDParser.AssignStmtContext assignStmt = ctx.assignStmt();
-        if (assignStmt != null)
-            return visitAssignStmt(assignStmt, false);
+        if (assignStmt != null) {
+            AssignmentStatement assignment = visitAssignStmt(assignStmt, false);
+            // A local assignment may shadow a constant or parameter with the same name
+            this.mellowD.getTypeInference().markAssigned(assignment.getName());
+            return assignment;
+        }
 
         MellowDParser.IfStmtContext ifStmt = ctx.ifStmt();
         if (ifStmt != null)
@@ -736,6 +777,66 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
 
     @Override
     public Void visitImportStmt(MellowDParser.ImportStmtContext ctx) {
+        Qualifier path = compileQualifier(ctx.path);
+
+        ImportedModule module;
+        try {
+            module = this.mellowD.getModuleCache().load(this.mellowD.getSrcFinder(), path.getPath());
+        } catch (Exception e) {
+            throw new CompilationException(ctx, e);
+        }
+
+        applyImport(ctx, module);
+        return null;
+    }
+
+    // All of the `imports` are resolved and parsed concurrently. Once they are all loaded the
+    // definitions are applied in the order the imports were declared so the result is the same
+    // as visiting each import one after the other. The imports of the imported modules are
+    // never applied so they are not loaded.
+    public void visitImports(List<MellowDParser.ImportStmtContext> imports) {
+        Map<String, Future<ImportedModule>> loading = new HashMap<>();
+        ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+
+        List<Future<ImportedModule>> loads = new ArrayList<>(imports.size());
+        for (MellowDParser.ImportStmtContext ctx : imports) {
+            String[] path = compileQualifier(ctx.path).getPath();
+            loads.add(loading.computeIfAbsent(String.join(".", path), name ->
+                    IMPORT_LOADER.submit(() -> loadModule(path, contextLoader))));
+        }
+
+        for (int i = 0; i < imports.size(); i++) {
+            MellowDParser.ImportStmtContext ctx = imports.get(i);
+
+            ImportedModule module;
+            try {
+                module = loads.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompilationException(ctx, e);
+            } catch (ExecutionException e) {
+                // The cause is exactly what the load threw
+                throw new CompilationException(ctx, e.getCause());
+            }
+
+            applyImport(ctx, module);
+        }
+    }
+
+    private ImportedModule loadModule(String[] path, ClassLoader contextLoader) throws Exception {
+        // Source finders may look for resources with the context class loader of the compiling thread.
+        Thread worker = Thread.currentThread();
+        ClassLoader workerLoader = worker.getContextClassLoader();
+        worker.setContextClassLoader(contextLoader);
+
+        try {
+            return this.mellowD.getModuleCache().load(this.mellowD.getSrcFinder(), path);
+        } finally {
+            worker.setContextClassLoader(workerLoader);
+        }
+    }
+
+    private void applyImport(MellowDParser.ImportStmtContext ctx, ImportedModule module) {
         Set<QualifiedName> functions;
         if (ctx.STAR() != null)
             functions = null;
@@ -747,27 +848,19 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
         Qualifier path = compileQualifier(ctx.path);
         Qualifier as = ctx.as == null ? null : compileQualifier(ctx.as);
 
-        MellowDCompiler importCompiler = new MellowDSelectiveCompiler(this.mellowD, path, as, functions);
-
         try {
-            InputStream referencedSrc = this.mellowD.getSrcFinder().resolve(path.getPath());
-
-            CharStream inStream = CharStreams.fromStream(referencedSrc);
-            MellowDLexer lexer = new MellowDLexer(inStream);
-
-            //The parser takes the tokens from the lexer as well as the timing environment constructed
-            //from the input arguments and a track manager.
-            TokenStream tokens = new CommonTokenStream(lexer);
-            MellowDParser parser = new MellowDParser(tokens);
-
-            MellowDParser.SongContext parseResult = parser.song();
-
-            importCompiler.visitSong(parseResult);
+            MellowDCompiler importCompiler = new MellowDSelectiveCompiler(this.mellowD, module, path, as, functions);
+            importCompiler.visitSong(module.getSong());
         } catch (Exception e) {
             throw new CompilationException(ctx, e);
         }
 
-        return null;
+        this.importedModules.add(module);
+    }
+
+    // The modules applied by the imports this compiler has visited, in the order they were applied.
+    public List<ImportedModule> getImportedModules() {
+        return Collections.unmodifiableList(this.importedModules);
     }
 
     @Override
@@ -779,7 +872,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
             if (block == null) {
                 throw new CompilationException(id, new UndefinedReferenceException(QualifiedName.ofUnqualified(getText(id))));
             }
-            blocksReferenced.put(block, new SourceLink(id));
+            blocksReferenced.put(block, linkTo(id));
         });
 
 
@@ -902,7 +995,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
         if (type != null) {
             if (optional) {
                 if (defaultValueExpr != null)
-                    return Parameter.newParameterWithDefault(name, type, new RuntimeTypeCheck<>(type, defaultValueExpr, new SourceLink(exprCtx)));
+                    return Parameter.newParameterWithDefault(name, type, new RuntimeTypeCheck<>(type, defaultValueExpr, linkTo(exprCtx)));
                 else
                     return Parameter.newOptionalParameter(name, type);
             } else {
@@ -994,13 +1087,21 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
     public Void visitTopLevelStmt(MellowDParser.TopLevelStmtContext ctx) {
         MellowDParser.AssignStmtContext assignStmt = ctx.assignStmt();
         if (assignStmt != null) {
-            visitAssignStmt(assignStmt, true).execute(this.mellowD, NullOutput.getInstance());
+            AssignmentStatement assignment = visitAssignStmt(assignStmt, true);
+            // Resolves the variables in the bodies of functions declared at the top level
+            this.topLevelChecks.transform(assignment);
+            this.topLevelFolder.transform(assignment);
+            this.topLevelSlots.transform(assignment);
+            assignment.execute(this.mellowD, NullOutput.getInstance());
+            declareIfConstant(assignment);
             return null;
         }
 
         MellowDParser.DoStmtContext doStmt = ctx.doStmt();
         if (doStmt != null) {
-            visitDoStmt(doStmt).execute(this.mellowD, NullOutput.getInstance());
+            Statement statement = this.topLevelChecks.transform(visitDoStmt(doStmt));
+            statement = this.topLevelFolder.transform(statement);
+            this.topLevelSlots.transform(statement).execute(this.mellowD, NullOutput.getInstance());
             return null;
         }
 
@@ -1010,6 +1111,14 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
         return null;
     }
 
+    // Constants can never change so the type of their value is known wherever they are referenced
+    protected void declareIfConstant(AssignmentStatement assignment) {
+        if (!assignment.isFinal()) return;
+
+        TypeInference types = this.mellowD.getTypeInference();
+        types.declareConstant(assignment.getName(), assignment.getValue().inferType(types));
+    }
+
     @Override
     public Void visitSong(MellowDParser.SongContext ctx) {
         ctx.blockDeclStmt().forEach(this::visitBlockDeclStmt);
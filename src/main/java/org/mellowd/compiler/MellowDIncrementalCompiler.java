@@ -0,0 +1,204 @@
+package org.mellowd.compiler;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.mellowd.intermediate.QualifiedName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A compiler for songs that are submitted repeatedly, such as the cells of a live
+ * performance. Each block is fingerprinted and a block is only recompiled when its
+ * fingerprint differs from the last time it was compiled. Blocks that were not recompiled
+ * have no code appended to them so whatever is already running them can be left alone.
+ * <p>
+ * The fingerprint of a block covers the tokens of its declaration and of every {@code block}
+ * statement that references it along with the definition of every name those statements
+ * read. A top level definition is in turn identified by its tokens and the definitions of
+ * the names it reads, so changing a definition changes the fingerprint of every block that
+ * depends on it, even through a function or a constant whose type was inferred from it.
+ * Names that were never defined at the top level, such as those that were imported, are
+ * identified by the imports applied so far and the source of the imported modules. Anything
+ * after a {@code do} statement depends on it as it may change any value.
+ * <p>
+ * Blocks that are synchronized with each other are always recompiled together as their
+ * {@link org.mellowd.intermediate.SyncLink} is created when they are compiled.
+ */
+public class MellowDIncrementalCompiler extends MellowDCompiler {
+    private final Map<String, String> fingerprints;
+    // The fingerprint of the statement that last defined each top level name
+    private final Map<QualifiedName, String> definitions;
+    // The fingerprint of each import statement mapped to the hash of the module it applied
+    private final Map<String, String> imports;
+    private Set<String> recompiled;
+
+    public MellowDIncrementalCompiler(MellowD mellowD) {
+        super(mellowD);
+        this.fingerprints = new HashMap<>();
+        this.definitions = new HashMap<>();
+        this.imports = new TreeMap<>();
+        this.recompiled = Collections.emptySet();
+    }
+
+    /**
+     * @return the names of the blocks that were recompiled by the last {@link #visitSong(MellowDParser.SongContext)}
+     */
+    public Set<String> getRecompiledBlocks() {
+        return Collections.unmodifiableSet(this.recompiled);
+    }
+
+    /**
+     * Forget the fingerprint of the block with the given {@code name} so that it is
+     * recompiled the next time it appears.
+     *
+     * @param name the name of the block
+     */
+    public void invalidate(String name) {
+        this.fingerprints.remove(name);
+    }
+
+    @Override
+    public void visitImports(List<MellowDParser.ImportStmtContext> imports) {
+        super.visitImports(imports);
+
+        //The modules of these imports are the last ones applied
+        List<ImportedModule> modules = this.getImportedModules();
+        modules = modules.subList(modules.size() - imports.size(), modules.size());
+        for (int i = 0; i < imports.size(); i++)
+            this.imports.put(fingerprint(imports.get(i)), modules.get(i).getContentHash());
+    }
+
+    @Override
+    public Void visitSong(MellowDParser.SongContext ctx) {
+        String importsFingerprint = hash(this.imports.toString());
+
+        Map<String, StringBuilder> sources = new LinkedHashMap<>();
+        for (MellowDParser.BlockDeclStmtContext declCtx : ctx.blockDeclStmt()) {
+            String declaration = fingerprint(declCtx);
+            for (TerminalNode id : declCtx.IDENTIFIER())
+                sources.computeIfAbsent(id.getText(), name -> new StringBuilder()).append(declaration).append('\n');
+        }
+
+        //The definitions are followed in order, as they will be executed, so each block statement
+        //sees the definitions made before it
+        Map<QualifiedName, String> nextDefinitions = new HashMap<>(this.definitions);
+        List<MellowDParser.BlockContext> blockCtxs = new ArrayList<>();
+        String preamble = "";
+        for (MellowDParser.TopLevelStmtContext stmt : ctx.topLevelStmt()) {
+            if (stmt.assignStmt() != null) {
+                MellowDParser.AssignStmtContext assignCtx = stmt.assignStmt();
+                //The name being defined is left out, a definition only depends on its old value if the value reads it
+                String definition = hash(preamble + fingerprint(assignCtx)
+                        + dependencies(assignCtx.expr(), nextDefinitions, importsFingerprint));
+                nextDefinitions.put(this.visitName(assignCtx.name()), definition);
+            } else if (stmt.doStmt() != null) {
+                preamble = hash(preamble + fingerprint(stmt.doStmt())
+                        + dependencies(stmt.doStmt(), nextDefinitions, importsFingerprint));
+            } else {
+                MellowDParser.BlockContext blockCtx = stmt.block();
+                blockCtxs.add(blockCtx);
+                String source = preamble + fingerprint(blockCtx)
+                        + dependencies(blockCtx, nextDefinitions, importsFingerprint);
+                for (TerminalNode id : blockCtx.IDENTIFIER())
+                    sources.computeIfAbsent(id.getText(), name -> new StringBuilder()).append(source).append('\n');
+            }
+        }
+
+        Map<String, String> nextFingerprints = new HashMap<>();
+        Set<String> changed = new HashSet<>();
+        sources.forEach((name, source) -> {
+            String fingerprint = hash(source.toString());
+            nextFingerprints.put(name, fingerprint);
+            if (!fingerprint.equals(this.fingerprints.get(name)))
+                changed.add(name);
+        });
+
+        //Blocks that share a block statement share a sync link so if one of them changed
+        //they all need to be recompiled.
+        boolean grew;
+        do {
+            grew = false;
+            for (MellowDParser.BlockContext blockCtx : blockCtxs) {
+                List<TerminalNode> ids = blockCtx.IDENTIFIER();
+                if (ids.size() > 1 && ids.stream().anyMatch(id -> changed.contains(id.getText())))
+                    for (TerminalNode id : ids)
+                        grew |= changed.add(id.getText());
+            }
+        } while (grew);
+
+        this.recompiled = changed;
+        super.visitSong(ctx);
+
+        //Only remember the new fingerprints once everything compiled
+        this.fingerprints.putAll(nextFingerprints);
+        this.definitions.putAll(nextDefinitions);
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(MellowDParser.BlockContext ctx) {
+        for (TerminalNode id : ctx.IDENTIFIER())
+            if (this.recompiled.contains(id.getText()))
+                return super.visitBlock(ctx);
+
+        return null;
+    }
+
+    // The definitions of the names read in the ctx. A name without a top level definition
+    // may have been imported.
+    private String dependencies(ParserRuleContext ctx, Map<QualifiedName, String> definitions, String importsFingerprint) {
+        Set<QualifiedName> names = new TreeSet<>(Comparator.comparing(QualifiedName::toString));
+        collectNames(ctx, names);
+
+        StringBuilder dependencies = new StringBuilder();
+        for (QualifiedName name : names)
+            dependencies.append(name).append('=')
+                    .append(definitions.getOrDefault(name, importsFingerprint)).append('\n');
+        return dependencies.toString();
+    }
+
+    private void collectNames(ParseTree tree, Set<QualifiedName> names) {
+        if (tree instanceof MellowDParser.NameContext) {
+            names.add(this.visitName((MellowDParser.NameContext) tree));
+            return;
+        }
+
+        for (int i = 0; i < tree.getChildCount(); i++)
+            collectNames(tree.getChild(i), names);
+    }
+
+    /**
+     * Fingerprint the tokens in a tree. Each token is written with its type and length so
+     * tokens that run together, such as {@code a b} and {@code ab}, are told apart. Hidden
+     * tokens are not in the tree so formatting and comments do not change the fingerprint.
+     *
+     * @param tree the tree to fingerprint
+     *
+     * @return the hex encoded hash of the tokens
+     */
+    private static String fingerprint(ParseTree tree) {
+        StringBuilder tokens = new StringBuilder();
+        appendTokens(tree, tokens);
+        return hash(tokens.toString());
+    }
+
+    private static void appendTokens(ParseTree tree, StringBuilder tokens) {
+        if (tree instanceof TerminalNode) {
+            String text = tree.getText();
+            tokens.append(((TerminalNode) tree).getSymbol().getType())
+                    .append(' ').append(text.length())
+                    .append(':').append(text)
+                    .append('\n');
+            return;
+        }
+
+        for (int i = 0; i < tree.getChildCount(); i++)
+            appendTokens(tree.getChild(i), tokens);
+    }
+
+    private static String hash(String source) {
+        return ModuleCache.contentHash(source.getBytes(StandardCharsets.UTF_8));
+    }
+}
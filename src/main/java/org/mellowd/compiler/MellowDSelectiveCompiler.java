@@ -3,10 +3,13 @@ package org.mellowd.compiler;
 import org.mellowd.intermediate.NullOutput;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.Qualifier;
+import org.mellowd.intermediate.executable.expressions.Expression;
+import org.mellowd.intermediate.executable.statements.AssignmentStatement;
 
 import java.util.Set;
 
 public class MellowDSelectiveCompiler extends MellowDCompiler {
+    private final ImportedModule module;
     private final Qualifier from;
     private final Qualifier as;
     private final Set<QualifiedName> includedNames;
@@ -16,12 +19,14 @@ public class MellowDSelectiveCompiler extends MellowDCompiler {
      * {@code from} (their module name).
      *
      * @param mellowD
+     * @param module
      * @param from
      * @param as
      * @param includedNames
      */
-    public MellowDSelectiveCompiler(MellowD mellowD, Qualifier from, Qualifier as, Set<QualifiedName> includedNames) {
+    public MellowDSelectiveCompiler(MellowD mellowD, ImportedModule module, Qualifier from, Qualifier as, Set<QualifiedName> includedNames) {
         super(mellowD);
+        this.module = module;
         this.from = from;
         this.as = as;
         this.includedNames = includedNames;
@@ -33,12 +38,17 @@ public class MellowDSelectiveCompiler extends MellowDCompiler {
         if (assignStmt != null) {
             QualifiedName name = super.visitName(assignStmt.name());
             if (this.includedNames == null || this.includedNames.contains(name)) {
-                if (this.as != null)
-                    assignStmt.id = this.as.qualify(name);
-                else
-                    assignStmt.id = this.from.qualify(name);
+                QualifiedName qualifiedName = this.as != null
+                        ? this.as.qualify(name)
+                        : this.from.qualify(name);
 
-                visitAssignStmt(assignStmt, true).execute(super.mellowD, NullOutput.getInstance());
+                // The module's parse tree is shared so the compiled value is kept with the module
+                // rather than annotating the tree with the qualified name.
+                Expression<?> value = this.module.getDefinition(assignStmt, () -> visitExpr(assignStmt.expr()));
+                AssignmentStatement assignment = new AssignmentStatement(qualifiedName, value,
+                        assignStmt.KEYWORD_DEF() != null, true, assignStmt.STAR() != null);
+                assignment.execute(super.mellowD, NullOutput.getInstance());
+                declareIfConstant(assignment);
             }
 
             return null;
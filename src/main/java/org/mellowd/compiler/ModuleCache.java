@@ -0,0 +1,191 @@
+package org.mellowd.compiler;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.mellowd.io.SourceFinder;
+import org.mellowd.io.SourceResolutionException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A content addressed cache of {@link ImportedModule}s. Modules are keyed by their import
+ * path and a hash of their source so a repeated import of an unchanged file only costs
+ * reading and hashing the source rather than a full lex and parse. When the cache is full
+ * the least recently imported module is evicted.
+ */
+public class ModuleCache {
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static ModuleCache instance;
+
+    /**
+     * @return the cache shared by all {@link MellowD} instances that were not given their own
+     */
+    public static synchronized ModuleCache getInstance() {
+        if (instance == null)
+            instance = new ModuleCache(DEFAULT_CAPACITY);
+        return instance;
+    }
+
+    private final int capacity;
+    private final Map<String, ImportedModule> modules;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    public ModuleCache(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Module cache capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        // Access ordered so that iteration starts at the least recently used module.
+        this.modules = new LinkedHashMap<String, ImportedModule>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ImportedModule> eldest) {
+                return size() > ModuleCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Resolve the source at the {@code importPath} and load the module it describes. If
+     * an identical source has already been loaded from the same path the parsed module is
+     * reused.
+     *
+     * @param finder     the finder to resolve the source with
+     * @param importPath the import path split at the dots
+     *
+     * @return the loaded module
+     *
+     * @throws SourceResolutionException if the {@code finder} cannot resolve the path
+     * @throws IOException               if the source cannot be read
+     */
+    public ImportedModule load(SourceFinder finder, String[] importPath) throws SourceResolutionException, IOException {
+        String name = String.join(".", importPath);
+
+        // Some finders modify the path they are given so pass them a copy.
+        byte[] source;
+        try (InputStream in = finder.resolve(importPath.clone())) {
+            source = readFully(in);
+        }
+
+        String hash = contentHash(source);
+        String key = name + '#' + hash;
+
+        synchronized (this) {
+            ImportedModule module = this.modules.get(key);
+            if (module != null) {
+                this.hits++;
+                return module;
+            }
+            this.misses++;
+        }
+
+        CharStream inStream = CharStreams.fromStream(new ByteArrayInputStream(source));
+        SongParser.Result parsed = SongParser.getInstance().parse(inStream, null);
+
+        ImportedModule module = new ImportedModule(name, hash, parsed.getTree());
+
+        // A tree recovered from syntax errors is still usable but is not worth keeping.
+        if (parsed.getNumberOfSyntaxErrors() > 0)
+            return module;
+
+        synchronized (this) {
+            // Another thread may have parsed the same module in the mean time, prefer the first.
+            ImportedModule existing = this.modules.putIfAbsent(key, module);
+            return existing != null ? existing : module;
+        }
+    }
+
+    public synchronized void clear() {
+        this.modules.clear();
+    }
+
+    public synchronized int size() {
+        return this.modules.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+            out.write(buffer, 0, read);
+        return out.toByteArray();
+    }
+
+    /**
+     * Hash the given {@code source} in the same way that modules are keyed.
+     *
+     * @param source the raw bytes of the source
+     *
+     * @return the hex encoded hash of the source
+     */
+    public static String contentHash(byte[] source) {
+        return contentHash(ByteBuffer.wrap(source));
+    }
+
+    /**
+     * Hash the remaining bytes in the {@code source} in the same way that modules are keyed.
+     *
+     * @param source the raw bytes of the source
+     *
+     * @return the hex encoded hash of the source
+     */
+    public static String contentHash(ByteBuffer source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every java platform is required to support SHA-256
+            throw new AssertionError(e);
+        }
+
+        digest.update(source);
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Resolve the source at the {@code importPath} and hash it without parsing it.
+     *
+     * @param finder     the finder to resolve the source with
+     * @param importPath the import path split at the dots
+     *
+     * @return the hex encoded hash of the source
+     *
+     * @throws SourceResolutionException if the {@code finder} cannot resolve the path
+     * @throws IOException               if the source cannot be read
+     */
+    public static String contentHash(SourceFinder finder, String[] importPath) throws SourceResolutionException, IOException {
+        try (InputStream in = finder.resolve(importPath.clone())) {
+            return contentHash(readFully(in));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.mellowd.compiler;
+
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.expressions.Expression;
+import org.mellowd.intermediate.executable.expressions.ReferenceResolution;
+import org.mellowd.intermediate.executable.expressions.SlotReference;
+import org.mellowd.intermediate.functions.Parameters;
+import org.mellowd.intermediate.variables.FrameLayout;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pass that resolves unqualified names to the {@link org.mellowd.intermediate.variables.Frame frame}
+ * and slot their value will be stored in at runtime. The resolver tracks the chain of
+ * {@link FrameLayout}s that the code being compiled will execute in, innermost first. A
+ * block runs in its locals, and a function body runs in a frame for its parameters and
+ * locals whose parent is the frame of values it captured.
+ * <p>
+ * Qualified names and names that are not in any frame of the chain, like the song's globals,
+ * are still looked up by name.
+ */
+public class SlotResolver extends CodePass {
+    private final Deque<FrameLayout[]> chains;
+
+    public SlotResolver() {
+        this.chains = new ArrayDeque<>();
+    }
+
+    @Override
+    public void enterBlock(FrameLayout locals) {
+        this.chains.push(new FrameLayout[]{ locals });
+    }
+
+    @Override
+    public void exitBlock() {
+        this.chains.pop();
+    }
+
+    /**
+     * Enter the body of a function. The body runs in a frame with the layout of the
+     * {@code parameters} whose parent has the {@code captured} layout.
+     */
+    @Override
+    public void enterFunction(Parameters parameters, FrameLayout captured) {
+        this.chains.push(new FrameLayout[]{ parameters.getLayout(), captured });
+    }
+
+    @Override
+    public void exitFunction() {
+        this.chains.pop();
+    }
+
+    /**
+     * Declare that the code being compiled stores a value under the {@code name} in its
+     * innermost frame.
+     *
+     * @param name the name being stored to
+     *
+     * @return the layout the name was declared in or null if the code does not run in a frame
+     */
+    @Override
+    public FrameLayout declareLocal(QualifiedName name) {
+        FrameLayout[] chain = this.chains.peek();
+        if (chain == null || !name.isUnqualified())
+            return null;
+
+        chain[0].define(name.getName());
+        return chain[0];
+    }
+
+    /**
+     * @param reference the reference to a name
+     *
+     * @return a reference to the name's slot or the {@code reference} if it must be looked up by name
+     */
+    @Override
+    public Expression<Object> resolve(ReferenceResolution reference) {
+        FrameLayout[] chain = this.chains.peek();
+        if (chain == null || !reference.getName().isUnqualified())
+            return reference;
+
+        return new SlotReference(reference.getName(), chain);
+    }
+}
@@ -0,0 +1,173 @@
+package org.mellowd.compiler;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the parse tree for a song in two stages. The first stage uses the much faster
+ * {@link PredictionMode#SLL SLL} prediction and bails out on the first syntax error. SLL
+ * is able to parse almost every valid input so the second stage, a full
+ * {@link PredictionMode#LL LL} parse with the default error recovery and reporting, only
+ * runs if the input really is invalid or if SLL could not decide on an alternative.
+ * <p>
+ * The parser keeps running totals of the work it has done which can be inspected to see how
+ * often the fallback was required.
+ */
+public class SongParser {
+    private static SongParser instance;
+
+    /**
+     * @return the parser shared by the compiler, the live session, the kernel and imports
+     */
+    public static synchronized SongParser getInstance() {
+        if (instance == null)
+            instance = new SongParser();
+        return instance;
+    }
+
+    /**
+     * The outcome of a single {@link #parse(CharStream, ANTLRErrorListener)}.
+     */
+    public static class Result {
+        private final MellowDParser.SongContext tree;
+        private final int syntaxErrors;
+        private final boolean fallback;
+        private final long sllTime;
+        private final long llTime;
+
+        private Result(MellowDParser.SongContext tree, int syntaxErrors, boolean fallback, long sllTime, long llTime) {
+            this.tree = tree;
+            this.syntaxErrors = syntaxErrors;
+            this.fallback = fallback;
+            this.sllTime = sllTime;
+            this.llTime = llTime;
+        }
+
+        public MellowDParser.SongContext getTree() {
+            return tree;
+        }
+
+        /**
+         * @return the number of syntax errors reported by the parser. Lexer errors are only
+         * reported to the error listener.
+         */
+        public int getNumberOfSyntaxErrors() {
+            return syntaxErrors;
+        }
+
+        /**
+         * @return true if the SLL stage failed and the input was parsed again with LL prediction
+         */
+        public boolean isFallback() {
+            return fallback;
+        }
+
+        /**
+         * @return the time in nanoseconds spent in the SLL stage
+         */
+        public long getSllTime() {
+            return sllTime;
+        }
+
+        /**
+         * @return the time in nanoseconds spent in the LL stage, 0 if it did not run
+         */
+        public long getLlTime() {
+            return llTime;
+        }
+    }
+
+    private final AtomicLong parses = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong totalSllTime = new AtomicLong();
+    private final AtomicLong totalLlTime = new AtomicLong();
+
+    /**
+     * Parse the song in the {@code input}.
+     *
+     * @param input         the source to parse
+     * @param errorListener the listener to report lexer and parser errors to. If {@code null}
+     *                      the default ANTLR listeners are used.
+     *
+     * @return the result of the parse
+     */
+    public Result parse(CharStream input, ANTLRErrorListener errorListener) {
+        MellowDLexer lexer = new MellowDLexer(input);
+        if (errorListener != null) {
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(errorListener);
+        }
+
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        MellowDParser parser = new MellowDParser(tokens);
+
+        //Stage 1: SLL prediction, bailing out on the first error without reporting it.
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+
+        long sllStart = System.nanoTime();
+        MellowDParser.SongContext tree = null;
+        try {
+            tree = parser.song();
+        } catch (ParseCancellationException e) {
+            //Fall through to the LL stage
+        }
+        long sllTime = System.nanoTime() - sllStart;
+        this.parses.incrementAndGet();
+        this.totalSllTime.addAndGet(sllTime);
+
+        if (tree != null)
+            return new Result(tree, 0, false, sllTime, 0L);
+
+        //Stage 2: full LL prediction with the regular error recovery. The tokens lexed
+        //in the first stage are reused.
+        tokens.seek(0);
+        parser.reset();
+        if (errorListener != null)
+            parser.addErrorListener(errorListener);
+        else
+            parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+        parser.setErrorHandler(new DefaultErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+
+        long llStart = System.nanoTime();
+        tree = parser.song();
+        long llTime = System.nanoTime() - llStart;
+        this.fallbacks.incrementAndGet();
+        this.totalLlTime.addAndGet(llTime);
+
+        return new Result(tree, parser.getNumberOfSyntaxErrors(), true, sllTime, llTime);
+    }
+
+    /**
+     * @return the number of songs parsed
+     */
+    public long getParseCount() {
+        return parses.get();
+    }
+
+    /**
+     * @return the number of parses that had to fall back to LL prediction
+     */
+    public long getFallbackCount() {
+        return fallbacks.get();
+    }
+
+    /**
+     * @return the total time in nanoseconds spent in the SLL stage
+     */
+    public long getTotalSllTime() {
+        return totalSllTime.get();
+    }
+
+    /**
+     * @return the total time in nanoseconds spent in the LL stage
+     */
+    public long getTotalLlTime() {
+        return totalLlTime.get();
+    }
+}
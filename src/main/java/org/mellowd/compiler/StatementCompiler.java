@@ -0,0 +1,195 @@
+package org.mellowd.compiler;
+
+import org.mellowd.intermediate.Output;
+import org.mellowd.intermediate.Playable;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.expressions.Constant;
+import org.mellowd.intermediate.executable.expressions.Expression;
+import org.mellowd.intermediate.executable.statements.*;
+import org.mellowd.intermediate.variables.Memory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/**
+ * A backend that compiles the control flow of a statement tree into a single {@link MethodHandle}
+ * chain that is built once and then run every time the code is executed. Statement lists,
+ * repeats, ifs and play statements become handle combinators with their children bound in as
+ * constants. Once a chain has been invoked enough times the JVM customizes it to that
+ * particular handle and can inline through the whole chain, where the interpreter makes a
+ * megamorphic {@link Statement#execute(ExecutionEnvironment, Output)} call at every node.
+ * <p>
+ * Any node the compiler does not know is bound in as a call to its own {@code execute} or
+ * {@code evaluate} so the interpreter remains the fallback for the rest of the tree.
+ * {@link SyncStatement}s are never compiled as an
+ * {@link org.mellowd.intermediate.executable.ExecutionEngine} may need to find them.
+ */
+public class StatementCompiler {
+    private static final MethodType STATEMENT_TYPE = MethodType.methodType(void.class, ExecutionEnvironment.class, Output.class);
+    private static final MethodType EXPRESSION_TYPE = MethodType.methodType(Object.class, ExecutionEnvironment.class);
+
+    private static final MethodHandle EXECUTE;
+    private static final MethodHandle EVALUATE;
+    private static final MethodHandle PUT;
+    private static final MethodHandle BOOLEAN_VALUE;
+    private static final MethodHandle REPEAT;
+    private static final MethodHandle NO_OP;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            EXECUTE = lookup.findVirtual(Statement.class, "execute", STATEMENT_TYPE);
+            EVALUATE = lookup.findVirtual(Expression.class, "evaluate", EXPRESSION_TYPE);
+            PUT = lookup.findVirtual(Output.class, "put", MethodType.methodType(void.class, Playable.class));
+            BOOLEAN_VALUE = lookup.findVirtual(Boolean.class, "booleanValue", MethodType.methodType(boolean.class));
+            REPEAT = lookup.findStatic(StatementCompiler.class, "repeat",
+                    MethodType.methodType(void.class, Expression.class, MethodHandle.class, ExecutionEnvironment.class, Output.class));
+            NO_OP = MethodHandles.dropArguments(MethodHandles.constant(Object.class, null).asType(MethodType.methodType(void.class)),
+                    0, ExecutionEnvironment.class, Output.class);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private StatementCompiler() { }
+
+    /**
+     * Compile each of the statements in the {@code code}.
+     *
+     * @param code the code to compile
+     *
+     * @return a new array with the compiled code
+     */
+    public static Statement[] compileAll(Statement[] code) {
+        Statement[] compiled = new Statement[code.length];
+        for (int i = 0; i < code.length; i++)
+            compiled[i] = compile(code[i]);
+        return compiled;
+    }
+
+    /**
+     * Compile the {@code statement} into a {@link CompiledStatement}. If there is nothing to
+     * gain from compiling it the statement is returned as is.
+     *
+     * @param statement the statement to compile
+     *
+     * @return the statement to execute in place of {@code statement}
+     */
+    public static Statement compile(Statement statement) {
+        if (statement instanceof CompiledStatement || statement instanceof SyncStatement)
+            return statement;
+        if (!(statement instanceof StatementList || statement instanceof IfStatement))
+            return statement;
+
+        return new CompiledStatement(statement, compileHandle(statement));
+    }
+
+    private static MethodHandle compileHandle(Statement statement) {
+        if (statement instanceof EmptyStatement)
+            return NO_OP;
+        if (statement instanceof CompiledStatement)
+            return compileHandle(((CompiledStatement) statement).getSource());
+
+        //Only exact types are compiled, a subclass may have changed how it executes
+        Class<?> type = statement.getClass();
+        //An invariant repeat is left to the interpreter which copies the events it plays
+        if (type == RepeatedStatementList.class && !((RepeatedStatementList) statement).isInvariant())
+            return compileRepeat((RepeatedStatementList) statement);
+        if (type == StatementList.class)
+            return compileSequence(((StatementList) statement).getStatements());
+        if (type == IfStatement.class)
+            return compileIf((IfStatement) statement);
+        if (type == PlayPhraseStatement.class)
+            return compilePlay((PlayPhraseStatement) statement);
+
+        return EXECUTE.bindTo(statement);
+    }
+
+    private static MethodHandle compileSequence(List<Statement> statements) {
+        if (statements.isEmpty())
+            return NO_OP;
+
+        MethodHandle[] handles = new MethodHandle[statements.size()];
+        for (int i = 0; i < handles.length; i++)
+            handles[i] = compileHandle(statements.get(i));
+
+        return sequence(handles, 0, handles.length);
+    }
+
+    //Split the sequence in half rather than chaining it so long lists don't build deep chains
+    private static MethodHandle sequence(MethodHandle[] handles, int from, int to) {
+        if (to - from == 1)
+            return handles[from];
+
+        int mid = (from + to) >>> 1;
+        return MethodHandles.foldArguments(sequence(handles, mid, to), sequence(handles, from, mid));
+    }
+
+    private static MethodHandle compileRepeat(RepeatedStatementList repeat) {
+        MethodHandle body = compileSequence(repeat.getStatements());
+        return MethodHandles.insertArguments(REPEAT, 0, repeat.getRepetitions(), body);
+    }
+
+    //The same as RepeatedStatementList#execute with the body replaced by a handle
+    private static void repeat(Expression<Number> repetitions, MethodHandle body, ExecutionEnvironment environment, Output output) throws Throwable {
+        int count = repetitions.evaluate(environment).intValue();
+        Memory memory = environment.getMemory();
+        QualifiedName counter = RepeatedStatementList.IMPLICIT_LOOP_COUNTER_ID;
+        Object old = memory.get(counter);
+
+        for (int i = 0; i < count; i++) {
+            memory.set(counter, i);
+            body.invokeExact(environment, output);
+        }
+
+        memory.set(counter, old);
+    }
+
+    private static MethodHandle compileIf(IfStatement statement) {
+        MethodHandle handle = compileHandle(statement.getElseStatement());
+
+        //Build the chain from the last branch so that the first condition is tested first
+        for (int i = statement.getBranchCount() - 1; i >= 0; i--) {
+            Expression<Boolean> condition = statement.getCondition(i);
+            MethodHandle branch = compileHandle(statement.getBranch(i));
+
+            if (condition instanceof Constant && ((Constant<Boolean>) condition).getValue() != null) {
+                handle = ((Constant<Boolean>) condition).getValue() ? branch : handle;
+            } else {
+                MethodHandle test = MethodHandles.filterReturnValue(
+                        compileExpression(condition).asType(MethodType.methodType(Boolean.class, ExecutionEnvironment.class)),
+                        BOOLEAN_VALUE);
+                handle = MethodHandles.guardWithTest(test, branch, handle);
+            }
+        }
+
+        return handle;
+    }
+
+    private static MethodHandle compilePlay(PlayPhraseStatement statement) {
+        Expression<?> toPlay = statement.getToPlay();
+
+        if (toPlay instanceof Constant) {
+            //(Output)void
+            MethodHandle put = MethodHandles.insertArguments(PUT, 1, ((Constant<?>) toPlay).getValue());
+            return MethodHandles.dropArguments(put, 0, ExecutionEnvironment.class);
+        }
+
+        //(Output, ExecutionEnvironment)void
+        MethodHandle put = MethodHandles.filterArguments(PUT, 1,
+                compileExpression(toPlay).asType(MethodType.methodType(Playable.class, ExecutionEnvironment.class)));
+        return MethodHandles.permuteArguments(put, STATEMENT_TYPE, 1, 0);
+    }
+
+    // (ExecutionEnvironment)Object
+    private static MethodHandle compileExpression(Expression<?> expression) {
+        if (expression instanceof Constant)
+            return MethodHandles.dropArguments(
+                    MethodHandles.constant(Object.class, ((Constant<?>) expression).getValue()),
+                    0, ExecutionEnvironment.class);
+
+        return EVALUATE.bindTo(expression);
+    }
+}
@@ -0,0 +1,52 @@
+package org.mellowd.compiler;
+
+/**
+ * What is known about the value of an expression before it is evaluated. The value is
+ * always an instance of the {@link #getType() type}, or {@code null} if it is
+ * {@link #isNullable() nullable}.
+ */
+public final class StaticType {
+    public static final StaticType UNKNOWN = new StaticType(Object.class, true);
+
+    public static StaticType of(Class<?> type) {
+        return new StaticType(type, false);
+    }
+
+    public static StaticType nullable(Class<?> type) {
+        return new StaticType(type, true);
+    }
+
+    private final Class<?> type;
+    private final boolean nullable;
+
+    private StaticType(Class<?> type, boolean nullable) {
+        this.type = type;
+        this.nullable = nullable;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    /**
+     * @param type the type to check against
+     *
+     * @return true if every non-null value of this type is an instance of the given {@code type}
+     */
+    public boolean isAssignableTo(Class<?> type) {
+        return type.isAssignableFrom(this.type);
+    }
+
+    public StaticType nonNull() {
+        return this.nullable ? new StaticType(this.type, false) : this;
+    }
+
+    @Override
+    public String toString() {
+        return this.type.getSimpleName() + (this.nullable ? "?" : "");
+    }
+}
@@ -0,0 +1,56 @@
+package org.mellowd.compiler;
+
+import org.mellowd.intermediate.executable.expressions.Expression;
+import org.mellowd.intermediate.functions.Parameters;
+import org.mellowd.intermediate.variables.FrameLayout;
+
+import java.util.function.Predicate;
+
+/**
+ * A pass that removes the runtime type and null checks around expressions whose
+ * {@link Expression#inferType(TypeInference) inferred type} already proves that the check
+ * will pass.
+ */
+public class TypeCheckEliminator extends CodePass {
+    private final TypeInference types;
+    private int eliminatedChecks = 0;
+
+    public TypeCheckEliminator() {
+        this(new TypeInference());
+    }
+
+    public TypeCheckEliminator(TypeInference types) {
+        this.types = types;
+    }
+
+    @Override
+    public void enterFunction(Parameters parameters, FrameLayout captured) {
+        this.types.enterScope(parameters);
+    }
+
+    @Override
+    public void exitFunction() {
+        this.types.exitScope();
+    }
+
+    /**
+     * Replace the {@code check} with the {@code checked} expression if its inferred type
+     * proves the check will pass.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Expression<T> eliminateCheck(Expression<T> check, Expression<?> checked, Predicate<StaticType> passes) {
+        if (!passes.test(checked.inferType(this.types)))
+            return check;
+
+        this.eliminatedChecks++;
+        return (Expression<T>) checked;
+    }
+
+    /**
+     * @return the total number of runtime checks removed by this pass
+     */
+    public int getEliminatedCheckCount() {
+        return eliminatedChecks;
+    }
+}
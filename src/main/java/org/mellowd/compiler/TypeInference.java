@@ -0,0 +1,101 @@
+package org.mellowd.compiler;
+
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.statements.RepeatedStatementList;
+import org.mellowd.intermediate.functions.Parameter;
+import org.mellowd.intermediate.functions.Parameters;
+import org.mellowd.midi.GeneralMidiPercussion;
+
+import java.util.*;
+
+/**
+ * Tracks the types of the names that can be proven before the code that references them
+ * runs. These are constants declared with {@code def} at the top level of a song and the
+ * typed parameters of the function being compiled. A name is never trusted once code that
+ * could shadow it has been compiled, as a local assignment to the same name would hide the
+ * constant or parameter.
+ */
+public class TypeInference {
+    private final Map<QualifiedName, StaticType> constants;
+    private final Set<String> assigned;
+    private final Deque<Map<String, StaticType>> scopes;
+
+    public TypeInference() {
+        this.constants = new HashMap<>();
+        this.assigned = new HashSet<>();
+        this.scopes = new ArrayDeque<>();
+
+        //Set by every repeated statement list
+        this.assigned.add(RepeatedStatementList.IMPLICIT_LOOP_COUNTER_ID.getName());
+    }
+
+    /**
+     * Record the type of a top level constant.
+     *
+     * @param name the name of the constant
+     * @param type the type of the value it was defined as
+     */
+    public void declareConstant(QualifiedName name, StaticType type) {
+        this.constants.put(name, type);
+    }
+
+    /**
+     * Record that a statement assigns to the {@code name}. Any constant or parameter with
+     * the same name, ignoring the qualifier, is no longer trusted.
+     *
+     * @param name the name being assigned to
+     */
+    public void markAssigned(QualifiedName name) {
+        this.assigned.add(name.getName());
+    }
+
+    /**
+     * Enter the body of a function with the given {@code parameters}. Each call to this
+     * must be paired with a call to {@link #exitScope()}.
+     *
+     * @param parameters the parameters of the function
+     */
+    public void enterScope(Parameters parameters) {
+        Map<String, StaticType> scope = new HashMap<>();
+        for (Parameter<?> parameter : parameters) {
+            StaticType type;
+            if (parameter.isDynamicallyTyped())
+                type = StaticType.UNKNOWN;
+            else if (parameter.isOptional() && !parameter.hasDefualtValue())
+                type = StaticType.nullable(parameter.getType());
+            else
+                type = StaticType.of(parameter.getType());
+            scope.put(parameter.getName(), type);
+        }
+        this.scopes.push(scope);
+    }
+
+    public void exitScope() {
+        this.scopes.pop();
+    }
+
+    /**
+     * @param name the name being referenced
+     *
+     * @return the type of the value the {@code name} refers to, {@link StaticType#UNKNOWN} if it cannot be proven
+     */
+    public StaticType lookup(QualifiedName name) {
+        if (this.assigned.contains(name.getName()))
+            return StaticType.UNKNOWN;
+
+        if (name.isUnqualified()) {
+            //Percussion blocks resolve drum names before looking in memory
+            if (GeneralMidiPercussion.lookup(name.getName()) != null)
+                return StaticType.UNKNOWN;
+
+            //Innermost function first
+            for (Map<String, StaticType> scope : this.scopes) {
+                StaticType type = scope.get(name.getName());
+                if (type != null)
+                    return type;
+            }
+        }
+
+        return this.constants.getOrDefault(name, StaticType.UNKNOWN);
+    }
+}
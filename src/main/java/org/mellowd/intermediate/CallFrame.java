@@ -0,0 +1,39 @@
+package org.mellowd.intermediate;
+
+import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.intermediate.variables.FrameLayout;
+import org.mellowd.intermediate.variables.Memory;
+import org.mellowd.midi.TimingEnvironment;
+
+/**
+ * The frame for a single call of a {@link Closure} that is also the environment its body
+ * executes in. A call only allocates this object and its slot array, the parameters are
+ * stored positionally in the first slots. The maps for names outside of the layout and for
+ * namespaces are only created if the body defines one.
+ */
+public class CallFrame extends Frame implements ExecutionEnvironment {
+    private final TimingEnvironment timingEnvironment;
+    private final boolean percussion;
+
+    public CallFrame(FrameLayout layout, Memory captured, ExecutionEnvironment callerEnv, boolean percussion) {
+        super(layout, captured);
+        this.timingEnvironment = callerEnv.getTimingEnvironment();
+        this.percussion = percussion;
+    }
+
+    @Override
+    public boolean isPercussion() {
+        return this.percussion;
+    }
+
+    @Override
+    public Memory getMemory() {
+        return this;
+    }
+
+    @Override
+    public TimingEnvironment getTimingEnvironment() {
+        return this.timingEnvironment;
+    }
+}
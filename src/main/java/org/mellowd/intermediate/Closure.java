@@ -3,24 +3,62 @@ package org.mellowd.intermediate;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.executable.expressions.Abstraction;
 import org.mellowd.intermediate.functions.Argument;
+import org.mellowd.intermediate.functions.CallCache;
+import org.mellowd.intermediate.functions.Parameters;
 import org.mellowd.intermediate.variables.Memory;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class Closure {
     public static final QualifiedName RETURN_NAME = QualifiedName.ofUnqualified("return");
 
     private final Memory captured;
     private final Abstraction abstraction;
+    private final CallCache cache;
 
     public Closure(Memory captured, Abstraction abstraction) {
         this.captured = captured;
         this.abstraction = abstraction;
+        this.cache = abstraction.isPure() ? new CallCache() : null;
+    }
+
+    /**
+     * @return true if calling this closure has no effect other than computing the result
+     */
+    public boolean isPure() {
+        return this.abstraction.isPure();
+    }
+
+    /**
+     * @return the results of previous calls if the function is pure, null otherwise
+     */
+    public CallCache getCallCache() {
+        return cache;
     }
 
     public Object call(ExecutionEnvironment callingEnv, Output out, Argument<?>... args) {
-        Memory bodyScope = this.abstraction.getParameters().prepareCall(callingEnv, this.captured, args);
+        Parameters parameters = this.abstraction.getParameters();
+        CallFrame frame = new CallFrame(parameters.getLayout(), this.captured, callingEnv, abstraction.isPercussion());
+        parameters.bind(callingEnv, frame, args);
+
+        if (this.cache == null)
+            return this.execute(parameters, frame, out);
+
+        //The captured values never change so a pure function's result only depends on the arguments
+        List<Object> arguments = Arrays.asList(parameters.getArguments(frame));
+        Object result = this.cache.get(arguments);
+        if (result == CallCache.NOT_CACHED) {
+            result = this.execute(parameters, frame, out);
+            this.cache.put(arguments, result);
+        }
+        return result;
+    }
+
+    private Object execute(Parameters parameters, CallFrame frame, Output out) {
+        abstraction.getBody().execute(frame, out);
 
-        ExecutionEnvironment bodyEnv = new ClosureEvaluationEnvironment(callingEnv, bodyScope, abstraction.isPercussion());
-        abstraction.getBody().execute(bodyEnv, out);
-        return bodyScope.get(RETURN_NAME);
+        Object returned = frame.getSlot(parameters.getReturnSlot());
+        return returned != null ? returned : this.captured.get(RETURN_NAME);
     }
 }
@@ -8,6 +8,19 @@ public interface Output extends Closeable {
 
     long getStateTime();
 
+    /**
+     * Run the {@code iteration} {@code times} times in a row. The iteration must put the same
+     * playables every time it is run so an output that can tell it is in a steady state may
+     * copy what the iteration put instead of running it again.
+     *
+     * @param times     the number of times to run the iteration
+     * @param iteration puts a single iteration into this output
+     */
+    default void repeat(int times, Runnable iteration) {
+        for (int i = 0; i < times; i++)
+            iteration.run();
+    }
+
     @Override
     void close();
 }
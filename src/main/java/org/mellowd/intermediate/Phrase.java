@@ -31,6 +31,11 @@ public class Phrase implements Playable {
 
     @Override
     public void play(MIDIChannel channel) {
+        //A phrase plays the same events every time it is played in the same state
+        channel.playTemplate(this, () -> this.render(channel));
+    }
+
+    private void render(MIDIChannel channel) {
         int numBeats = rhythm.size();
         int numNotes = melody.size();
         int numElements = Math.max(numBeats, numNotes);
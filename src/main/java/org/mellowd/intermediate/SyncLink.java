@@ -1,15 +1,25 @@
 package org.mellowd.intermediate;
 
-import java.util.BitSet;
+import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public class SyncLink {
-    //This is the object that will block all the threads until the
-    //sync is complete
-    private final Object lock = new Object();
+    //Each sync point is a phase of the barrier, it is reused for every sync
+    //so nothing is allocated when the outputs meet
+    private final Phaser barrier;
 
     private final Output[] toSync;
-    private final BitSet flags;
+    //The state time each output arrived with in the current phase. Each output
+    //only writes its own slot.
+    private final AtomicLongArray arrivalTimes;
+    //The phase each output last arrived in. An arrival can't be taken back so an
+    //output that was interrupted while waiting is still counted in that phase and
+    //must not arrive again until it advances.
+    private final AtomicIntegerArray arrivedPhases;
+    private final AtomicLongArray waitTimes;
     private volatile long syncTime = -1;
 
     public SyncLink(Set<? extends Output> toSync) {
@@ -17,7 +27,19 @@ public class SyncLink {
             throw new IllegalArgumentException("At least 2 channels need to be present to create a sync link.");
 
         this.toSync = toSync.toArray(new Output[toSync.size()]);
-        this.flags = new BitSet(toSync.size());
+        this.arrivalTimes = new AtomicLongArray(this.toSync.length);
+        this.arrivedPhases = new AtomicIntegerArray(this.toSync.length);
+        for (int i = 0; i < this.toSync.length; i++)
+            this.arrivedPhases.set(i, -1);
+        this.waitTimes = new AtomicLongArray(this.toSync.length);
+        this.barrier = new Phaser(this.toSync.length) {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                //Run by the last output to arrive before any of them are released
+                calcSyncStateTime();
+                return false;
+            }
+        };
     }
 
     /**
@@ -27,51 +49,94 @@ public class SyncLink {
      * added if necessary to sync the given output.<br>
      *
      * If the {@code output} is not present in the link this method will simply
-     * return immediately.
+     * return immediately.<br>
+     *
+     * If the output was interrupted while waiting it is still counted as arrived
+     * so calling this again before the others arrive waits on the same sync
+     * rather than counting the output twice.
      * @param output the output that is ready to sync
+     *
+     * @return the time in nanoseconds the output spent waiting for the others
      */
-    public void sync(Output output) throws InterruptedException {
-        synchronized (this) {
-            boolean flagRaised = false;
-            for (int index = 0; index < toSync.length; index++) {
-                if (toSync[index].equals(output)) {
-                    this.flags.set(index);
-                    flagRaised = true;
-                    break;
-                }
-            }
-            if (!flagRaised) return;
+    public long sync(Output output) throws InterruptedException {
+        int index = indexOf(output);
+        if (index < 0) return 0;
+
+        long waitStart = System.nanoTime();
+        this.arrivalTimes.set(index, output.getStateTime());
+        //The phase can't advance without this output so if it already arrived in the
+        //current phase it is still pending
+        int phase = this.barrier.getPhase();
+        if (this.arrivedPhases.get(index) != phase) {
+            phase = this.barrier.arrive();
+            this.arrivedPhases.set(index, phase);
         }
+        //Waiting through the phaser lets a pooled executor compensate for the blocked worker
+        this.barrier.awaitAdvanceInterruptibly(phase);
+        long waited = System.nanoTime() - waitStart;
+        this.waitTimes.addAndGet(index, waited);
 
-        if (this.flags.cardinality() == this.toSync.length) {
-            //This was the last flag to raise, release the hounds
-            calcSyncStateTime();
-            long leap = this.syncTime - output.getStateTime();
-            if (leap > 0)
-                output.put(new LeapInTime(this.syncTime - output.getStateTime()));
-            synchronized (lock) {
-                lock.notifyAll();
-            }
-            reset();
-        } else {
-            synchronized (lock) {
-                lock.wait();
-            }
-            long leap = this.syncTime - output.getStateTime();
+        long leap = this.syncTime - output.getStateTime();
+        if (leap > 0)
+            output.put(new LeapInTime(leap));
+
+        return waited;
+    }
+
+    /**
+     * Sync the outputs without waiting. This is for a caller that runs the outputs itself
+     * and has stopped each of them at this link rather than calling {@link #sync(Output)}.
+     * Each output is given a {@link LeapInTime} if necessary to bring it up to the latest.
+     *
+     * @param arrived every output in the link
+     */
+    public void release(Collection<? extends Output> arrived) {
+        if (arrived.size() != this.toSync.length)
+            throw new IllegalArgumentException("Cannot release a sync link until all " + this.toSync.length + " outputs have arrived.");
+
+        long time = -1;
+        for (Output output : arrived) {
+            time = Math.max(time, output.getStateTime());
+        }
+        for (Output output : arrived) {
+            long leap = time - output.getStateTime();
             if (leap > 0)
-                output.put(new LeapInTime(this.syncTime - output.getStateTime()));
+                output.put(new LeapInTime(leap));
+        }
+    }
+
+    public boolean contains(Output output) {
+        return indexOf(output) >= 0;
+    }
+
+    public int size() {
+        return this.toSync.length;
+    }
+
+    /**
+     * @param output the output to get the wait time of
+     *
+     * @return the total time in nanoseconds the {@code output} has spent waiting in
+     * this link or 0 if it is not present in the link
+     */
+    public long getWaitTime(Output output) {
+        int index = indexOf(output);
+        return index < 0 ? 0 : this.waitTimes.get(index);
+    }
+
+    private int indexOf(Output output) {
+        for (int index = 0; index < toSync.length; index++) {
+            if (toSync[index].equals(output))
+                return index;
         }
+        return -1;
     }
 
     private void calcSyncStateTime() {
         long time = -1;
-        for (Output output : this.toSync) {
-            time = Math.max(time, output.getStateTime());
+        for (int i = 0; i < this.arrivalTimes.length(); i++) {
+            time = Math.max(time, this.arrivalTimes.get(i));
         }
         this.syncTime = time;
     }
-
-    private void reset() {
-        this.flags.clear();
-    }
 }
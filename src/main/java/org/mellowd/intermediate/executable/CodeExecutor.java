@@ -5,41 +5,107 @@ import org.mellowd.intermediate.executable.statements.Statement;
 import org.mellowd.compiler.ExecutionEnvironment;
 
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-
-public class CodeExecutor extends Thread {
-    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+import java.util.concurrent.CancellationException;
 
+/**
+ * The code of a single block waiting to be run by an {@link ExecutionEngine}.
+ */
+public class CodeExecutor {
+    private final String name;
     private final ExecutionEnvironment environment;
     private final Output output;
     private final List<? extends Statement> code;
-    private volatile Exception problem = null;
+
+    private Thread runner = null;
+    private boolean cancelled = false;
+    private int position = 0;
 
     public CodeExecutor(String name, ExecutionEnvironment environment, Output output, List<? extends Statement> code) {
-        super("CodeExecutor-" + name + "-" + THREAD_ID.getAndIncrement());
+        this.name = name;
         this.environment = environment;
         this.output = output;
         this.code = code;
     }
 
-    @Override
-    public void run() {
+    public String getName() {
+        return name;
+    }
+
+    public Output getOutput() {
+        return output;
+    }
+
+    /**
+     * @return the next statement that {@link #step()} will execute or {@code null} if
+     * all of the code has been stepped through
+     */
+    public Statement peek() {
+        return position < code.size() ? code.get(position) : null;
+    }
+
+    /**
+     * Execute the next statement on the calling thread. Along with {@link #skip()} and
+     * {@link #finish()} this lets an engine interleave blocks itself.
+     *
+     * @throws Exception if the statement fails to execute
+     */
+    public void step() throws Exception {
+        code.get(position).execute(environment, output);
+        position++;
+    }
+
+    /**
+     * Move past the next statement without executing it.
+     */
+    public void skip() {
+        position++;
+    }
+
+    /**
+     * Close the output after the last {@link #step()}.
+     */
+    public void finish() {
+        output.close();
+    }
+
+    /**
+     * Run all of the code on the calling thread and close the output.
+     *
+     * @return the time in nanoseconds spent executing the code
+     *
+     * @throws Exception if the code fails to execute
+     */
+    public long execute() throws Exception {
+        synchronized (this) {
+            if (this.cancelled)
+                throw new CancellationException("Execution of " + this.name + " was cancelled");
+            this.runner = Thread.currentThread();
+        }
+
         try {
+            long start = System.nanoTime();
             for (Statement s : code) {
                 s.execute(environment, output);
             }
 
             output.close();
-        } catch (Exception e) {
-            this.problem = e;
+            return System.nanoTime() - start;
+        } finally {
+            synchronized (this) {
+                this.runner = null;
+                //The thread may be pooled, don't leak a cancellation into the next task
+                Thread.interrupted();
+            }
         }
     }
 
-    public boolean errorWhileExecuting() {
-        return this.problem != null;
-    }
-
-    public Exception getExecutionError() {
-        return this.problem;
+    /**
+     * Stop the execution by interrupting the thread running it. This releases a block that
+     * is waiting in a sync with a block that will never arrive.
+     */
+    public synchronized void cancel() {
+        this.cancelled = true;
+        if (this.runner != null)
+            this.runner.interrupt();
     }
 }
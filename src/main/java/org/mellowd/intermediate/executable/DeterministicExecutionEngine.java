@@ -0,0 +1,124 @@
+package org.mellowd.intermediate.executable;
+
+import org.mellowd.intermediate.Output;
+import org.mellowd.intermediate.SyncLink;
+import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.intermediate.executable.statements.SyncStatement;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An {@link ExecutionEngine} that runs all of the blocks on the calling thread as a discrete
+ * event simulation. The block that is furthest behind, the one with the smallest state time,
+ * always executes its next statement, ties going to the block given first. A block that
+ * reaches a {@link SyncStatement} is suspended until every block in the sync has reached it
+ * instead of blocking a thread.
+ * <p>
+ * No threads are started and nothing is waited on so the output is exactly the same every
+ * time the same song is executed. Sync statements are only ever appended at the top level of a
+ * block's code so this is the only place a block needs to suspend.
+ * <p>
+ * The returned futures are all complete by the time {@link #executeAll(List)} returns.
+ */
+public class DeterministicExecutionEngine implements ExecutionEngine {
+    private static class Task {
+        private final int order;
+        private final CodeExecutor executor;
+        private final CompletableFuture<Long> result;
+        private long time;
+
+        private Task(int order, CodeExecutor executor) {
+            this.order = order;
+            this.executor = executor;
+            this.result = new CompletableFuture<>();
+            this.time = 0;
+        }
+    }
+
+    private static final Comparator<Task> FURTHEST_BEHIND = Comparator
+            .comparingLong((Task task) -> task.executor.getOutput().getStateTime())
+            .thenComparingInt(task -> task.order);
+
+    @Override
+    public List<CompletableFuture<Long>> executeAll(List<CodeExecutor> executors) {
+        List<CompletableFuture<Long>> results = new ArrayList<>(executors.size());
+        PriorityQueue<Task> ready = new PriorityQueue<>(Math.max(1, executors.size()), FURTHEST_BEHIND);
+        for (CodeExecutor executor : executors) {
+            Task task = new Task(results.size(), executor);
+            results.add(task.result);
+            ready.add(task);
+        }
+
+        //The tasks suspended at each link in the order they arrived
+        Map<SyncLink, List<Task>> waiting = new LinkedHashMap<>();
+
+        Task task;
+        while ((task = ready.poll()) != null) {
+            Statement next = task.executor.peek();
+
+            if (next == null) {
+                //Closing the output can fail, for example on a crescendo that has no target
+                try {
+                    task.executor.finish();
+                } catch (Exception e) {
+                    fail(task, e, ready, waiting);
+                    return results;
+                }
+                task.result.complete(task.time);
+                continue;
+            }
+
+            if (next instanceof SyncStatement) {
+                SyncLink link = ((SyncStatement) next).getLink();
+                task.executor.skip();
+                if (!link.contains(task.executor.getOutput())) {
+                    ready.add(task);
+                    continue;
+                }
+
+                List<Task> arrived = waiting.computeIfAbsent(link, k -> new ArrayList<>(link.size()));
+                arrived.add(task);
+                if (arrived.size() == link.size()) {
+                    waiting.remove(link);
+                    List<Output> outputs = new ArrayList<>(arrived.size());
+                    for (Task t : arrived)
+                        outputs.add(t.executor.getOutput());
+                    link.release(outputs);
+                    ready.addAll(arrived);
+                }
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                task.executor.step();
+            } catch (Exception e) {
+                fail(task, e, ready, waiting);
+                return results;
+            } finally {
+                task.time += System.nanoTime() - start;
+            }
+            ready.add(task);
+        }
+
+        //Anything still waiting is in a sync with a block that finished without reaching it
+        waiting.values().forEach(arrived -> arrived.forEach(t ->
+                t.result.completeExceptionally(new IllegalStateException(
+                        "Block " + t.executor.getName() + " is waiting in a sync with a block that has already finished"))));
+
+        return results;
+    }
+
+    private static void fail(Task task, Exception error, Collection<Task> ready, Map<SyncLink, List<Task>> waiting) {
+        task.result.completeExceptionally(error);
+        cancel(ready);
+        waiting.values().forEach(DeterministicExecutionEngine::cancel);
+    }
+
+    private static void cancel(Collection<Task> tasks) {
+        for (Task task : tasks)
+            task.result.completeExceptionally(new CancellationException("Execution of " + task.executor.getName() + " was cancelled"));
+    }
+}
@@ -0,0 +1,20 @@
+package org.mellowd.intermediate.executable;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the code of the blocks in a song. All of the blocks of a song must be given to the
+ * engine together as a block may wait in a sync for the others to catch up.
+ */
+public interface ExecutionEngine {
+    /**
+     * Start executing all of the {@code executors}.
+     *
+     * @param executors the code of each block
+     *
+     * @return a future for each of the {@code executors}, in the same order, that completes
+     * with the time in nanoseconds the block took to execute
+     */
+    List<CompletableFuture<Long>> executeAll(List<CodeExecutor> executors);
+}
@@ -0,0 +1,64 @@
+package org.mellowd.intermediate.executable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link ExecutionEngine} that runs blocks as tasks on a work stealing pool rather than
+ * starting a thread for every block each time a song is executed. A block waiting in a sync
+ * tells the pool it is blocked so the pool can start another worker for the blocks it is
+ * waiting on, a sync group larger than the pool cannot deadlock.
+ */
+public class PooledExecutionEngine implements ExecutionEngine {
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private static PooledExecutionEngine shared;
+
+    /**
+     * @return an engine with a worker per processor that is shared by every song that is not
+     * given its own engine
+     */
+    public static synchronized PooledExecutionEngine getShared() {
+        if (shared == null)
+            shared = new PooledExecutionEngine(Runtime.getRuntime().availableProcessors());
+        return shared;
+    }
+
+    private final ForkJoinPool pool;
+
+    public PooledExecutionEngine(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            worker.setName("CodeExecutor-" + THREAD_ID.getAndIncrement());
+            return worker;
+        }, null, true);
+    }
+
+    public int getParallelism() {
+        return this.pool.getParallelism();
+    }
+
+    @Override
+    public List<CompletableFuture<Long>> executeAll(List<CodeExecutor> executors) {
+        List<CompletableFuture<Long>> results = new ArrayList<>(executors.size());
+        for (CodeExecutor executor : executors) {
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return executor.execute();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, this.pool));
+        }
+        return results;
+    }
+
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+}
@@ -1,36 +1,62 @@
 package org.mellowd.intermediate.executable;
 
 import org.mellowd.compiler.CompilationException;
+import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.misc.Interval;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
+// A link refers back into the source it was compiled from rather than copying the text. The
+// text is only needed to report an error so it is looked up the first time it is asked for.
+// Code that outlives its source, like the code in a live session, should copy the text instead
+// so that it doesn't keep the whole source alive.
 public class SourceLink {
     public final int start;
     public final int line;
     public final int startPosInLine;
     public final int stop;
-    public final String text;
+
+    private final CharStream source;
+    private String text;
 
     public SourceLink(ParserRuleContext info) {
+        this(info, false);
+    }
+
+    public SourceLink(ParserRuleContext info, boolean copyText) {
         this.start = info.getStart().getStartIndex();
         this.line = info.getStart().getLine();
         this.startPosInLine = info.getStart().getCharPositionInLine();
         this.stop = info.getStop().getStopIndex();
-        this.text = info.start.getInputStream().getText(Interval.of(this.start, this.stop));
+        CharStream source = info.start.getInputStream();
+        this.source = copyText ? null : source;
+        this.text = copyText ? source.getText(Interval.of(this.start, this.stop)) : null;
     }
 
     public SourceLink(TerminalNode node) {
+        this(node, false);
+    }
+
+    public SourceLink(TerminalNode node, boolean copyText) {
         Token info = node.getSymbol();
         this.start = info.getStartIndex();
         this.line = info.getLine();
         this.startPosInLine = info.getCharPositionInLine();
         this.stop = info.getStopIndex();
-        this.text = info.getText();
+        // Tokens conjured by error recovery have no source to refer back to.
+        CharStream source = info.getInputStream();
+        this.source = copyText ? null : source;
+        this.text = copyText || source == null ? info.getText() : null;
+    }
+
+    public String getText() {
+        if (this.text == null)
+            this.text = this.source.getText(Interval.of(this.start, this.stop));
+        return this.text;
     }
 
     public CompilationException toCompilationException(Throwable cause) {
-        return new CompilationException(start, line, startPosInLine, stop, text, cause);
+        return new CompilationException(start, line, startPosInLine, stop, getText(), cause);
     }
 }
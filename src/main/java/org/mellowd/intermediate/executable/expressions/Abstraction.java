@@ -1,27 +1,78 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.Closure;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.PercussionToggledEnvironment;
-import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.intermediate.executable.statements.*;
+import org.mellowd.intermediate.functions.Parameter;
 import org.mellowd.intermediate.functions.Parameters;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.intermediate.variables.FrameLayout;
 import org.mellowd.intermediate.variables.Memory;
-import org.mellowd.intermediate.variables.SymbolTable;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 // Default parameter values are evaluated at declaration time.
 public class Abstraction implements Expression<Closure> {
     private final Parameters parameters;
     private final boolean percussion;
-    private final Statement body;
+    private final boolean declaredPure;
+    private Statement body;
+    private boolean pure;
+
+    // The captured scope is a frame holding the unqualified free variables in the first
+    // slots followed by the default parameter values. Qualified names keep their namespaces.
+    private final FrameLayout capturedLayout;
+    private final String[] capturedNames;
+    private final QualifiedName[] capturedQualifiedNames;
+    private final int[] defaultSlots;
 
     public Abstraction(Parameters parameters, boolean percussion, Statement body) {
+        this(parameters, percussion, false, body);
+    }
+
+    /**
+     * @param parameters the parameters of the function
+     * @param percussion true if the body is executed as percussion
+     * @param pure       true to declare that the body only computes its return value. The
+     *                   result of each call of a pure function may be reused for later calls
+     *                   with equal arguments. A body that is not declared pure may still be
+     *                   found to be pure.
+     * @param body       the body of the function
+     */
+    public Abstraction(Parameters parameters, boolean percussion, boolean pure, Statement body) {
         this.parameters = parameters;
         this.percussion = percussion;
+        this.declaredPure = pure;
         this.body = body;
+        this.pure = pure || isPure(body);
+
+        this.capturedLayout = new FrameLayout();
+        List<String> unqualified = new ArrayList<>();
+        List<QualifiedName> qualified = new ArrayList<>();
+        for (QualifiedName name : this.getFreeVariables()) {
+            if (name.isUnqualified()) {
+                this.capturedLayout.define(name.getName());
+                unqualified.add(name.getName());
+            } else {
+                qualified.add(name);
+            }
+        }
+        this.capturedNames = unqualified.toArray(new String[0]);
+        this.capturedQualifiedNames = qualified.toArray(new QualifiedName[0]);
+
+        this.defaultSlots = new int[parameters.size()];
+        for (int i = 0; i < parameters.size(); i++) {
+            Parameter<?> param = parameters.getParam(i);
+            this.defaultSlots[i] = param.hasDefualtValue() ? this.capturedLayout.define(param.getName()) : -1;
+        }
     }
 
     public Parameters getParameters() {
@@ -36,6 +87,45 @@ public class Abstraction implements Expression<Closure> {
         return body;
     }
 
+    /**
+     * @return true if calling the function has no effect other than computing the return
+     * value, so the result only depends on the arguments and the captured values
+     */
+    public boolean isPure() {
+        return pure;
+    }
+
+    // A body is pure if it never plays anything into the output, only assigns to its own
+    // frame and every expression it evaluates is free of side effects, which includes only
+    // calling functions that are known to be pure. Qualified names may be stored in a
+    // namespace shared with the captured scope.
+    private static boolean isPure(Statement statement) {
+        if (statement instanceof EmptyStatement)
+            return true;
+        if (statement instanceof CompiledStatement)
+            return isPure(((CompiledStatement) statement).getSource());
+
+        Class<?> type = statement.getClass();
+        if (type == AssignmentStatement.class) {
+            AssignmentStatement assignment = (AssignmentStatement) statement;
+            return assignment.getName().isUnqualified() && assignment.getValue().isSideEffectFree();
+        }
+        if (type == RepeatedStatementList.class
+                && !((RepeatedStatementList) statement).getRepetitions().isSideEffectFree())
+            return false;
+        if (type == StatementList.class || type == RepeatedStatementList.class)
+            return ((StatementList) statement).getStatements().stream().allMatch(Abstraction::isPure);
+        if (type == IfStatement.class) {
+            IfStatement ifStatement = (IfStatement) statement;
+            for (int i = 0; i < ifStatement.getBranchCount(); i++)
+                if (!ifStatement.getCondition(i).isSideEffectFree() || !isPure(ifStatement.getBranch(i)))
+                    return false;
+            return isPure(ifStatement.getElseStatement());
+        }
+
+        return false;
+    }
+
     @Override
     public Set<QualifiedName> getFreeVariables() {
         Set<QualifiedName> freeVars = new LinkedHashSet<>(this.getBody().getFreeVariables());
@@ -48,16 +138,25 @@ public class Abstraction implements Expression<Closure> {
     }
 
     @Override
-    public Closure evaluate(ExecutionEnvironment environment) {
-        Set<QualifiedName> freeVars = this.getFreeVariables();
+    public boolean isSideEffectFree() {
+        //Creating the closure evaluates the default parameter values
+        for (int i = 0; i < this.parameters.size(); i++) {
+            Parameter<?> param = this.parameters.getParam(i);
+            if (param.hasDefualtValue() && !param.getDefaultValue().isSideEffectFree())
+                return false;
+        }
+        return true;
+    }
 
+    @Override
+    public Closure evaluate(ExecutionEnvironment environment) {
         Memory enclosing = environment.getMemory();
-        Memory captured = new SymbolTable();
+        Frame captured = new Frame(this.capturedLayout);
 
-        freeVars.forEach(name -> {
-            Object value = enclosing.get(name);
-            captured.set(name, value);
-        });
+        for (int i = 0; i < this.capturedNames.length; i++)
+            captured.setSlot(i, enclosing.get(this.capturedNames[i]));
+        for (QualifiedName name : this.capturedQualifiedNames)
+            captured.set(name, enclosing.get(name));
 
         // Evaluate the default parameters and store their values in the closure scope.
         ExecutionEnvironment paramEvalEnv;
@@ -65,14 +164,32 @@ public class Abstraction implements Expression<Closure> {
             paramEvalEnv = new PercussionToggledEnvironment(environment);
         else
             paramEvalEnv = environment;
-        this.parameters.forEach(param -> {
+        for (int i = 0; i < this.parameters.size(); i++) {
+            Parameter<?> param = this.parameters.getParam(i);
             if (param.hasDefualtValue()) {
                 Object defaultValue = param.getDefaultValue().evaluate(paramEvalEnv);
                 param.checkIsAssignable(defaultValue);
-                captured.set(param.getNameAsQualified(), defaultValue);
+                captured.setSlot(this.defaultSlots[i], defaultValue);
             }
-        });
+        }
 
         return new Closure(captured, this);
     }
+
+    @Override
+    public Expression<Closure> transform(CodePass pass) {
+        pass.enterFunction(this.parameters, this.capturedLayout);
+        try {
+            this.body = pass.transform(this.body);
+            this.pure = this.declaredPure || isPure(this.body);
+        } finally {
+            pass.exitFunction();
+        }
+        return this;
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        return StaticType.of(Closure.class);
+    }
 }
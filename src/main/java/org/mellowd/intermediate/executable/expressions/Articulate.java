@@ -1,5 +1,8 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.functions.operations.Articulatable;
@@ -9,8 +12,8 @@ import org.mellowd.primitives.Articulation;
 import java.util.Set;
 
 public class Articulate implements Expression<Articulated> {
-    private final Expression<? extends Articulatable> expr;
-    private final Expression<Articulation> articulation;
+    private Expression<? extends Articulatable> expr;
+    private Expression<Articulation> articulation;
 
     public Articulate(Expression<? extends Articulatable> expr, Expression<Articulation> articulation) {
         this.expr = expr;
@@ -22,9 +25,26 @@ public class Articulate implements Expression<Articulated> {
         return this.expr.getFreeVariables();
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.expr.isSideEffectFree() && this.articulation.isSideEffectFree();
+    }
+
     @Override
     public Articulated evaluate(ExecutionEnvironment environment) {
         Articulatable val = expr.evaluate(environment);
         return val.articulate(articulation.evaluate(environment));
     }
+
+    @Override
+    public Expression<Articulated> transform(CodePass pass) {
+        this.expr = pass.transform(this.expr);
+        this.articulation = pass.transform(this.articulation);
+        return pass.foldIfConstant(this, this.expr, this.articulation);
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        return StaticType.of(Articulated.class);
+    }
 }
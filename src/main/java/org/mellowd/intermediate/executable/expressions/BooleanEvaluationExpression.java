@@ -1,5 +1,8 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.primitives.Pitch;
@@ -7,7 +10,7 @@ import org.mellowd.primitives.Pitch;
 import java.util.Set;
 
 public class BooleanEvaluationExpression implements Expression<Boolean> {
-    private final Expression<?> expression;
+    private Expression<?> expression;
 
     public BooleanEvaluationExpression(Expression<?> expression) {
         this.expression = expression;
@@ -18,6 +21,11 @@ public class BooleanEvaluationExpression implements Expression<Boolean> {
         return this.expression.getFreeVariables();
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.expression.isSideEffectFree();
+    }
+
     @Override
     public Boolean evaluate(ExecutionEnvironment environment) {
         Object val = expression.evaluate(environment);
@@ -31,4 +39,15 @@ public class BooleanEvaluationExpression implements Expression<Boolean> {
             return val != null;
         }
     }
+
+    @Override
+    public Expression<Boolean> transform(CodePass pass) {
+        this.expression = pass.transform(this.expression);
+        return pass.foldIfConstant(this, this.expression);
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        return StaticType.of(Boolean.class);
+    }
 }
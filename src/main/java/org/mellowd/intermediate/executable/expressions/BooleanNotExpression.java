@@ -1,12 +1,15 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 
 import java.util.Set;
 
 public class BooleanNotExpression implements Expression<Boolean> {
-    private final Expression<Boolean> expr;
+    private Expression<Boolean> expr;
 
     public BooleanNotExpression(Expression<Boolean> expr) {
         this.expr = expr;
@@ -17,8 +20,24 @@ public class BooleanNotExpression implements Expression<Boolean> {
         return this.expr.getFreeVariables();
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.expr.isSideEffectFree();
+    }
+
     @Override
     public Boolean evaluate(ExecutionEnvironment environment) {
         return !expr.evaluate(environment);
     }
+
+    @Override
+    public Expression<Boolean> transform(CodePass pass) {
+        this.expr = pass.transform(this.expr);
+        return pass.foldIfConstant(this, this.expr);
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        return StaticType.of(Boolean.class);
+    }
 }
@@ -1,5 +1,8 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 
@@ -26,6 +29,11 @@ public class BooleanORChain implements Expression<Boolean> {
         return names;
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.operands.stream().allMatch(Expression::isSideEffectFree);
+    }
+
     @Override
     public Boolean evaluate(ExecutionEnvironment environment) {
         for (Expression<Boolean> expr : operands) {
@@ -36,4 +44,15 @@ public class BooleanORChain implements Expression<Boolean> {
         //All were false
         return false;
     }
+
+    @Override
+    public Expression<Boolean> transform(CodePass pass) {
+        this.operands.replaceAll(pass::transform);
+        return pass.foldIfConstant(this, this.operands);
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        return StaticType.of(Boolean.class);
+    }
 }
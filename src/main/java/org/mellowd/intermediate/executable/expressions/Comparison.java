@@ -2,6 +2,9 @@ package org.mellowd.intermediate.executable.expressions;
 
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.functions.operations.Comparable;
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.primitives.*;
 
@@ -9,9 +12,9 @@ import java.util.*;
 import java.util.function.BiFunction;
 
 public class Comparison implements Expression<Boolean> {
-    private final Expression<?> left;
+    private Expression<?> left;
     private final Comparable.Operator operator;
-    private final Expression<?> right;
+    private Expression<?> right;
 
     public Comparison(Expression<?> left, Comparable.Operator operator, Expression<?> right) {
         this.left = left;
@@ -26,6 +29,11 @@ public class Comparison implements Expression<Boolean> {
         return free;
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.left.isSideEffectFree() && this.right.isSideEffectFree();
+    }
+
     @Override
     public Boolean evaluate(ExecutionEnvironment environment) {
         Object left = this.left.evaluate(environment);
@@ -84,4 +92,16 @@ public class Comparison implements Expression<Boolean> {
 
         throw new RuntimeException("Cannot compare " + type.getSimpleName() + "'s.");
     }
+
+    @Override
+    public Expression<Boolean> transform(CodePass pass) {
+        this.left = pass.transform(this.left);
+        this.right = pass.transform(this.right);
+        return pass.foldIfConstant(this, this.left, this.right);
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        return StaticType.of(Boolean.class);
+    }
 }
@@ -1,5 +1,8 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.primitives.ConcatenationDelegate;
@@ -32,10 +35,27 @@ public class Concatenation<T> implements Expression<T> {
         this.params.add(arg);
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.params.stream().allMatch(Expression::isSideEffectFree);
+    }
+
     @Override
     public T evaluate(ExecutionEnvironment environment) {
         T evalRes = root.get();
         this.params.forEach(e -> concatenationDelegate.append(evalRes, e.evaluate(environment)));
         return evalRes;
     }
+
+    @Override
+    public Expression<T> transform(CodePass pass) {
+        this.params.replaceAll(pass::transform);
+        return pass.foldIfConstant(this, this.params);
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        //The root is a fresh instance of the result type
+        return StaticType.of(root.get().getClass());
+    }
 }
@@ -1,6 +1,8 @@
 package org.mellowd.intermediate.executable.expressions;
 
 import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.intermediate.QualifiedName;
 
 import java.util.Collections;
@@ -13,16 +15,30 @@ public class Constant<T> implements Expression<T> {
         this.value = val;
     }
 
+    public T getValue() {
+        return value;
+    }
+
     @Override
     public Set<QualifiedName> getFreeVariables() {
         return Collections.emptySet();
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return true;
+    }
+
     @Override
     public T evaluate(ExecutionEnvironment environment) {
         return value;
     }
 
+    @Override
+    public StaticType inferType(TypeInference types) {
+        return value == null ? StaticType.UNKNOWN : StaticType.of(value.getClass());
+    }
+
     @Override
     public String toString() {
         return String.valueOf(value);
@@ -1,5 +1,8 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.executable.ScopeDependent;
@@ -25,6 +28,38 @@ public interface Expression<T> extends ScopeDependent {
 
     public T evaluate(ExecutionEnvironment environment);
 
+    /**
+     * @return true if evaluating this expression has no effect other than computing its result.
+     * Expressions that can't be inspected, such as lifted ones, are assumed to have side effects.
+     */
+    public default boolean isSideEffectFree() {
+        return false;
+    }
+
+    /**
+     * Run a pass over this expression. Expressions should pass their children through it and
+     * then call the pass's hook that describes them, pure expressions should try to
+     * {@link CodePass#foldIfConstant(Expression, Expression[]) fold themselves}.
+     *
+     * @param pass the pass being run
+     *
+     * @return the expression to use in place of this one
+     */
+    public default Expression<T> transform(CodePass pass) {
+        return this;
+    }
+
+    /**
+     * Infer what can be proven about the result of this expression without evaluating it.
+     *
+     * @param types the types of the names in scope
+     *
+     * @return the static type of the result, {@link StaticType#UNKNOWN} if nothing is known
+     */
+    public default StaticType inferType(TypeInference types) {
+        return StaticType.UNKNOWN;
+    }
+
     public default <U> Expression<U> then(Function<T, U> mapper) {
         Expression<T> first = this;
         return new Expression<U>() {
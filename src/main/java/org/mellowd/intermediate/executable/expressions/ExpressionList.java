@@ -1,5 +1,6 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 
@@ -22,8 +23,19 @@ public class ExpressionList<T> implements Expression<List<T>> {
         return names;
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.exprs.stream().allMatch(Expression::isSideEffectFree);
+    }
+
     @Override
     public List<T> evaluate(ExecutionEnvironment env) {
         return exprs.stream().map(e -> e.evaluate(env)).collect(Collectors.toList());
     }
+
+    @Override
+    public Expression<List<T>> transform(CodePass pass) {
+        this.exprs.replaceAll(pass::transform);
+        return this;
+    }
 }
@@ -1,5 +1,6 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.Closure;
 import org.mellowd.intermediate.NullOutput;
@@ -13,7 +14,7 @@ import java.util.Objects;
 import java.util.Set;
 
 public class FunctionCall implements Expression<Object> {
-    private final Expression<Closure> function;
+    private Expression<Closure> function;
     private final Argument<?>[] args;
 
     public FunctionCall(Expression<Closure> function, Argument<?>[] args) {
@@ -34,9 +35,38 @@ public class FunctionCall implements Expression<Object> {
         return free;
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        if (!this.function.isSideEffectFree() || !callsPureFunction(this.function))
+            return false;
+
+        return Arrays.stream(this.args)
+                .map(Argument::getValue)
+                .allMatch(value -> value == null || value.isSideEffectFree());
+    }
+
+    // The function is only known before the call if it is a constant or a literal
+    private static boolean callsPureFunction(Expression<Closure> function) {
+        if (function instanceof Constant) {
+            Closure closure = ((Constant<Closure>) function).getValue();
+            return closure != null && closure.isPure();
+        }
+        if (function instanceof Abstraction)
+            return ((Abstraction) function).isPure();
+        return false;
+    }
+
     @Override
     public Object evaluate(ExecutionEnvironment environment) {
         Closure closure = this.function.evaluate(environment);
         return closure.call(environment, NullOutput.getInstance(), this.args);
     }
+
+    @Override
+    public Expression<Object> transform(CodePass pass) {
+        //The call itself may have side effects so only the inputs are folded
+        this.function = pass.transform(this.function);
+        pass.transformArguments(this.args);
+        return this;
+    }
 }
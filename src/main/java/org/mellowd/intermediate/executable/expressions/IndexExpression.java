@@ -1,5 +1,6 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.functions.operations.Indexable;
@@ -8,9 +9,9 @@ import java.util.LinkedHashSet;
 import java.util.Set;
 
 public class IndexExpression implements Expression<Object> {
-    private final Expression<? extends Indexable<?, ?>> expression;
-    private final Expression<Integer> index;
-    private final Expression<Integer> upperIndex;
+    private Expression<? extends Indexable<?, ?>> expression;
+    private Expression<Integer> index;
+    private Expression<Integer> upperIndex;
 
     public IndexExpression(Expression<? extends Indexable<?, ?>> expression, Expression<Integer> index) {
         this.expression = expression;
@@ -36,6 +37,12 @@ public class IndexExpression implements Expression<Object> {
         return free;
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.expression.isSideEffectFree() && this.index.isSideEffectFree()
+                && (this.upperIndex == null || this.upperIndex.isSideEffectFree());
+    }
+
     @Override
     public Object evaluate(ExecutionEnvironment environment) {
         Indexable<?, ?> result = expression.evaluate(environment);
@@ -45,4 +52,15 @@ public class IndexExpression implements Expression<Object> {
 
         return result.getAtRange(index.evaluate(environment), upperIndex.evaluate(environment));
     }
+
+    @Override
+    public Expression<Object> transform(CodePass pass) {
+        this.expression = pass.transform(this.expression);
+        this.index = pass.transform(this.index);
+        if (this.upperIndex == null)
+            return pass.foldIfConstant(this, this.expression, this.index);
+
+        this.upperIndex = pass.transform(this.upperIndex);
+        return pass.foldIfConstant(this, this.expression, this.index, this.upperIndex);
+    }
 }
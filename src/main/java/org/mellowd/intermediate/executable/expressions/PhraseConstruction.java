@@ -1,5 +1,8 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.Phrase;
 import org.mellowd.intermediate.QualifiedName;
@@ -10,8 +13,8 @@ import java.util.LinkedHashSet;
 import java.util.Set;
 
 public class PhraseConstruction implements Expression<Phrase> {
-    private final Expression<Melody> melodyExpression;
-    private final Expression<Rhythm> rhythmExpression;
+    private Expression<Melody> melodyExpression;
+    private Expression<Rhythm> rhythmExpression;
 
     public PhraseConstruction(Expression<Melody> melodyExpression, Expression<Rhythm> rhythmExpression) {
         this.melodyExpression = melodyExpression;
@@ -25,10 +28,27 @@ public class PhraseConstruction implements Expression<Phrase> {
         return free;
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.melodyExpression.isSideEffectFree() && this.rhythmExpression.isSideEffectFree();
+    }
+
     @Override
     public Phrase evaluate(ExecutionEnvironment environment) {
         Melody melody = melodyExpression.evaluate(environment);
         Rhythm rhythm = rhythmExpression.evaluate(environment);
         return new Phrase(melody, rhythm);
     }
+
+    @Override
+    public Expression<Phrase> transform(CodePass pass) {
+        this.melodyExpression = pass.transform(this.melodyExpression);
+        this.rhythmExpression = pass.transform(this.rhythmExpression);
+        return pass.foldIfConstant(this, this.melodyExpression, this.rhythmExpression);
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        return StaticType.of(Phrase.class);
+    }
 }
@@ -1,6 +1,9 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.variables.Memory;
 import org.mellowd.midi.GeneralMidiPercussion;
@@ -15,11 +18,20 @@ public class ReferenceResolution implements Expression<Object> {
         this.name = name;
     }
 
+    public QualifiedName getName() {
+        return name;
+    }
+
     @Override
     public Set<QualifiedName> getFreeVariables() {
         return Collections.singleton(this.name);
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return true;
+    }
+
     @Override
     public Object evaluate(ExecutionEnvironment environment) {
         if (environment.isPercussion() && this.name.isUnqualified()) {
@@ -31,4 +43,14 @@ public class ReferenceResolution implements Expression<Object> {
         Memory memory = environment.getMemory();
         return memory.get(this.name);
     }
+
+    @Override
+    public Expression<Object> transform(CodePass pass) {
+        return pass.resolve(this);
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        return types.lookup(this.name);
+    }
 }
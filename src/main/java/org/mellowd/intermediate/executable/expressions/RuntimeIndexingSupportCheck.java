@@ -1,5 +1,8 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.executable.IndexingNotSupportedException;
 import org.mellowd.intermediate.QualifiedName;
@@ -9,7 +12,7 @@ import org.mellowd.intermediate.functions.operations.Indexable;
 import java.util.Set;
 
 public class RuntimeIndexingSupportCheck implements Expression<Indexable<?, ?>> {
-    protected final Expression<?> expression;
+    protected Expression<?> expression;
     protected final SourceLink sourceLink;
 
     public RuntimeIndexingSupportCheck(Expression<?> expression, SourceLink sourceLink) {
@@ -22,13 +25,36 @@ public class RuntimeIndexingSupportCheck implements Expression<Indexable<?, ?>>
         return this.expression.getFreeVariables();
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.expression.isSideEffectFree();
+    }
+
     @Override
     public Indexable<?, ?> evaluate(ExecutionEnvironment environment) {
         Object value = expression.evaluate(environment);
         if (value == null || value instanceof Indexable) {
             return (Indexable) value;
         } else {
-            throw sourceLink.toCompilationException(new IndexingNotSupportedException(sourceLink.text));
+            throw sourceLink.toCompilationException(new IndexingNotSupportedException(sourceLink.getText()));
         }
     }
+
+    @Override
+    public Expression<Indexable<?, ?>> transform(CodePass pass) {
+        this.expression = pass.transform(this.expression);
+        Expression<Indexable<?, ?>> checked = pass.eliminateCheck(this, this.expression,
+                type -> type.isAssignableTo(Indexable.class));
+        if (checked != this)
+            return checked;
+        return pass.foldIfConstant(this, this.expression);
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        StaticType inner = this.expression.inferType(types);
+        if (inner.isAssignableTo(Indexable.class))
+            return inner;
+        return StaticType.nullable(Indexable.class);
+    }
 }
@@ -1,5 +1,8 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.executable.SourceLink;
@@ -9,7 +12,7 @@ import java.util.Set;
 
 public class RuntimeNullCheck<T> implements Expression<T> {
     private final QualifiedName referenceName;
-    private final Expression<T> expression;
+    private Expression<T> expression;
     private final SourceLink sourceLink;
 
     public RuntimeNullCheck(QualifiedName referenceName, Expression<T> expression, SourceLink sourceLink) {
@@ -23,6 +26,11 @@ public class RuntimeNullCheck<T> implements Expression<T> {
         return this.expression.getFreeVariables();
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.expression.isSideEffectFree();
+    }
+
     @Override
     public T evaluate(ExecutionEnvironment environment) {
         T value = expression.evaluate(environment);
@@ -30,4 +38,18 @@ public class RuntimeNullCheck<T> implements Expression<T> {
             throw sourceLink.toCompilationException(new UndefinedReferenceException(referenceName));
         return value;
     }
+
+    @Override
+    public Expression<T> transform(CodePass pass) {
+        this.expression = pass.transform(this.expression);
+        Expression<T> checked = pass.eliminateCheck(this, this.expression, type -> !type.isNullable());
+        if (checked != this)
+            return checked;
+        return pass.foldIfConstant(this, this.expression);
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        return this.expression.inferType(types).nonNull();
+    }
 }
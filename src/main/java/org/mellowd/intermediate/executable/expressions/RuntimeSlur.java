@@ -1,5 +1,6 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.functions.operations.Slurrable;
@@ -8,7 +9,7 @@ import java.util.LinkedHashSet;
 import java.util.Set;
 
 public class RuntimeSlur<T extends Slurrable<U>, U> implements Expression<U> {
-    private final Expression<T> toSlur;
+    private Expression<T> toSlur;
 
     public RuntimeSlur(Expression<T> toSlur) {
         this.toSlur = toSlur;
@@ -19,9 +20,20 @@ public class RuntimeSlur<T extends Slurrable<U>, U> implements Expression<U> {
         return new LinkedHashSet<>(this.toSlur.getFreeVariables());
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.toSlur.isSideEffectFree();
+    }
+
     @Override
     public U evaluate(ExecutionEnvironment environment) {
         T toSlur = this.toSlur.evaluate(environment);
         return toSlur.toggleSlur();
     }
+
+    @Override
+    public Expression<U> transform(CodePass pass) {
+        this.toSlur = pass.transform(this.toSlur);
+        return pass.foldIfConstant(this, this.toSlur);
+    }
 }
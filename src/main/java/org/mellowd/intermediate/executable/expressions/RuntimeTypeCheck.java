@@ -1,5 +1,8 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.executable.SourceLink;
@@ -9,7 +12,7 @@ import java.util.Set;
 
 public class RuntimeTypeCheck<T> implements Expression<T> {
     private final Class<T> type;
-    private final Expression<?> expression;
+    private Expression<?> expression;
     private final SourceLink sourceLink;
 
     public RuntimeTypeCheck(Class<T> type, Expression<?> expression, SourceLink sourceLink) {
@@ -23,6 +26,11 @@ public class RuntimeTypeCheck<T> implements Expression<T> {
         return this.expression.getFreeVariables();
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.expression.isSideEffectFree();
+    }
+
     @Override
     public T evaluate(ExecutionEnvironment environment) {
         Object value = expression.evaluate(environment);
@@ -30,7 +38,25 @@ public class RuntimeTypeCheck<T> implements Expression<T> {
             return (T) value;
         } else {
             // TODO maybe incorrect type should not take an identifier...
-            throw sourceLink.toCompilationException(new IncorrectTypeException(QualifiedName.ofUnqualified(sourceLink.text), value.getClass(), type));
+            throw sourceLink.toCompilationException(new IncorrectTypeException(QualifiedName.ofUnqualified(sourceLink.getText()), value.getClass(), type));
         }
     }
+
+    @Override
+    public Expression<T> transform(CodePass pass) {
+        this.expression = pass.transform(this.expression);
+        //A null value always passes the check so only the type matters
+        Expression<T> checked = pass.eliminateCheck(this, this.expression, type -> type.isAssignableTo(this.type));
+        if (checked != this)
+            return checked;
+        return pass.foldIfConstant(this, this.expression);
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        StaticType inner = this.expression.inferType(types);
+        if (inner.isAssignableTo(this.type))
+            return inner;
+        return inner.isNullable() ? StaticType.nullable(this.type) : StaticType.of(this.type);
+    }
 }
@@ -1,5 +1,8 @@
 package org.mellowd.intermediate.executable.expressions;
 
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.executable.SourceLink;
@@ -15,7 +18,7 @@ import java.util.Set;
  */
 public class RuntimeUnionTypeCheck implements Expression<Object> {
     private final Class<?>[] types;
-    private final Expression<?> expression;
+    private Expression<?> expression;
     private final SourceLink sourceLink;
 
     public RuntimeUnionTypeCheck(Expression<?> expression, Class<?>[] types, SourceLink sourceLink) {
@@ -29,6 +32,11 @@ public class RuntimeUnionTypeCheck implements Expression<Object> {
         return this.expression.getFreeVariables();
     }
 
+    @Override
+    public boolean isSideEffectFree() {
+        return this.expression.isSideEffectFree();
+    }
+
     @Override
     public Object evaluate(ExecutionEnvironment environment) {
         Object value = expression.evaluate(environment);
@@ -40,6 +48,26 @@ public class RuntimeUnionTypeCheck implements Expression<Object> {
         }
 
         // TODO qualified name is not the right type for this exception...
-        throw sourceLink.toCompilationException(new IncorrectTypeException(QualifiedName.ofUnqualified(sourceLink.text), value.getClass(), types));
+        throw sourceLink.toCompilationException(new IncorrectTypeException(QualifiedName.ofUnqualified(sourceLink.getText()), value.getClass(), types));
+    }
+
+    @Override
+    public Expression<Object> transform(CodePass pass) {
+        this.expression = pass.transform(this.expression);
+        Expression<Object> checked = pass.eliminateCheck(this, this.expression, type -> {
+            for (Class<?> allowed : this.types) {
+                if (type.isAssignableTo(allowed))
+                    return true;
+            }
+            return false;
+        });
+        if (checked != this)
+            return checked;
+        return pass.foldIfConstant(this, this.expression);
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        return this.expression.inferType(types);
     }
 }
@@ -0,0 +1,119 @@
+package org.mellowd.intermediate.executable.expressions;
+
+import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.compiler.StaticType;
+import org.mellowd.compiler.TypeInference;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.intermediate.variables.FrameLayout;
+import org.mellowd.intermediate.variables.Memory;
+import org.mellowd.midi.GeneralMidiPercussion;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A {@link ReferenceResolution} that was resolved at compile time to a (depth, slot) pair
+ * in the chain of {@link Frame}s the code runs in. Reading the variable is then a walk of
+ * {@code depth} parent pointers and an array read instead of hashing the name in every scope.
+ * <p>
+ * Each frame that is skipped is checked to still have the layout, and the size of the layout,
+ * that the name was resolved against. If a frame is not the expected one, for example because
+ * a plugin called the closure with a different scope, the reference falls back to a lookup by
+ * name from that frame. If a layout has grown since, the name is resolved again.
+ */
+public class SlotReference implements Expression<Object> {
+    private static class Resolution {
+        private final int depth;
+        private final int slot;
+        private final int[] sizes;
+
+        private Resolution(int depth, int slot, int[] sizes) {
+            this.depth = depth;
+            this.slot = slot;
+            this.sizes = sizes;
+        }
+    }
+
+    private final QualifiedName name;
+    private final FrameLayout[] layouts;
+    private final GeneralMidiPercussion drumSound;
+    private volatile Resolution resolution;
+
+    public SlotReference(QualifiedName name, FrameLayout[] layouts) {
+        this.name = name;
+        this.layouts = layouts;
+        this.drumSound = GeneralMidiPercussion.lookup(name.getName());
+        this.resolution = resolve();
+    }
+
+    private Resolution resolve() {
+        int[] sizes = new int[this.layouts.length];
+        for (int depth = 0; depth < this.layouts.length; depth++) {
+            //Read the size first, every name inside of it is guaranteed to be found
+            sizes[depth] = this.layouts[depth].size();
+            int slot = this.layouts[depth].slotOf(this.name.getName());
+            if (slot >= 0)
+                return new Resolution(depth, slot, sizes);
+        }
+        return new Resolution(this.layouts.length, -1, sizes);
+    }
+
+    public QualifiedName getName() {
+        return name;
+    }
+
+    @Override
+    public Set<QualifiedName> getFreeVariables() {
+        return Collections.singleton(this.name);
+    }
+
+    @Override
+    public boolean isSideEffectFree() {
+        return true;
+    }
+
+    @Override
+    public Object evaluate(ExecutionEnvironment environment) {
+        if (this.drumSound != null && environment.isPercussion())
+            return this.drumSound.getAsPitch();
+
+        Resolution resolution = this.resolution;
+        String name = this.name.getName();
+        Memory memory = environment.getMemory();
+
+        for (int depth = 0; depth < resolution.depth; depth++) {
+            if (!(memory instanceof Frame))
+                return memory == null ? null : memory.get(name);
+
+            Frame frame = (Frame) memory;
+            if (frame.getLayout() != this.layouts[depth] || frame.hasOverflow())
+                return frame.get(name);
+
+            if (frame.getLayout().size() != resolution.sizes[depth]) {
+                //A name was declared in a frame that was skipped, it may now shadow the target
+                this.resolution = resolve();
+                return frame.get(name);
+            }
+
+            memory = frame.getParent();
+        }
+
+        //Not in any frame of the chain, the rest of the lookup is by name
+        if (resolution.depth == this.layouts.length
+                || !(memory instanceof Frame)
+                || ((Frame) memory).getLayout() != this.layouts[resolution.depth])
+            return memory == null ? null : memory.get(name);
+
+        Frame frame = (Frame) memory;
+        Object value = frame.getSlot(resolution.slot);
+        if (value == null && frame.getParent() != null)
+            return frame.getParent().get(name);
+        return value;
+    }
+
+    @Override
+    public StaticType inferType(TypeInference types) {
+        return types.lookup(this.name);
+    }
+}
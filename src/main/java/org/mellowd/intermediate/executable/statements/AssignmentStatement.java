@@ -1,22 +1,29 @@
 package org.mellowd.intermediate.executable.statements;
 
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.Output;
 import org.mellowd.intermediate.PercussionToggledEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.executable.expressions.Expression;
 import org.mellowd.intermediate.variables.DelayedResolution;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.intermediate.variables.FrameLayout;
 import org.mellowd.intermediate.variables.Memory;
 
 import java.util.Set;
 
 public class AssignmentStatement implements Statement {
     private final QualifiedName name;
-    private final Expression<?> value;
+    private Expression<?> value;
     private final boolean isFinal;
     private final boolean delayResolution;
     private final boolean percussionToggle;
 
+    // Set when the name is resolved to a slot in the frame the statement executes in
+    private FrameLayout layout;
+    private int slot;
+
     public AssignmentStatement(QualifiedName name, Expression<?> value, boolean isFinal, boolean delayResolution, boolean percussionToggle) {
         this.name = name;
         this.value = value;
@@ -25,6 +32,18 @@ public class AssignmentStatement implements Statement {
         this.percussionToggle = percussionToggle;
     }
 
+    public QualifiedName getName() {
+        return name;
+    }
+
+    public Expression<?> getValue() {
+        return value;
+    }
+
+    public boolean isFinal() {
+        return isFinal;
+    }
+
     @Override
     public Set<QualifiedName> getFreeVariables() {
         return this.value.getFreeVariables();
@@ -46,7 +65,20 @@ public class AssignmentStatement implements Statement {
 
         if (this.isFinal)
             memory.define(this.name, toStore);
+        else if (this.layout != null && memory instanceof Frame && ((Frame) memory).getLayout() == this.layout)
+            ((Frame) memory).setSlot(this.slot, toStore);
         else
             memory.set(this.name, toStore);
     }
+
+    @Override
+    public Statement transform(CodePass pass) {
+        this.value = pass.transform(this.value);
+        FrameLayout layout = pass.declareLocal(this.name);
+        if (layout != null) {
+            this.layout = layout;
+            this.slot = layout.slotOf(this.name.getName());
+        }
+        return this;
+    }
 }
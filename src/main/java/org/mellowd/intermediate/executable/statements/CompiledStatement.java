@@ -0,0 +1,51 @@
+package org.mellowd.intermediate.executable.statements;
+
+import org.mellowd.compiler.CodePass;
+import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.intermediate.Output;
+import org.mellowd.intermediate.QualifiedName;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Set;
+
+/**
+ * A statement that runs a {@link MethodHandle} built from the tree of another statement by the
+ * {@link org.mellowd.compiler.StatementCompiler}. The source statement is kept to answer
+ * everything other than {@link #execute(ExecutionEnvironment, Output)}.
+ */
+public class CompiledStatement implements Statement {
+    private final Statement source;
+    // (ExecutionEnvironment, Output)void
+    private final MethodHandle handle;
+
+    public CompiledStatement(Statement source, MethodHandle handle) {
+        this.source = source;
+        this.handle = handle;
+    }
+
+    public Statement getSource() {
+        return source;
+    }
+
+    @Override
+    public Set<QualifiedName> getFreeVariables() {
+        return this.source.getFreeVariables();
+    }
+
+    @Override
+    public void execute(ExecutionEnvironment environment, Output output) {
+        try {
+            this.handle.invokeExact(environment, output);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new UndeclaredThrowableException(t);
+        }
+    }
+
+    @Override
+    public Statement transform(CodePass pass) {
+        return pass.transform(this.source);
+    }
+}
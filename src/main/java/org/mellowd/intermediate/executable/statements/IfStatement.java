@@ -1,5 +1,6 @@
 package org.mellowd.intermediate.executable.statements;
 
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.Output;
 import org.mellowd.intermediate.QualifiedName;
@@ -53,7 +54,7 @@ public class IfStatement implements Statement {
 
     private final Expression<Boolean>[] conditions;
     private final Statement[] branches;
-    private final Statement elseStatement;
+    private Statement elseStatement;
 
     public IfStatement(List<Branch> branches, Statement elseStatement) {
         if (branches.isEmpty())
@@ -71,6 +72,22 @@ public class IfStatement implements Statement {
         this.elseStatement = elseStatement != null ? elseStatement : EmptyStatement.getInstance();
     }
 
+    public int getBranchCount() {
+        return this.conditions.length;
+    }
+
+    public Expression<Boolean> getCondition(int branch) {
+        return this.conditions[branch];
+    }
+
+    public Statement getBranch(int branch) {
+        return this.branches[branch];
+    }
+
+    public Statement getElseStatement() {
+        return this.elseStatement;
+    }
+
     public boolean hasElseBranch() {
         return this.elseStatement != EmptyStatement.getInstance();
     }
@@ -97,4 +114,14 @@ public class IfStatement implements Statement {
         if (hasElseBranch())
             elseStatement.execute(environment, output);
     }
+
+    @Override
+    public Statement transform(CodePass pass) {
+        for (int i = 0; i < conditions.length; i++) {
+            this.conditions[i] = pass.transform(this.conditions[i]);
+            this.branches[i] = pass.transform(this.branches[i]);
+        }
+        this.elseStatement = pass.transform(this.elseStatement);
+        return this;
+    }
 }
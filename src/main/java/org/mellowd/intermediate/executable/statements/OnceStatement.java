@@ -1,5 +1,6 @@
 package org.mellowd.intermediate.executable.statements;
 
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.Output;
 import org.mellowd.intermediate.QualifiedName;
@@ -8,7 +9,7 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class OnceStatement implements Statement {
-    private final Statement statement;
+    private Statement statement;
 
     private final AtomicBoolean evaluated = new AtomicBoolean(false);
 
@@ -18,7 +19,7 @@ public class OnceStatement implements Statement {
 
     @Override
     public Set<QualifiedName> getFreeVariables() {
-        return null;
+        return this.statement.getFreeVariables();
     }
 
     @Override
@@ -31,4 +32,10 @@ public class OnceStatement implements Statement {
             this.evaluated.set(true);
         }
     }
+
+    @Override
+    public Statement transform(CodePass pass) {
+        this.statement = pass.transform(this.statement);
+        return this;
+    }
 }
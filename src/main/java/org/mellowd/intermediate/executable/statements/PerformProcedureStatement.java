@@ -1,5 +1,6 @@
 package org.mellowd.intermediate.executable.statements;
 
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.Closure;
 import org.mellowd.intermediate.Output;
@@ -14,7 +15,7 @@ import java.util.Objects;
 import java.util.Set;
 
 public class PerformProcedureStatement implements Statement {
-    private final Expression<Closure> procedure;
+    private Expression<Closure> procedure;
     private final Argument<?>[] args;
 
     public PerformProcedureStatement(Expression<Closure> procedure, Argument<?>[] args) {
@@ -40,4 +41,11 @@ public class PerformProcedureStatement implements Statement {
         Closure closure = this.procedure.evaluate(environment);
         closure.call(environment, output, this.args);
     }
+
+    @Override
+    public Statement transform(CodePass pass) {
+        this.procedure = pass.transform(this.procedure);
+        pass.transformArguments(this.args);
+        return this;
+    }
 }
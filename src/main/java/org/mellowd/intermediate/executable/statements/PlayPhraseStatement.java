@@ -1,5 +1,6 @@
 package org.mellowd.intermediate.executable.statements;
 
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.Output;
 import org.mellowd.intermediate.Phrase;
@@ -15,6 +16,10 @@ public class PlayPhraseStatement implements Statement {
         this.toPlay = toPlay;
     }
 
+    public Expression<Phrase> getToPlay() {
+        return toPlay;
+    }
+
     @Override
     public Set<QualifiedName> getFreeVariables() {
         return this.toPlay.getFreeVariables();
@@ -25,4 +30,10 @@ public class PlayPhraseStatement implements Statement {
         Phrase phrase = this.toPlay.evaluate(environment);
         output.put(phrase);
     }
+
+    @Override
+    public Statement transform(CodePass pass) {
+        this.toPlay = pass.transform(this.toPlay);
+        return this;
+    }
 }
@@ -4,6 +4,7 @@ import org.mellowd.intermediate.Output;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.executable.expressions.Expression;
 import org.mellowd.intermediate.variables.Memory;
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
 
 import java.util.LinkedHashSet;
@@ -12,11 +13,43 @@ import java.util.Set;
 public class RepeatedStatementList extends StatementList {
     public static final QualifiedName IMPLICIT_LOOP_COUNTER_ID = QualifiedName.ofUnqualified("it");
 
-    protected final Expression<Number> repetitions;
+    protected Expression<Number> repetitions;
+    private boolean invariant;
 
     public RepeatedStatementList(Expression<Number> repetitions) {
         super();
         this.repetitions = repetitions;
+        this.invariant = false;
+    }
+
+    public Expression<Number> getRepetitions() {
+        return repetitions;
+    }
+
+    /**
+     * @return true if the body plays exactly the same thing every iteration, decided when
+     * the list is {@link #transform(CodePass) transformed}
+     */
+    public boolean isInvariant() {
+        return invariant;
+    }
+
+    // A statement is invariant if the only side effect it has is playing something into the
+    // output and everything it plays has no free variables, including the loop counter.
+    private static boolean isInvariant(Statement statement) {
+        if (statement instanceof EmptyStatement)
+            return true;
+
+        Class<?> type = statement.getClass();
+        if (type == PlayPhraseStatement.class)
+            return ((PlayPhraseStatement) statement).getToPlay().getFreeVariables().isEmpty();
+        if (type == RepeatedStatementList.class)
+            return ((RepeatedStatementList) statement).repetitions.getFreeVariables().isEmpty()
+                    && ((RepeatedStatementList) statement).statements.stream().allMatch(RepeatedStatementList::isInvariant);
+        if (type == StatementList.class)
+            return ((StatementList) statement).statements.stream().allMatch(RepeatedStatementList::isInvariant);
+
+        return false;
     }
 
     @Override
@@ -33,13 +66,31 @@ public class RepeatedStatementList extends StatementList {
         Memory memory = environment.getMemory();
         Object old = memory.get(IMPLICIT_LOOP_COUNTER_ID);
 
-        for (int i = 0; i < repetitions; i++) {
-            memory.set(IMPLICIT_LOOP_COUNTER_ID, i);
-            for (Statement stmt : super.statements) {
-                stmt.execute(environment, output);
+        if (this.invariant) {
+            //The body never reads the counter so there is no need to set it
+            output.repeat(repetitions, () -> {
+                for (Statement stmt : super.statements) {
+                    stmt.execute(environment, output);
+                }
+            });
+        } else {
+            for (int i = 0; i < repetitions; i++) {
+                memory.set(IMPLICIT_LOOP_COUNTER_ID, i);
+                for (Statement stmt : super.statements) {
+                    stmt.execute(environment, output);
+                }
             }
         }
 
         memory.set(IMPLICIT_LOOP_COUNTER_ID, old);
     }
+
+    @Override
+    public Statement transform(CodePass pass) {
+        this.repetitions = pass.transform(this.repetitions);
+        pass.declareLocal(IMPLICIT_LOOP_COUNTER_ID);
+        super.transform(pass);
+        this.invariant = super.statements.stream().allMatch(RepeatedStatementList::isInvariant);
+        return this;
+    }
 }
@@ -1,5 +1,6 @@
 package org.mellowd.intermediate.executable.statements;
 
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.Output;
 import org.mellowd.intermediate.QualifiedName;
@@ -25,4 +26,15 @@ public interface Statement extends ScopeDependent {
     }
 
     public void execute(ExecutionEnvironment environment, Output output);
+
+    /**
+     * Run a pass over the code in this statement.
+     *
+     * @param pass the pass being run
+     *
+     * @return the statement to use in place of this one
+     */
+    public default Statement transform(CodePass pass) {
+        return this;
+    }
 }
@@ -1,9 +1,11 @@
 package org.mellowd.intermediate.executable.statements;
 
 import org.mellowd.intermediate.Output;
+import org.mellowd.compiler.CodePass;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -20,6 +22,10 @@ public class StatementList implements Statement {
         this.statements.add(statement);
     }
 
+    public List<Statement> getStatements() {
+        return Collections.unmodifiableList(this.statements);
+    }
+
     @Override
     public Set<QualifiedName> getFreeVariables() {
         Set<QualifiedName> names = new LinkedHashSet<>();
@@ -33,4 +39,10 @@ public class StatementList implements Statement {
             stmt.execute(environment, output);
         }
     }
+
+    @Override
+    public Statement transform(CodePass pass) {
+        this.statements.replaceAll(pass::transform);
+        return this;
+    }
 }
@@ -12,21 +12,39 @@ import java.util.Set;
 public class SyncStatement implements Statement {
     private final SourceLink sourceLink;
     private final SyncLink link;
+    private volatile long waitTime = 0;
 
     public SyncStatement(SourceLink sourceLink, SyncLink link) {
         this.sourceLink = sourceLink;
         this.link = link;
     }
 
+    public SyncLink getLink() {
+        return link;
+    }
+
+    public SourceLink getSourceLink() {
+        return sourceLink;
+    }
+
+    /**
+     * @return the total time in nanoseconds the block running this statement has
+     * spent waiting for the other blocks in the sync
+     */
+    public long getWaitTime() {
+        return waitTime;
+    }
+
     @Override
     public Set<QualifiedName> getFreeVariables() {
         return Collections.emptySet();
     }
 
     @Override
-    public synchronized void execute(ExecutionEnvironment environment, Output output) {
+    public void execute(ExecutionEnvironment environment, Output output) {
+        //Each block has its own statement so only the block running it writes the wait time
         try {
-            link.sync(output);
+            waitTime += link.sync(output);
         } catch (InterruptedException e) {
             throw sourceLink.toCompilationException(e);
         }
@@ -0,0 +1,99 @@
+package org.mellowd.intermediate.functions;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The results of the calls made to a pure function keyed by the values of the arguments
+ * they were made with. The cache holds at most {@link #getCapacity()} results and evicts the
+ * least recently used one to make room for a new one.
+ * <p>
+ * A function may be called from many blocks at once so the cache is thread safe. The lock is
+ * never held while the function runs, two calls with the same arguments at the same time
+ * may both compute the result.
+ * <p>
+ * A cached result, such as a melody, is shared by every call that reuses it in the same way
+ * that a folded constant is shared by every execution of the code it was folded in.
+ */
+public class CallCache {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * Returned by {@link #get(List)} when there is no result for the arguments. A call
+     * may return null.
+     */
+    public static final Object NOT_CACHED = new Object();
+
+    private final int capacity;
+    private final Map<List<Object>, Object> results;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public CallCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CallCache(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("The capacity must be positive, was " + capacity);
+        this.capacity = capacity;
+        this.results = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+                return this.size() > CallCache.this.capacity;
+            }
+        };
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * @param arguments the values of the arguments, in the order of the parameters
+     *
+     * @return the result of the call with the {@code arguments} or {@link #NOT_CACHED}
+     */
+    public Object get(List<Object> arguments) {
+        Object result;
+        synchronized (this.results) {
+            result = this.results.getOrDefault(arguments, NOT_CACHED);
+        }
+
+        if (result == NOT_CACHED)
+            this.misses.increment();
+        else
+            this.hits.increment();
+        return result;
+    }
+
+    public void put(List<Object> arguments, Object result) {
+        synchronized (this.results) {
+            this.results.put(arguments, result);
+        }
+    }
+
+    public int size() {
+        synchronized (this.results) {
+            return this.results.size();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of calls that reused a cached result
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return the number of calls that had to compute their result
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+}
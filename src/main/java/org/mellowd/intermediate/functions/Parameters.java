@@ -1,8 +1,10 @@
 package org.mellowd.intermediate.functions;
 
 import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.intermediate.Closure;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.intermediate.variables.FrameLayout;
 import org.mellowd.intermediate.variables.Memory;
-import org.mellowd.intermediate.variables.SymbolTable;
 
 import java.util.Arrays;
 import java.util.Iterator;
@@ -11,9 +13,19 @@ import java.util.StringJoiner;
 public class Parameters implements Iterable<Parameter<?>> {
     private final Parameter<?>[] params;
     private final int minSize;
+    private final FrameLayout layout;
+    private final int[] slots;
+    private final int returnSlot;
 
     public Parameters(Parameter<?>... params) {
         this.params = params;
+        // The parameters take the first slots of the frame for a call, followed by the body's locals
+        this.layout = new FrameLayout();
+        this.slots = new int[params.length];
+        for (int i = 0; i < params.length; i++)
+            this.slots[i] = this.layout.define(params[i].getName());
+        // The return value is always stored so it gets a slot too
+        this.returnSlot = this.layout.define(Closure.RETURN_NAME.getName());
         int minSize = params.length;
         for (int i = params.length - 1; i >= 0; i--)
             if (params[i].isOptional()) minSize--;
@@ -30,6 +42,20 @@ public class Parameters implements Iterable<Parameter<?>> {
         return minSize;
     }
 
+    /**
+     * @return the layout of the frames created by {@link #prepareCall(ExecutionEnvironment, Memory, Argument[])}
+     */
+    public FrameLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return the slot in the {@link #getLayout() layout} that the return value is stored in
+     */
+    public int getReturnSlot() {
+        return returnSlot;
+    }
+
     public Parameter<?> getParam(int i) {
         if (i < 0 || i >= size())
             return null;
@@ -47,18 +73,32 @@ public class Parameters implements Iterable<Parameter<?>> {
     }
 
     public Memory prepareCall(ExecutionEnvironment callerEnv, Memory parentScope, Argument<?>... args) {
+        Frame memory = new Frame(this.layout, parentScope);
+        this.bind(callerEnv, memory, args);
+        return memory;
+    }
+
+    /**
+     * Evaluate the {@code args} and put them in the slots of their parameters in the
+     * {@code frame}.
+     *
+     * @param callerEnv the environment to evaluate the arguments in
+     * @param frame     a frame with this parameters' {@link #getLayout() layout}
+     * @param args      the arguments given to the call
+     */
+    public void bind(ExecutionEnvironment callerEnv, Frame frame, Argument<?>... args) {
         // If the braces are empty then treat the first arg as not present.
         boolean isEmptyBraces = args.length == 0 || (args.length == 1 && args[0].isEmpty());
         if (isEmptyBraces && params.length == 0)
-            return new SymbolTable(parentScope);
+            return;
 
         if (args.length < minSize)
             throw new FunctionInvocationException(String.format("Not enough args. %d given but %d required.", args.length, minSize));
         if (args.length > params.length)
             throw new FunctionInvocationException(String.format("Too many args. %d given but at most %d expected.", args.length, params.length));
 
-        // Create a block of memory to put the arguments into
-        Memory memory = new SymbolTable(parentScope);
+        // Only needed if an argument is named, positional arguments always cover the required parameters
+        boolean[] given = null;
 
         // Put argument values into the scope.
         for (int i = 0; i < args.length; i++) {
@@ -67,6 +107,17 @@ public class Parameters implements Iterable<Parameter<?>> {
             Parameter<?> parameter = arg.isNamed() ? this.getParam(arg.getName()) : params[i];
             if (parameter == null)
                 throw new FunctionInvocationException(String.format("No parameters are named \"%s\".", arg.getName()));
+            int index = i;
+            if (arg.isNamed()) {
+                index = indexOf(parameter);
+                if (given == null) {
+                    given = new boolean[params.length];
+                    for (int j = 0; j < i; j++)
+                        given[j] = true;
+                }
+            }
+            if (given != null)
+                given[index] = true;
 
             // Evaluate the argument.
             Object value = arg.isDeclaredNull() ? null : arg.getValue().evaluate(callerEnv);
@@ -85,10 +136,35 @@ public class Parameters implements Iterable<Parameter<?>> {
             parameter.checkIsAssignable(value);
 
             // Put the variable in the scope
-            memory.set(parameter.getNameAsQualified(), value);
+            frame.setSlot(this.slots[index], value);
         }
 
-        return memory;
+        // Named arguments may skip over a required parameter
+        if (given != null) {
+            for (int i = 0; i < params.length; i++) {
+                if (!given[i] && !params[i].isOptional())
+                    throw new FunctionInvocationException(String.format("Parameter '%s' is not optional and was not given.", params[i].toString()));
+            }
+        }
+    }
+
+    /**
+     * @param frame a frame that arguments were {@link #bind(ExecutionEnvironment, Frame, Argument[]) bound} to
+     *
+     * @return the value of each parameter in the {@code frame}, null if it was not given
+     */
+    public Object[] getArguments(Frame frame) {
+        Object[] values = new Object[this.slots.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = frame.getSlot(this.slots[i]);
+        return values;
+    }
+
+    private int indexOf(Parameter<?> parameter) {
+        for (int i = 0; i < params.length; i++)
+            if (params[i] == parameter)
+                return i;
+        return -1;
     }
 
     @Override
@@ -0,0 +1,134 @@
+package org.mellowd.intermediate.variables;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link SymbolTable} for scopes that are shared by blocks executing at the same time, like
+ * the song's globals. Reads never lock. Writes lock the table so that the check for a
+ * constant and the store are atomic, but they are rare once a song starts executing.
+ * <p>
+ * A {@link DelayedResolution} that is read is resolved by the reader and the resolved value is
+ * published with a compare and set. If two readers resolve the same value at once, one of the
+ * results is stored and both readers return it. Namespaces created in this table are also
+ * concurrent.
+ */
+public class ConcurrentSymbolTable implements Memory {
+    //The maps cannot hold null so a value explicitly set to null is stored as this
+    private static final Object NULL = new Object();
+
+    private final Memory parent;
+
+    private final Map<String, Memory> namespaces;
+
+    private final Map<String, Object> data;
+    private final Set<String> finalNames;
+
+    public ConcurrentSymbolTable() {
+        this(null);
+    }
+
+    public ConcurrentSymbolTable(Memory parent) {
+        this.parent = parent;
+
+        this.data = new ConcurrentHashMap<>();
+        this.finalNames = ConcurrentHashMap.newKeySet();
+
+        this.namespaces = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public synchronized void set(String name, Object value) {
+        if (this.finalNames.contains(name))
+            throw new AlreadyDefinedException("Cannot set value for constant value " + name);
+        this.data.put(name, value == null ? NULL : value);
+    }
+
+    @Override
+    public synchronized void define(String name, Object value) {
+        if (this.finalNames.contains(name))
+            throw new AlreadyDefinedException("Constant value " + name + " already defined");
+
+        if (this.data.containsKey(name))
+            throw new AlreadyDefinedException("Identifier " + name + " already exists and cannot be made into a constant");
+
+        this.data.put(name, value == null ? NULL : value);
+        this.finalNames.add(name);
+    }
+
+    @Override
+    public Object get(String name) {
+        Object value = this.data.get(name);
+
+        if ((value == null || value == NULL) && this.parent != null)
+            return this.parent.get(name);
+
+        if (value instanceof DelayedResolution) {
+            // We have a variable that is dependent on other data. We will try to resolve it now
+            Object resolved = ((DelayedResolution) value).resolve(this);
+            // If the resolution is successful publish the resolved value unless the name has changed since
+            if (resolved != null && !this.data.replace(name, value, resolved)) {
+                Object current = this.data.get(name);
+                if (current != null && current != NULL && !(current instanceof DelayedResolution))
+                    resolved = current;
+            }
+            return resolved;
+        }
+
+        return value == NULL ? null : value;
+    }
+
+    @Override
+    public boolean isDefined(String name) {
+        return this.data.containsKey(name)
+                || (this.parent != null && this.parent.isDefined(name));
+    }
+
+    @Override
+    public void setNamespace(String name, Memory namespace) {
+        this.namespaces.put(name, namespace);
+    }
+
+    @Override
+    public Memory lookupOrCreateNamespace(String name) {
+        Memory namespace = this.lookupNamespace(name);
+
+        if (namespace == null)
+            namespace = this.namespaces.computeIfAbsent(name, k -> new ConcurrentSymbolTable());
+
+        return namespace;
+    }
+
+    @Override
+    public Memory lookupNamespace(String name) {
+        Memory namespace = this.namespaces.get(name);
+
+        return namespace == null && this.parent != null
+                ? this.parent.lookupNamespace(name) : namespace;
+    }
+
+    @Override
+    public int countReferences() {
+        return this.data.size()
+                + this.namespaces.values().stream().mapToInt(Memory::countReferences).sum()
+                + (this.parent != null ? this.parent.countReferences() : 0);
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("MEMORY DUMP> References: ").append(this.countReferences());
+        sb.append('\n');
+
+        this.data.forEach((id, val) -> sb.append(id)
+                .append("->")
+                .append(val == NULL ? null : val.toString())
+                .append('\n'));
+        this.namespaces.forEach((name, ns) -> sb.append(name).append(">\n").append(ns.dump()));
+        if (this.parent != null)
+            sb.append(this.parent.dump());
+
+        return sb.toString();
+    }
+}
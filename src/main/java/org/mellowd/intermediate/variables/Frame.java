@@ -0,0 +1,220 @@
+package org.mellowd.intermediate.variables;
+
+import java.util.*;
+
+/**
+ * An array backed scope. Names that are part of the frame's {@link FrameLayout} are stored
+ * in the slot the layout assigns them so code that was resolved against the layout at compile
+ * time can read and write them by index. Any other name, for example one set by a plugin,
+ * is kept in a small map on the side so that the frame still behaves like any other
+ * {@link Memory}, with the same semantics as a {@link SymbolTable}.
+ */
+public class Frame implements Memory {
+    //Marks a slot that was explicitly set to null as opposed to one that was never set
+    private static final Object NULL = new Object();
+
+    private final FrameLayout layout;
+    private final Memory parent;
+
+    private Object[] values;
+    private Map<String, Object> overflow;
+    private Map<String, Memory> namespaces;
+    private Set<String> finalNames;
+
+    public Frame(FrameLayout layout) {
+        this(layout, null);
+    }
+
+    public Frame(FrameLayout layout, Memory parent) {
+        this.layout = layout;
+        this.parent = parent;
+        this.values = new Object[layout.size()];
+    }
+
+    public FrameLayout getLayout() {
+        return layout;
+    }
+
+    public Memory getParent() {
+        return parent;
+    }
+
+    /**
+     * @return true if a name outside of the layout has been stored in this frame
+     */
+    public boolean hasOverflow() {
+        return this.overflow != null;
+    }
+
+    /**
+     * Read the value in the {@code slot} of this frame without looking at the parent.
+     *
+     * @param slot the slot in the frame's layout
+     *
+     * @return the value in the slot, null if it is not set
+     */
+    public Object getSlot(int slot) {
+        Object[] values = this.values;
+        if (slot >= values.length)
+            return null;
+
+        Object value = values[slot];
+        if (value instanceof DelayedResolution) {
+            // We have a variable that is dependent on other data. We will try to resolve it now
+            value = ((DelayedResolution) value).resolve(this);
+            // If the resolution is successful we will store the resolved value
+            if (value != null)
+                values[slot] = value;
+        }
+
+        return value == NULL ? null : value;
+    }
+
+    /**
+     * Store the {@code value} in the {@code slot} of this frame.
+     *
+     * @param slot  the slot in the frame's layout
+     * @param value the value to store
+     */
+    public void setSlot(int slot, Object value) {
+        if (this.finalNames != null && this.finalNames.contains(this.layout.nameAt(slot)))
+            throw new AlreadyDefinedException("Cannot set value for constant value " + this.layout.nameAt(slot));
+        store(slot, value);
+    }
+
+    private void store(int slot, Object value) {
+        Object[] values = this.values;
+        if (slot >= values.length) {
+            //The layout grew after this frame was created
+            values = Arrays.copyOf(values, Math.max(this.layout.size(), slot + 1));
+            this.values = values;
+        }
+        values[slot] = value == null ? NULL : value;
+    }
+
+    private boolean isSlotSet(int slot) {
+        Object[] values = this.values;
+        return slot < values.length && values[slot] != null;
+    }
+
+    @Override
+    public void set(String name, Object value) {
+        if (this.finalNames != null && this.finalNames.contains(name))
+            throw new AlreadyDefinedException("Cannot set value for constant value " + name);
+
+        int slot = this.layout.slotOf(name);
+        if (slot >= 0) {
+            store(slot, value);
+        } else {
+            if (this.overflow == null)
+                this.overflow = new HashMap<>();
+            this.overflow.put(name, value);
+        }
+    }
+
+    @Override
+    public void define(String name, Object value) {
+        if (this.finalNames != null && this.finalNames.contains(name))
+            throw new AlreadyDefinedException("Constant value " + name + " already defined");
+
+        int slot = this.layout.slotOf(name);
+        if (slot >= 0 ? isSlotSet(slot) : this.overflow != null && this.overflow.containsKey(name))
+            throw new AlreadyDefinedException("Identifier " + name + " already exists and cannot be made into a constant");
+
+        this.set(name, value);
+        if (this.finalNames == null)
+            this.finalNames = new HashSet<>();
+        this.finalNames.add(name);
+    }
+
+    @Override
+    public Object get(String name) {
+        int slot = this.layout.slotOf(name);
+        if (slot >= 0) {
+            Object value = getSlot(slot);
+            return value == null && this.parent != null ? this.parent.get(name) : value;
+        }
+
+        Object value = this.overflow != null ? this.overflow.get(name) : null;
+
+        if (value == null && this.parent != null)
+            return this.parent.get(name);
+
+        if (value instanceof DelayedResolution) {
+            value = ((DelayedResolution) value).resolve(this);
+            if (value != null)
+                this.overflow.put(name, value);
+        }
+
+        return value;
+    }
+
+    @Override
+    public boolean isDefined(String name) {
+        int slot = this.layout.slotOf(name);
+        boolean isOwn = slot >= 0
+                ? isSlotSet(slot)
+                : this.overflow != null && this.overflow.containsKey(name);
+        return isOwn || (this.parent != null && this.parent.isDefined(name));
+    }
+
+    @Override
+    public void setNamespace(String name, Memory namespace) {
+        if (this.namespaces == null)
+            this.namespaces = new HashMap<>();
+        this.namespaces.put(name, namespace);
+    }
+
+    @Override
+    public Memory lookupOrCreateNamespace(String name) {
+        Memory namespace = this.lookupNamespace(name);
+
+        if (namespace == null) {
+            namespace = new SymbolTable();
+            this.setNamespace(name, namespace);
+        }
+
+        return namespace;
+    }
+
+    @Override
+    public Memory lookupNamespace(String name) {
+        Memory namespace = this.namespaces != null ? this.namespaces.get(name) : null;
+
+        return namespace == null && this.parent != null
+                ? this.parent.lookupNamespace(name) : namespace;
+    }
+
+    @Override
+    public int countReferences() {
+        int count = 0;
+        for (Object value : this.values)
+            if (value != null) count++;
+        if (this.overflow != null)
+            count += this.overflow.size();
+        if (this.namespaces != null)
+            count += this.namespaces.values().stream().mapToInt(Memory::countReferences).sum();
+        return count + (this.parent != null ? this.parent.countReferences() : 0);
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("MEMORY DUMP> References: ").append(this.countReferences());
+        sb.append('\n');
+
+        Object[] values = this.values;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null)
+                sb.append(this.layout.nameAt(i)).append("->").append(values[i] == NULL ? null : values[i]).append('\n');
+        }
+        if (this.overflow != null)
+            this.overflow.forEach((id, val) -> sb.append(id).append("->").append(val).append('\n'));
+        if (this.namespaces != null)
+            this.namespaces.forEach((name, ns) -> sb.append(name).append(">\n").append(ns.dump()));
+        if (this.parent != null)
+            sb.append(this.parent.dump());
+
+        return sb.toString();
+    }
+}
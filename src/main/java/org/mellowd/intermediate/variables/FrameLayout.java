@@ -0,0 +1,67 @@
+package org.mellowd.intermediate.variables;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The shape of a {@link Frame}, a mapping from the names a scope may hold to the index
+ * of the slot their value is stored in. A layout is shared by every frame created for the
+ * same scope, for example each call of a function, so that a name can be resolved to a slot
+ * once at compile time rather than hashed on every access.
+ * <p>
+ * Layouts only ever grow. Names are added by the compiler while it resolves the code that
+ * runs in the scope, which may happen while frames with this layout are being executed in a
+ * live session.
+ */
+public class FrameLayout {
+    private final Map<String, Integer> slots;
+    private volatile String[] names;
+
+    public FrameLayout(String... names) {
+        this.slots = new ConcurrentHashMap<>();
+        this.names = new String[0];
+        for (String name : names)
+            define(name);
+    }
+
+    /**
+     * Get the slot for the {@code name}, adding a new slot to the end of the layout if
+     * it does not exist yet.
+     *
+     * @param name the name to define
+     *
+     * @return the slot the name is stored in
+     */
+    public synchronized int define(String name) {
+        Integer slot = this.slots.get(name);
+        if (slot != null)
+            return slot;
+
+        String[] names = Arrays.copyOf(this.names, this.names.length + 1);
+        names[names.length - 1] = name;
+        //Publish the slot before the size grows so that a reader who sees the new
+        //size is guaranteed to also find the new name
+        this.slots.put(name, names.length - 1);
+        this.names = names;
+        return names.length - 1;
+    }
+
+    /**
+     * @param name the name to lookup
+     *
+     * @return the slot the {@code name} is stored in or -1 if it is not part of this layout
+     */
+    public int slotOf(String name) {
+        Integer slot = this.slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    public String nameAt(int slot) {
+        return this.names[slot];
+    }
+
+    public int size() {
+        return this.names.length;
+    }
+}
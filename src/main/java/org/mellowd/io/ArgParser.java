@@ -12,8 +12,9 @@ public class ArgParser {
     private static final String USAGE_MESSAGE = "" +
             "usage: mellowd [-h] [-p] [-ts numerator denominator] [-t tempo]\n" +
             "               [-o output_dir] [-s source_dir]... [-sf font]...\n" +
-            "               [-pl plugin] [-wav] [-mid] [--silent]           \n" +
-            "               [source_file]";
+            "               [-pl plugin] [-wav] [-mid] [--silent] [--cache]\n" +
+            "               [-b source]... [-j jobs] [--deterministic]\n" +
+            "               [--interpret] [source_file]";
 
     private static final String OPT_DESC_HELP = "" +
             "    -h: display help about the usage of the mellowd command. Any\n" +
@@ -59,6 +60,27 @@ public class ArgParser {
             "                  output will be MIDI                           ";
     private static final String OPT_DESC_SILENT = "" +
             "    --silent: prevent the compiler from producing any messages  ";
+    private static final String OPT_DESC_CACHE = "" +
+            "    --cache: save the compiled song in the output directory     \n" +
+            "             (.mlodc) and reuse it while the source, imports,   \n" +
+            "             time signature and execution options are unchanged ";
+    private static final String OPT_DESC_BATCH = "" +
+            "    -b, --batch: add a directory or glob of source files to     \n" +
+            "                 compile in one run. May be given multiple times\n" +
+            "      source: path to a directory, every source file in it and  \n" +
+            "              its sub directories is compiled, or a glob such as\n" +
+            "              'songs/**/*.mlod'                                  ";
+    private static final String OPT_DESC_JOBS = "" +
+            "    -j, --jobs: set the number of files compiled at the same    \n" +
+            "                time in batch mode                              \n" +
+            "      jobs: a positive integer (default number of processors)    ";
+    private static final String OPT_DESC_DETERMINISTIC = "" +
+            "    --deterministic: execute the blocks one at a time on a      \n" +
+            "                     single thread so the output is exactly the \n" +
+            "                     same every time the song is compiled        ";
+    private static final String OPT_DESC_INTERPRET = "" +
+            "    --interpret: run the code with the interpreter rather than  \n" +
+            "                 compiling it first                              ";
     private static final String OPT_DESC_SOURCE = "" +
             "    source_file: set the path to the file to compile. It can be \n" +
             "                 an absolute path or a path relative to the     \n" +
@@ -184,6 +206,33 @@ public class ArgParser {
                     i++;
                     options.setSilent(true);
                     break;
+                case "--cache":
+                    help.append('\n').append(OPT_DESC_CACHE);
+                    i++;
+                    options.setUseCache(true);
+                    break;
+                case "-b":
+                case "--batch":
+                    help.append('\n').append(OPT_DESC_BATCH);
+                    if (!showHelp) i = parseBatchSource(options, args, i + 1);
+                    else i++;
+                    break;
+                case "-j":
+                case "--jobs":
+                    help.append('\n').append(OPT_DESC_JOBS);
+                    if (!showHelp) i = parseJobs(options, args, i + 1);
+                    else i++;
+                    break;
+                case "--deterministic":
+                    help.append('\n').append(OPT_DESC_DETERMINISTIC);
+                    i++;
+                    options.setDeterministic(true);
+                    break;
+                case "--interpret":
+                    help.append('\n').append(OPT_DESC_INTERPRET);
+                    i++;
+                    options.setInterpret(true);
+                    break;
                 default:
                     if (parsedSourceFileArg)
                         throw new IllegalArgumentException("Already parsed source file. The following was a surprise to me: " + args[i]);
@@ -209,6 +258,11 @@ public class ArgParser {
                 help.append('\n').append(OPT_DESC_WAV);
                 help.append('\n').append(OPT_DESC_MID);
                 help.append('\n').append(OPT_DESC_SILENT);
+                help.append('\n').append(OPT_DESC_CACHE);
+                help.append('\n').append(OPT_DESC_BATCH);
+                help.append('\n').append(OPT_DESC_JOBS);
+                help.append('\n').append(OPT_DESC_DETERMINISTIC);
+                help.append('\n').append(OPT_DESC_INTERPRET);
                 help.append('\n').append(OPT_DESC_SOURCE);
             }
             throw new Help(help.toString());
@@ -297,4 +351,28 @@ public class ArgParser {
 
         return pos + 1;
     }
+
+    private static int parseBatchSource(CompilerOptions.Builder options, String[] args, int pos) throws Help {
+        if (args.length < pos + 1)
+            throw new Help("[Parse Error]: Expected a directory or glob of source files to follow " + args[pos - 1]);
+
+        String batchSource = args[pos];
+
+        options.addBatchSource(batchSource);
+
+        return pos + 1;
+    }
+
+    private static int parseJobs(CompilerOptions.Builder options, String[] args, int pos) throws Help {
+        if (args.length < pos + 1)
+            throw new Help("[Parse Error]: Expected number of jobs to follow " + args[pos - 1]);
+
+        int jobs = parseInt("jobs", args[pos]);
+        if (jobs <= 0)
+            throw new Help(String.format("[Parse Error]: jobs expected a number greater than 0 but '%d' was given", jobs));
+
+        options.setJobs(jobs);
+
+        return pos + 1;
+    }
 }
@@ -0,0 +1,293 @@
+package org.mellowd.io;
+
+import org.mellowd.compiler.CompilationException;
+import org.mellowd.compiler.ParseException;
+import org.mellowd.midi.MIDISequence;
+import org.mellowd.plugin.PluginLoadException;
+import org.mellowd.plugin.PluginManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many source files in a single JVM. The files are compiled on a bounded pool of
+ * workers that all share one {@link PluginManager}, loaded before the first file is compiled,
+ * as well as the parser. The lexer and parser keep their DFA caches in static state so every
+ * file parsed benefits from the predictions made for the files before it.
+ * <p>
+ * A failure to compile one file is reported and does not stop the others from compiling.
+ */
+public class BatchCompiler {
+    private static final double NS_PER_SEC = 1E9d;
+    private static final String GLOB_CHARS = "*?[{";
+
+    /**
+     * A source file found by {@link #findSources(List)} along with the path of its directory
+     * relative to the directory or glob it was found in. Outputs are placed at the same
+     * relative path in the output directory so that files with the same name don't collide.
+     */
+    public static class Source {
+        private final File file;
+        private final String relativeDir;
+
+        public Source(File file, String relativeDir) {
+            this.file = file;
+            this.relativeDir = relativeDir;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public String getRelativeDir() {
+            return relativeDir;
+        }
+
+        public String getDisplayName() {
+            return relativeDir.isEmpty() ? file.getName() : relativeDir + File.separator + file.getName();
+        }
+    }
+
+    /**
+     * The outcome of compiling a single {@link Source}.
+     */
+    public static class Result {
+        private final Source source;
+        private final long time;
+        private final String error;
+
+        private Result(Source source, long time, String error) {
+            this.source = source;
+            this.time = time;
+            this.error = error;
+        }
+
+        public Source getSource() {
+            return source;
+        }
+
+        /**
+         * @return the time in nanoseconds spent compiling and saving the file
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return a description of why the file failed or {@code null} if it compiled
+         */
+        public String getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Find every source file described by the {@code directoriesOrGlobs}. A directory
+     * contributes every source file in it and its sub directories, a glob contributes
+     * every file it matches and a regular file contributes itself.
+     *
+     * @param directoriesOrGlobs the paths and patterns to search
+     *
+     * @return the source files, in order and without duplicates
+     *
+     * @throws IOException if a directory cannot be searched
+     */
+    public static List<Source> findSources(List<String> directoriesOrGlobs) throws IOException {
+        Map<File, Source> sources = new LinkedHashMap<>();
+
+        for (String pattern : directoriesOrGlobs) {
+            int globStart = indexOfGlob(pattern);
+            File file = new File(pattern).getAbsoluteFile();
+
+            if (globStart < 0 && file.isFile()) {
+                sources.putIfAbsent(file, new Source(file, ""));
+                continue;
+            }
+
+            Path root;
+            PathMatcher matcher;
+            if (globStart < 0) {
+                root = file.toPath();
+                matcher = path -> path.getFileName().toString().endsWith(Compiler.FILE_EXTENSION);
+            } else {
+                //The root is the deepest directory before the first glob character
+                int rootEnd = Math.max(pattern.lastIndexOf('/', globStart), pattern.lastIndexOf(File.separatorChar, globStart));
+                root = new File(rootEnd < 0 ? "" : pattern.substring(0, rootEnd + 1)).getAbsoluteFile().toPath();
+                matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(rootEnd + 1));
+            }
+
+            if (!Files.isDirectory(root))
+                throw new IOException("Cannot find batch source " + pattern);
+
+            List<Path> matches = new ArrayList<>();
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.filter(Files::isRegularFile)
+                        .filter(path -> matcher.matches(root.relativize(path)))
+                        .sorted()
+                        .forEach(matches::add);
+            }
+
+            for (Path path : matches) {
+                Path parent = root.relativize(path).getParent();
+                sources.putIfAbsent(path.toFile(), new Source(path.toFile(), parent == null ? "" : parent.toString()));
+            }
+        }
+
+        return new ArrayList<>(sources.values());
+    }
+
+    private static int indexOfGlob(String pattern) {
+        for (int i = 0; i < pattern.length(); i++)
+            if (GLOB_CHARS.indexOf(pattern.charAt(i)) >= 0)
+                return i;
+        return -1;
+    }
+
+    private final CompilerOptions options;
+    private final File outDir;
+    private final PluginManager plugins;
+
+    /**
+     * @param options the options describing the batch, each file is compiled with these
+     *                options but without the verbose messages
+     * @param outDir  the directory to place the outputs in
+     * @param plugins the plugins shared by all of the workers
+     */
+    public BatchCompiler(CompilerOptions options, File outDir, PluginManager plugins) {
+        //The messages for different files would be interleaved, the report replaces them
+        this.options = new CompilerOptions.Builder(options).setSilent(true).build();
+        this.outDir = outDir;
+        this.plugins = plugins;
+    }
+
+    /**
+     * Compile all of the {@code sources} on {@link CompilerOptions#getJobs()} workers.
+     *
+     * @param sources  the files to compile
+     * @param progress the stream to report each completed file to, may be {@code null}
+     *
+     * @return the result for each of the {@code sources}, in the same order
+     *
+     * @throws PluginLoadException  if a plugin required by the options cannot be loaded
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public List<Result> compileAll(List<Source> sources, PrintStream progress) throws PluginLoadException, InterruptedException {
+        //Load the plugins once up front rather than racing to load them in every worker
+        this.plugins.loadSome(this.options.getPlugins());
+
+        AtomicInteger workerId = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, this.options.getJobs()), r -> {
+            Thread worker = new Thread(r, "mellowd-batch-" + workerId.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+
+        AtomicInteger completed = new AtomicInteger();
+        try {
+            List<Future<Result>> pending = new ArrayList<>(sources.size());
+            for (Source source : sources) {
+                pending.add(workers.submit(() -> {
+                    Result result = compile(source);
+                    if (progress != null) {
+                        progress.printf("[%d/%d] %s %s\n", completed.incrementAndGet(), sources.size(),
+                                source.getDisplayName(), result.isSuccess() ? "done" : "FAILED");
+                    }
+                    return result;
+                }));
+            }
+
+            List<Result> results = new ArrayList<>(sources.size());
+            for (Future<Result> result : pending) {
+                try {
+                    results.add(result.get());
+                } catch (ExecutionException e) {
+                    //compile(Source) catches everything it can recover from, this is a bug or an Error
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private Result compile(Source source) {
+        long start = System.nanoTime();
+        try {
+            File songOutDir = new File(this.outDir, source.getRelativeDir());
+            if (!songOutDir.isDirectory() && !songOutDir.mkdirs())
+                throw new IOException("Cannot create output directory " + songOutDir.getPath());
+
+            //The song is cached next to its outputs so songs with the same name don't share an entry
+            MIDISequence song = Compiler.compile(source.getFile(), songOutDir, this.options, this.plugins);
+
+            String srcName = source.getFile().getName().replace(Compiler.FILE_EXTENSION, "");
+            Compiler.saveOutputs(this.options, srcName, songOutDir, song);
+
+            return new Result(source, System.nanoTime() - start, null);
+        } catch (CompilationException e) {
+            return new Result(source, System.nanoTime() - start,
+                    String.format("Compilation exception on line %d '%s'. Problem: %s", e.getLine(), e.getText(), e.getMessage()));
+        } catch (ParseException e) {
+            return new Result(source, System.nanoTime() - start, e.getMessage().trim());
+        } catch (Exception e) {
+            return new Result(source, System.nanoTime() - start, e.toString());
+        }
+    }
+
+    /**
+     * Print the reason each failed file could not be compiled.
+     *
+     * @param results the results of {@link #compileAll(List, PrintStream)}
+     * @param err     the stream to print the failures to
+     */
+    public void printFailures(List<Result> results, PrintStream err) {
+        for (Result result : results)
+            if (!result.isSuccess())
+                err.printf("%s: %s\n", result.getSource().getDisplayName(), result.getError());
+    }
+
+    /**
+     * Print the time taken for each file and the aggregate timings of the batch.
+     *
+     * @param results  the results of {@link #compileAll(List, PrintStream)}
+     * @param wallTime the time in nanoseconds the whole batch took
+     * @param out      the stream to print the timings to
+     */
+    public void printReport(List<Result> results, long wallTime, PrintStream out) {
+        long totalTime = 0;
+        Result slowest = null;
+        int succeeded = 0;
+
+        out.println("Batch report:");
+        for (Result result : results) {
+            if (result.isSuccess()) {
+                succeeded++;
+                totalTime += result.getTime();
+                if (slowest == null || result.getTime() > slowest.getTime())
+                    slowest = result;
+                out.printf("  %8.4f s  %s\n", result.getTime() / NS_PER_SEC, result.getSource().getDisplayName());
+            } else {
+                out.printf("  %10s  %s\n", "FAILED", result.getSource().getDisplayName());
+            }
+        }
+
+        out.printf("Compiled %d of %d files in %.4f s using %d workers\n",
+                succeeded, results.size(), wallTime / NS_PER_SEC, this.options.getJobs());
+        if (slowest != null) {
+            out.printf("Total %.4f s, mean %.4f s, slowest %.4f s (%s)\n",
+                    totalTime / NS_PER_SEC, totalTime / NS_PER_SEC / succeeded,
+                    slowest.getTime() / NS_PER_SEC, slowest.getSource().getDisplayName());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package org.mellowd.io;
+
+import org.mellowd.compiler.ImportedModule;
+import org.mellowd.compiler.ModuleCache;
+import org.mellowd.midi.MIDISequence;
+import org.mellowd.midi.MIDITrack;
+import org.mellowd.midi.TimingEnvironment;
+
+import javax.sound.midi.*;
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Stores the result of compiling a source file in a {@code .mlodc} file in the output
+ * directory so that an unchanged song can be rendered again without lexing, parsing,
+ * compiling or executing it.
+ * <p>
+ * A cached song is only reused if its {@link Key} matches, which means it was written by the
+ * same compiler version from a source with the same hash, in the same time signature and with
+ * the same execution options. Every module it imported must also still hash to the same value.
+ * The tempo only changes the tempo event of the timing track so the song is loaded without its
+ * timing track and given the one of the current timing environment rather than the tempo being
+ * part of the key.
+ * <p>
+ * The file is a small header describing the key followed by the song as a type 1 standard
+ * MIDI file.
+ */
+public class CompiledSongCache {
+    public static final String FILE_EXTENSION = ".mlodc";
+
+    private static final int MAGIC = 0x4D4C4443; // MLDC
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Everything that the compiled song depends on other than the imported modules.
+     */
+    public static final class Key {
+        private final String compilerVersion;
+        private final String sourceHash;
+        private final int beatsPerMeasure;
+        private final double beatValue;
+        private final boolean deterministic;
+        private final boolean interpret;
+
+        /**
+         * @param sourceHash        the hash of the source the song is compiled from
+         * @param timingEnvironment the timing the song is compiled with
+         * @param options           the options the song is compiled with
+         */
+        public Key(String sourceHash, TimingEnvironment timingEnvironment, CompilerOptions options) {
+            this(Compiler.VERSION, sourceHash, timingEnvironment, options.isDeterministic(), options.shouldInterpret());
+        }
+
+        Key(String compilerVersion, String sourceHash, TimingEnvironment timingEnvironment, boolean deterministic, boolean interpret) {
+            this.compilerVersion = compilerVersion;
+            this.sourceHash = sourceHash;
+            this.beatsPerMeasure = timingEnvironment.getBeatsPerMeasure();
+            this.beatValue = timingEnvironment.getBeatValue().getNumQuarters();
+            this.deterministic = deterministic;
+            this.interpret = interpret;
+        }
+
+        private void write(DataOutput out) throws IOException {
+            out.writeUTF(this.compilerVersion);
+            out.writeUTF(this.sourceHash);
+            out.writeByte(this.beatsPerMeasure);
+            out.writeDouble(this.beatValue);
+            out.writeBoolean(this.deterministic);
+            out.writeBoolean(this.interpret);
+        }
+
+        private boolean matches(DataInput in) throws IOException {
+            return in.readUTF().equals(this.compilerVersion)
+                    && in.readUTF().equals(this.sourceHash)
+                    && in.readByte() == (byte) this.beatsPerMeasure
+                    && in.readDouble() == this.beatValue
+                    && in.readBoolean() == this.deterministic
+                    && in.readBoolean() == this.interpret;
+        }
+    }
+
+    /**
+     * @param source    the source file
+     * @param outputDir the directory the compiled song is written to
+     *
+     * @return the file the compiled {@code source} is cached in
+     */
+    public static File cacheFileFor(File source, File outputDir) {
+        String name = source.getName();
+        if (name.endsWith(Compiler.FILE_EXTENSION))
+            name = name.substring(0, name.length() - Compiler.FILE_EXTENSION.length());
+        return new File(outputDir.getAbsoluteFile(), name + FILE_EXTENSION);
+    }
+
+    /**
+     * Hash the contents of the {@code source} file.
+     *
+     * @param source the file to hash
+     *
+     * @return the hex encoded hash of the file
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public static String hashSource(File source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return ModuleCache.contentHash(buffer);
+        }
+    }
+
+    /**
+     * Load the song cached in the {@code cacheFile} if it is still valid.
+     *
+     * @param cacheFile         the cache file to read
+     * @param key               the key the song must have been stored with
+     * @param timingEnvironment the timing to render the song with
+     * @param finder            the finder that resolves the imports of the song
+     *
+     * @return the cached song or {@code null} if there is no valid cached song
+     */
+    public static MIDISequence load(File cacheFile, Key key, TimingEnvironment timingEnvironment, SourceFinder finder) {
+        if (!cacheFile.isFile())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+                return null;
+            if (!key.matches(in))
+                return null;
+
+            int numDependencies = in.readInt();
+            for (int i = 0; i < numDependencies; i++) {
+                String name = in.readUTF();
+                String hash = in.readUTF();
+                if (!hash.equals(ModuleCache.contentHash(finder, name.split("\\."))))
+                    return null;
+            }
+
+            return withoutTimingTrack(MidiSystem.getSequence(in), timingEnvironment);
+        } catch (SourceResolutionException | IOException | InvalidMidiDataException e) {
+            //A dependency moved or the cache is unreadable, either way it needs to be rebuilt
+            return null;
+        }
+    }
+
+    /**
+     * Write the {@code song} compiled with the {@code key} to the {@code cacheFile}.
+     *
+     * @param cacheFile         the cache file to write
+     * @param key               the key the song was compiled with
+     * @param imports           the modules imported by the source
+     * @param song              the compiled song
+     *
+     * @throws IOException if the cache file cannot be written
+     */
+    public static void store(File cacheFile, Key key, List<ImportedModule> imports, MIDISequence song) throws IOException {
+        //Write to the side and move into place so a reader never sees a partial file
+        File tmp = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getAbsoluteFile().getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                key.write(out);
+
+                out.writeInt(imports.size());
+                for (ImportedModule module : imports) {
+                    out.writeUTF(module.getName());
+                    out.writeUTF(module.getContentHash());
+                }
+
+                MidiSystem.write(song.toSequence(), 1, out);
+            }
+
+            Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private static MIDISequence withoutTimingTrack(Sequence cached, TimingEnvironment timingEnvironment) {
+        //The timing information is all in the first track, see TimingEnvironment#createSequence
+        MIDISequence song = new MIDISequence(timingEnvironment);
+        Track[] tracks = cached.getTracks();
+        for (int i = 1; i < tracks.length; i++) {
+            MIDITrack track = song.getOrCreateTrack(String.valueOf(i));
+            for (int j = 0; j < tracks[i].size(); j++)
+                track.add(tracks[i].get(j));
+        }
+        return song;
+    }
+}
@@ -3,11 +3,10 @@
 
 package org.mellowd.io;
 
-import org.antlr.v4.runtime.ANTLRFileStream;
 import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.TokenStream;
 import org.mellowd.compiler.*;
+import org.mellowd.intermediate.executable.DeterministicExecutionEngine;
+import org.mellowd.midi.MIDISequence;
 import org.mellowd.midi.TimingEnvironment;
 import org.mellowd.plugin.PluginManager;
 
@@ -72,13 +71,18 @@ public class Compiler {
         if (options.wantsVerbose())
             System.out.printf("Compiling with MellowD-v%s\n", VERSION);
 
+        if (options.isBatch()) {
+            System.exit(compileBatch(options) ? 0 : 1);
+            return;
+        }
+
         //Now that we have valid arguments we need to pull the information
         //out of the parser.
         File outDir = handleOutDir(options, new File(options.getOutputDirectory()).getAbsoluteFile());
         File toCompile = handleInFile(new File(options.getSource()).getAbsoluteFile());
 
         //Now we can begin compiling
-        Sequence compilationResult = null;
+        MIDISequence compilationResult = null;
         try {
             //Compile the input file with the given timing arguments.
             compilationResult = compile(toCompile, options);
@@ -109,12 +113,49 @@ public class Compiler {
         handleOutput(options, toCompile, outDir, compilationResult);
     }
 
-    private static void handleOutput(CompilerOptions options, File source, File outDir, Sequence compilationResult) {
+    //`compileBatch` compiles every source in the batch described by the `options` and
+    //returns true if all of them compiled.
+    private static boolean compileBatch(CompilerOptions options) throws Exception {
+        File outDir = handleOutDir(options, new File(options.getOutputDirectory()).getAbsoluteFile());
+
+        List<BatchCompiler.Source> sources;
+        try {
+            sources = BatchCompiler.findSources(options.getBatchSources());
+        } catch (IOException e) {
+            System.err.printf("Error finding batch sources. Reason: %s\n", e.getLocalizedMessage());
+            return false;
+        }
+
+        if (options.shouldPlayLive())
+            System.err.println("Songs compiled in batch mode are not played.");
+
+        if (options.wantsVerbose())
+            System.out.printf("Compiling %d files on %d workers\n", sources.size(), options.getJobs());
+
+        PluginManager plugins = new PluginManager();
+        try {
+            BatchCompiler batch = new BatchCompiler(options, outDir, plugins);
+
+            long batchStart = System.nanoTime();
+            List<BatchCompiler.Result> results = batch.compileAll(sources, options.wantsVerbose() ? System.out : null);
+            long batchTime = System.nanoTime() - batchStart;
+
+            batch.printFailures(results, System.err);
+            if (options.wantsVerbose())
+                batch.printReport(results, batchTime, System.out);
+
+            return results.stream().allMatch(BatchCompiler.Result::isSuccess);
+        } finally {
+            plugins.unloadAll();
+        }
+    }
+
+    private static void handleOutput(CompilerOptions options, File source, File outDir, MIDISequence compilationResult) {
         String srcName = source.getName().replace(FILE_EXTENSION, "");
         try {
             if (options.shouldPlayLive()) {
                 //Create a music player from the sequencer and song.
-                SequencePlayer player = new SequencePlayer(MidiSystem.getSequencer(), createSoundFontLoader(options), compilationResult);
+                SequencePlayer player = new SequencePlayer(MidiSystem.getSequencer(), createSoundFontLoader(options), toSequence(compilationResult));
 
                 if (options.wantsVerbose())
                     System.out.printf("Playing %s\n", srcName);
@@ -127,39 +168,7 @@ public class Compiler {
             }
 
             try {
-                //If the compilation result is empty then append the EOT event to
-                //make the output file playable.
-                if (compilationResult.getTickLength() == 0) {
-                    compilationResult.getTracks()[0].add(new MidiEvent(EOT_MESSAGE, 1));
-                }
-
-                if (options.shouldOutputMIDI()) {
-                    File outFile = new File(outDir, srcName + ".mid");
-                    if (!outFile.exists() && !outFile.createNewFile()) {
-                        System.err.printf("Cannot create output file %s\n", formatPath(outFile));
-                    } else {
-                        MIDIIODelegate.getInstance().save(compilationResult, outFile);
-
-                        if (options.wantsVerbose())
-                            System.out.printf("%s compiled to %s\n", srcName + FILE_EXTENSION, formatPath(outFile));
-                    }
-                }
-
-                if (options.shouldOutputWAV()) {
-                    File outFile = new File(outDir, srcName + ".wav");
-                    if (!outFile.exists() && !outFile.createNewFile()) {
-                        System.err.printf("Cannot create output file %s\n", formatPath(outFile));
-                    } else {
-                        long writeStartTime = System.nanoTime();
-                        new WavIODelegate(createSoundFontLoader(options)).save(compilationResult, outFile);
-
-                        if (options.wantsVerbose()) {
-                            long writeTime = System.nanoTime() - writeStartTime;
-                            System.out.printf("Conversion to WAV took %.4f s\n", writeTime / NS_PER_SEC);
-                            System.out.printf("%s compiled to %s\n", srcName + FILE_EXTENSION, formatPath(outFile));
-                        }
-                    }
-                }
+                saveOutputs(options, srcName, outDir, compilationResult);
             } catch (IOException e) {
                 System.err.printf("Error writing compilation result. Reason: %s.\n", e.getLocalizedMessage());
                 System.exit(1);
@@ -179,6 +188,49 @@ public class Compiler {
         }
     }
 
+    //`toSequence` copies the `compilationResult` into a `Sequence` for the synthesizer.
+    private static Sequence toSequence(MIDISequence compilationResult) {
+        Sequence sequence = compilationResult.toSequence();
+        //If the compilation result is empty then append the EOT event to
+        //make the sequence playable.
+        if (sequence.getTickLength() == 0) {
+            sequence.getTracks()[0].add(new MidiEvent(EOT_MESSAGE, 1));
+        }
+        return sequence;
+    }
+
+    //`saveOutputs` writes the requested output files for the compiled `srcName` into `outDir`.
+    //The MIDI file is written straight from the tracks, only the WAV needs a `Sequence`.
+    static void saveOutputs(CompilerOptions options, String srcName, File outDir, MIDISequence compilationResult) throws IOException {
+        if (options.shouldOutputMIDI()) {
+            File outFile = new File(outDir, srcName + ".mid");
+            if (!outFile.exists() && !outFile.createNewFile()) {
+                System.err.printf("Cannot create output file %s\n", formatPath(outFile));
+            } else {
+                MIDIIODelegate.getInstance().save(compilationResult, outFile);
+
+                if (options.wantsVerbose())
+                    System.out.printf("%s compiled to %s\n", srcName + FILE_EXTENSION, formatPath(outFile));
+            }
+        }
+
+        if (options.shouldOutputWAV()) {
+            File outFile = new File(outDir, srcName + ".wav");
+            if (!outFile.exists() && !outFile.createNewFile()) {
+                System.err.printf("Cannot create output file %s\n", formatPath(outFile));
+            } else {
+                long writeStartTime = System.nanoTime();
+                new WavIODelegate(createSoundFontLoader(options)).save(toSequence(compilationResult), outFile);
+
+                if (options.wantsVerbose()) {
+                    long writeTime = System.nanoTime() - writeStartTime;
+                    System.out.printf("Conversion to WAV took %.4f s\n", writeTime / NS_PER_SEC);
+                    System.out.printf("%s compiled to %s\n", srcName + FILE_EXTENSION, formatPath(outFile));
+                }
+            }
+        }
+    }
+
     //`handleOutDir` tries its best to use the given `outDir` and if it can't
     //it reports the problem to the user and closes the program.
     private static File handleOutDir(CompilerOptions options, File outDir) {
@@ -281,22 +333,66 @@ public class Compiler {
         };
     }
 
-    public static Sequence compile(File src, CompilerOptions options) throws Exception {
+    public static MIDISequence compile(File src, CompilerOptions options) throws Exception {
         return compile(src, options, null);
     }
 
-    public static Sequence compile(File src, CompilerOptions options, PluginManager plugins) throws Exception {
-        return compile(new ANTLRFileStream(src.getAbsolutePath()),
-                new DirectorySourceFinder(src.getAbsoluteFile().getParentFile(), FILE_EXTENSION),
-                options,
-                plugins);
+    public static MIDISequence compile(File src, CompilerOptions options, PluginManager plugins) throws Exception {
+        return compile(src, new File(options.getOutputDirectory()), options, plugins);
     }
 
-    public static Sequence compile(CharStream inStream, SourceFinder srcFinder, CompilerOptions options) throws Exception {
+    //`compile` compiles the `src` file. If the `options` use the cache the compiled song is cached
+    //in `outDir`, the directory its outputs are saved in.
+    public static MIDISequence compile(File src, File outDir, CompilerOptions options, PluginManager plugins) throws Exception {
+        SourceFinder srcFinder = new DirectorySourceFinder(src.getAbsoluteFile().getParentFile(), FILE_EXTENSION);
+
+        //Plugins can change the song in ways the cache cannot see so the result is only
+        //cached for songs that don't use them.
+        if (!options.shouldUseCache() || !options.getPlugins().isEmpty())
+            return compile(MappedCharStream.fromFile(src), srcFinder, options, plugins);
+
+        TimingEnvironment timingEnvironment = createTimingEnvironment(options);
+        File cacheFile = CompiledSongCache.cacheFileFor(src, outDir);
+        CompiledSongCache.Key key = new CompiledSongCache.Key(CompiledSongCache.hashSource(src), timingEnvironment, options);
+
+        long cacheLoadStart = System.nanoTime();
+        MIDISequence cached = CompiledSongCache.load(cacheFile, key, timingEnvironment, createSourceFinder(srcFinder, options));
+        if (cached != null) {
+            if (options.wantsVerbose()) {
+                long cacheLoadTime = System.nanoTime() - cacheLoadStart;
+                System.out.printf("Loaded %s from %s\n", formatPath(src), formatPath(cacheFile));
+                System.out.printf("Loading took %.4f s\n", cacheLoadTime / NS_PER_SEC);
+            }
+            return cached;
+        }
+
+        List<ImportedModule> imports = new LinkedList<>();
+        MIDISequence result = compile(MappedCharStream.fromFile(src), srcFinder, options, plugins, imports);
+
+        try {
+            CompiledSongCache.store(cacheFile, key, imports, result);
+        } catch (IOException e) {
+            //The cache is only an optimization, the compilation still succeeded
+            if (options.wantsVerbose())
+                System.out.printf("Could not write %s. Reason: %s\n", formatPath(cacheFile), e.getLocalizedMessage());
+        }
+
+        return result;
+    }
+
+    public static MIDISequence compile(CharStream inStream, SourceFinder srcFinder, CompilerOptions options) throws Exception {
         return compile(inStream, srcFinder, options, null);
     }
 
-    public static Sequence compile(CharStream inStream, SourceFinder srcFinder, CompilerOptions options, PluginManager plugins) throws Exception {
+    public static MIDISequence compile(CharStream inStream, SourceFinder srcFinder, CompilerOptions options, PluginManager plugins) throws Exception {
+        return compile(inStream, srcFinder, options, plugins, null);
+    }
+
+    private static TimingEnvironment createTimingEnvironment(CompilerOptions options) {
+        return new TimingEnvironment(options.getTimeSignatureTop(), options.getTimeSignatureBottom(), options.getTempo());
+    }
+
+    private static SourceFinder createSourceFinder(SourceFinder srcFinder, CompilerOptions options) {
         List<SourceFinder> sourceFinders = new LinkedList<>();
         //First priority is the given finder
         if (srcFinder != null) sourceFinders.add(srcFinder);
@@ -305,7 +401,12 @@ public class Compiler {
                 sourceFinders.add(new DirectorySourceFinder(new File(dir).getAbsoluteFile(), FILE_EXTENSION)));
         //Last priority is to look in the classpath
         sourceFinders.add(new ResourceSourceFinder(FILE_EXTENSION));
-        srcFinder = new CompositeSourceFinder(sourceFinders.toArray(new SourceFinder[sourceFinders.size()]));
+        return new CompositeSourceFinder(sourceFinders.toArray(new SourceFinder[sourceFinders.size()]));
+    }
+
+    //If `imports` is given the modules imported by the song are added to it.
+    private static MIDISequence compile(CharStream inStream, SourceFinder srcFinder, CompilerOptions options, PluginManager plugins, List<ImportedModule> imports) throws Exception {
+        srcFinder = createSourceFinder(srcFinder, options);
 
         //First we will display the inputs being used so they can double check everything
         //is as expected.
@@ -315,32 +416,23 @@ public class Compiler {
             System.out.printf("Compiling: %s\n", inStream.getSourceName());
         }
 
-        //Now we can build a lexer with the `src` as the input.
-        MellowDLexer lexer = new MellowDLexer(inStream);
-
-        //The parser takes the tokens from the lexer as well as the timing environment constructed
-        //from the input arguments and a track manager.
-        TokenStream tokens = new CommonTokenStream(lexer);
-        MellowDParser parser = new MellowDParser(tokens);
-
         ParseErrorListener errorListener = new ParseErrorListener();
-        lexer.removeErrorListeners();
-        parser.removeErrorListeners();
-        lexer.addErrorListener(errorListener);
-        parser.addErrorListener(errorListener);
 
-        TimingEnvironment timingEnvironment = new TimingEnvironment(options.getTimeSignatureTop(), options.getTimeSignatureBottom(), options.getTempo());
+        TimingEnvironment timingEnvironment = createTimingEnvironment(options);
 
-        //Parse the input!
-        long parseStart = System.nanoTime();
-        MellowDParser.SongContext parseTree = parser.song();
+        //Parse the input! The parser tries the fast SLL prediction first and only falls
+        //back to full LL prediction if that fails.
+        SongParser.Result parseResult = SongParser.getInstance().parse(inStream, errorListener);
+        MellowDParser.SongContext parseTree = parseResult.getTree();
         if (errorListener.encounteredError())
             throw new ParseException(errorListener.getErrors());
 
         if (options.wantsVerbose()) {
-            long parseTime = System.nanoTime() - parseStart;
             System.out.printf("Parsing took %.4f s\n",
-                    parseTime / NS_PER_SEC);
+                    (parseResult.getSllTime() + parseResult.getLlTime()) / NS_PER_SEC);
+            if (parseResult.isFallback())
+                System.out.printf("\tSLL took %.4f s, LL fallback took %.4f s\n",
+                        parseResult.getSllTime() / NS_PER_SEC, parseResult.getLlTime() / NS_PER_SEC);
         }
 
         //If a plugin manager is not given, make a new one. If a new one is made it
@@ -352,6 +444,9 @@ public class Compiler {
         }
 
         MellowD mellowD = new MellowD(srcFinder, timingEnvironment);
+        if (options.isDeterministic())
+            mellowD.setExecutionEngine(new DeterministicExecutionEngine());
+        mellowD.setCompileCode(!options.shouldInterpret());
 
         plugins.applySome(mellowD, options.getPlugins());
 
@@ -361,7 +456,7 @@ public class Compiler {
             if (!parseTree.importStmt().isEmpty()) {
                 // Compile the dependencies
                 long dependencyCompStart = System.nanoTime();
-                parseTree.importStmt().forEach(walker::visitImportStmt);
+                walker.visitImports(parseTree.importStmt());
                 if (options.wantsVerbose()) {
                     long dependencyCompTime = System.nanoTime() - dependencyCompStart;
                     System.out.printf("Dependency compilation took %.4f s\n",
@@ -378,13 +473,35 @@ public class Compiler {
                         compileTime / NS_PER_SEC);
             }
 
+            if (imports != null)
+                imports.addAll(walker.getImportedModules());
+
+            //Remove proven checks, fold the constant expressions so they are built once rather than every
+            //time they are executed and resolve variables to frame slots
+            long optimizationStart = System.nanoTime();
+            TypeCheckEliminator checks = new TypeCheckEliminator(mellowD.getTypeInference());
+            checks.run(mellowD);
+            ConstantFolder folder = new ConstantFolder();
+            folder.run(mellowD);
+            new SlotResolver().run(mellowD);
+            if (options.wantsVerbose()) {
+                long optimizationTime = System.nanoTime() - optimizationStart;
+                System.out.printf("Folded %d constant expressions and removed %d runtime checks\n",
+                        folder.getFoldedCount(), checks.getEliminatedCheckCount());
+                System.out.printf("Optimization took %.4f s\n",
+                        optimizationTime / NS_PER_SEC);
+            }
+
             //Execute all of the compiled statements to build the output
             long executionStart = System.nanoTime();
-            Sequence result = mellowD.execute().toSequence();
+            MIDISequence result = mellowD.execute();
             if (options.wantsVerbose()) {
                 long executionTime = System.nanoTime() - executionStart;
                 System.out.printf("Execution took %.4f s\n",
                         executionTime / NS_PER_SEC);
+                mellowD.getExecutionTimes().forEach((block, time) ->
+                        System.out.printf("\t%s took %.4f s (%.4f s waiting in syncs)\n", block, time / NS_PER_SEC,
+                                mellowD.getSyncWaitTimes().getOrDefault(block, 0L) / NS_PER_SEC));
             }
             return result;
         } finally {
@@ -20,6 +20,11 @@ public class CompilerOptions {
         private List<String> plugins;
         private String source;
         private boolean silent;
+        private boolean useCache;
+        private List<String> batchSources;
+        private int jobs;
+        private boolean deterministic;
+        private boolean interpret;
 
         public Builder() {
             this.outputDir = null;
@@ -31,6 +36,11 @@ public class CompilerOptions {
             this.plugins = new LinkedList<>();
             this.source = "";
             this.silent = false;
+            this.useCache = false;
+            this.batchSources = new LinkedList<>();
+            this.jobs = 0;
+            this.deterministic = false;
+            this.interpret = false;
         }
 
         public Builder(CompilerOptions.Builder extend) {
@@ -50,6 +60,30 @@ public class CompilerOptions {
 
             this.source = extend.source;
             this.silent = extend.silent;
+            this.useCache = extend.useCache;
+
+            this.batchSources = new LinkedList<>();
+            this.batchSources.addAll(extend.batchSources);
+            this.jobs = extend.jobs;
+            this.deterministic = extend.deterministic;
+            this.interpret = extend.interpret;
+        }
+
+        public Builder(CompilerOptions extend) {
+            this.outputDir = extend.outputDir;
+            this.timeSignature = extend.timeSignature;
+            this.tempo = extend.tempo;
+            this.outputType = extend.outputType;
+            this.sourceDirs = new LinkedList<>(extend.sourceDirs);
+            this.soundFonts = new LinkedList<>(extend.soundFonts);
+            this.plugins = new LinkedList<>(extend.plugins);
+            this.source = extend.source;
+            this.silent = extend.silent;
+            this.useCache = extend.useCache;
+            this.batchSources = new LinkedList<>(extend.batchSources);
+            this.jobs = extend.jobs;
+            this.deterministic = extend.deterministic;
+            this.interpret = extend.interpret;
         }
 
         public Builder setOutputDir(String outputDir) {
@@ -92,6 +126,31 @@ public class CompilerOptions {
             return this;
         }
 
+        public Builder setUseCache(boolean useCache) {
+            this.useCache = useCache;
+            return this;
+        }
+
+        public Builder addBatchSource(String directoryOrGlob) {
+            this.batchSources.add(directoryOrGlob);
+            return this;
+        }
+
+        public Builder setJobs(int jobs) {
+            this.jobs = jobs;
+            return this;
+        }
+
+        public Builder setDeterministic(boolean deterministic) {
+            this.deterministic = deterministic;
+            return this;
+        }
+
+        public Builder setInterpret(boolean interpret) {
+            this.interpret = interpret;
+            return this;
+        }
+
         public Builder setSource(String source) {
             this.source = source;
             return this;
@@ -107,6 +166,11 @@ public class CompilerOptions {
                     this.soundFonts,
                     this.plugins,
                     this.silent,
+                    this.useCache,
+                    this.batchSources,
+                    this.jobs == 0 ? Runtime.getRuntime().availableProcessors() : this.jobs,
+                    this.deterministic,
+                    this.interpret,
                     this.source == null ? "" : this.source
             );
         }
@@ -120,10 +184,17 @@ public class CompilerOptions {
     private final List<String> soundFonts;
     private final List<String> plugins;
     private final boolean silent;
+    private final boolean useCache;
+    private final List<String> batchSources;
+    private final int jobs;
+    private final boolean deterministic;
+    private final boolean interpret;
     private final String source;
 
     public CompilerOptions(String outputDir, int timeSignature, int tempo, int outputType, List<String> sourceDirs,
-                           List<String> soundFonts, List<String> plugins, boolean silent, String source) {
+                           List<String> soundFonts, List<String> plugins, boolean silent, boolean useCache,
+                           List<String> batchSources, int jobs, boolean deterministic, boolean interpret,
+                           String source) {
         this.outputDir = outputDir;
         this.timeSignature = timeSignature;
         this.tempo = tempo;
@@ -132,6 +203,11 @@ public class CompilerOptions {
         this.soundFonts = soundFonts;
         this.plugins = plugins;
         this.silent = silent;
+        this.useCache = useCache;
+        this.batchSources = batchSources;
+        this.jobs = jobs;
+        this.deterministic = deterministic;
+        this.interpret = interpret;
         this.source = source;
     }
 
@@ -269,6 +345,67 @@ public class CompilerOptions {
         return !this.silent;
     }
 
+    /**
+     * Check if the compiled song may be read from and saved to a cache file
+     * in the output directory. The cache is off unless it is asked for.
+     *
+     * @return true if the compiler should use the compile cache, false otherwise
+     */
+    public boolean shouldUseCache() {
+        return this.useCache;
+    }
+
+    /**
+     * Get the directories and glob patterns describing the source files to compile
+     * in batch mode. Every source file in a directory, including sub directories, is
+     * compiled.
+     *
+     * @return a list of directory paths and glob patterns
+     */
+    public List<String> getBatchSources() {
+        return this.batchSources;
+    }
+
+    /**
+     * Check if the options describe many source files to compile in batch mode
+     * rather than a single {@link #getSource() source}.
+     *
+     * @return true if the compiler should run in batch mode, false otherwise
+     */
+    public boolean isBatch() {
+        return !this.batchSources.isEmpty();
+    }
+
+    /**
+     * Get the number of source files that may be compiled at the same time
+     * in batch mode. Defaults to the number of available processors.
+     *
+     * @return the number of batch workers
+     */
+    public int getJobs() {
+        return this.jobs;
+    }
+
+    /**
+     * Check if the blocks of a song should be executed one at a time on a single
+     * thread so that the output is exactly the same every time it is compiled.
+     *
+     * @return true if the compiler should execute deterministically, false otherwise
+     */
+    public boolean isDeterministic() {
+        return this.deterministic;
+    }
+
+    /**
+     * Check if the compiled code should be run by the interpreter rather than
+     * compiled into method handles before it is executed.
+     *
+     * @return true if the compiler should only interpret the code, false otherwise
+     */
+    public boolean shouldInterpret() {
+        return this.interpret;
+    }
+
     /**
      * Get the path to the root source file to compile
      *
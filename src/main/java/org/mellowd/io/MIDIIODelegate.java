@@ -1,7 +1,11 @@
 package org.mellowd.io;
 
+import org.mellowd.midi.MIDISequence;
+import org.mellowd.midi.StandardMIDIFileWriter;
+
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -24,6 +28,16 @@ public class MIDIIODelegate implements SequenceIODelegate {
         MidiSystem.write(sequence, 1, out);
     }
 
+    /**
+     * Save the song straight from its tracks without building a {@link Sequence}.
+     * @param sequence the song to save
+     * @param outFile the file to write the song to
+     * @throws IOException if an IO exception occurs during the saving process.
+     */
+    public void save(MIDISequence sequence, File outFile) throws IOException {
+        new StandardMIDIFileWriter(sequence).write(outFile);
+    }
+
     @Override
     public String getExtension() {
         return ".mid";
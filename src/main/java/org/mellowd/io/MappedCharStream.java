@@ -0,0 +1,141 @@
+package org.mellowd.io;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link CharStream} that reads directly from a memory mapped source file. Sources are
+ * UTF-8 and the vast majority of them only contain ASCII characters in which case each byte
+ * of the file is exactly one code point and the mapped file can be used as is, without
+ * copying it onto the heap. Text is only copied out of the mapping when it is asked for.
+ * <p>
+ * Use {@link #fromFile(File)} to open a source, it falls back to decoding into a compact
+ * ANTLR code point buffer when the file contains multi-byte characters.
+ */
+public class MappedCharStream implements CharStream {
+    private static final int DECODE_BUFFER_SIZE = 8192;
+
+    /**
+     * Open the UTF-8 encoded {@code file} as a {@link CharStream}.
+     *
+     * @param file the source file to read
+     *
+     * @return a stream over the contents of the file
+     *
+     * @throws IOException if the file cannot be read or is too large to index
+     */
+    public static CharStream fromFile(File file) throws IOException {
+        String sourceName = file.getAbsolutePath();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Source file " + sourceName + " is too large to compile (" + size + " bytes)");
+
+            //The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (isAscii(buffer))
+                return new MappedCharStream(buffer, sourceName);
+
+            //Multi-byte characters need decoding to be indexed by code point
+            channel.position(0);
+            return CharStreams.fromChannel(channel, DECODE_BUFFER_SIZE, CodingErrorAction.REPLACE, sourceName);
+        }
+    }
+
+    private static boolean isAscii(ByteBuffer buffer) {
+        for (int i = 0, size = buffer.limit(); i < size; i++)
+            if (buffer.get(i) < 0)
+                return false;
+        return true;
+    }
+
+    private final ByteBuffer data;
+    private final int size;
+    private final String sourceName;
+    private int position;
+
+    private MappedCharStream(ByteBuffer data, String sourceName) {
+        this.data = data;
+        this.size = data.limit();
+        this.sourceName = sourceName;
+        this.position = 0;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = Math.min(interval.a, this.size);
+        int length = Math.min(interval.b - interval.a + 1, this.size - start);
+        if (length <= 0)
+            return "";
+
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; i++)
+            text[i] = this.data.get(start + i);
+        return new String(text, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void consume() {
+        if (this.position >= this.size)
+            throw new IllegalStateException("cannot consume EOF");
+        this.position++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0)
+            return 0; //Undefined
+
+        int offset = i < 0 ? this.position + i : this.position + i - 1;
+        if (offset < 0 || offset >= this.size)
+            return IntStream.EOF;
+
+        return this.data.get(offset);
+    }
+
+    @Override
+    public int mark() {
+        //The whole file is always available so there is nothing to buffer
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return this.position;
+    }
+
+    @Override
+    public void seek(int index) {
+        this.position = index;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return this.sourceName == null || this.sourceName.isEmpty() ? IntStream.UNKNOWN_SOURCE_NAME : this.sourceName;
+    }
+
+    @Override
+    public String toString() {
+        return getText(Interval.of(0, this.size - 1));
+    }
+}
@@ -0,0 +1,64 @@
+package org.mellowd.io.live;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How long the blocks in a live session take to execute and how often they miss the start of
+ * their measure. The {@link CycleScheduler} uses the execution times to decide how far ahead
+ * of its measure to start executing a block.
+ */
+class BlockExecutionStats {
+    // The weight of the latest execution time in the moving average
+    static final double EXECUTION_TIME_WEIGHT = 0.25;
+    // Start executing this many times the average execution time ahead of the deadline
+    static final double LEAD_TIME_FACTOR = 2.0;
+
+    // A moving average of how long each block takes to execute in nanoseconds
+    private final Map<String, Double> averageExecutionTimes = new ConcurrentHashMap<>();
+    private final AtomicLong lateExecutions = new AtomicLong();
+
+    void recordExecutionTime(String blockName, long time) {
+        this.averageExecutionTimes.merge(blockName, (double) time, (average, latest) ->
+                average + EXECUTION_TIME_WEIGHT * (latest - average));
+    }
+
+    long getAverageExecutionTime(String blockName) {
+        return Math.round(this.averageExecutionTimes.getOrDefault(blockName, 0.0));
+    }
+
+    /**
+     * @param blockName       the name of the block
+     * @param frameDurationTicks the length of a frame in ticks
+     * @param frameDurationUs the length of a frame in microseconds
+     *
+     * @return how many ticks ahead of the start of its measure the block should start executing
+     */
+    long getLeadTimeTicks(String blockName, long frameDurationTicks, long frameDurationUs) {
+        double leadUs = this.averageExecutionTimes.getOrDefault(blockName, 0.0) * LEAD_TIME_FACTOR / 1000d;
+        return (long) Math.ceil(leadUs * frameDurationTicks / frameDurationUs);
+    }
+
+    /**
+     * Check an execution that finished at {@code now} against its {@code deadline}.
+     *
+     * @param blockName the name of the block that was executed
+     * @param deadline  the state time the execution needed to be ready by
+     * @param now       the state time of the scheduler when the execution finished
+     *
+     * @return the exception to report if the execution is late, otherwise null
+     */
+    DeadlineMissedException checkDeadline(String blockName, long deadline, long now) {
+        long lateness = now - deadline;
+        if (lateness <= 0)
+            return null;
+
+        this.lateExecutions.incrementAndGet();
+        return new DeadlineMissedException(blockName, deadline, lateness);
+    }
+
+    long getLateExecutionCount() {
+        return this.lateExecutions.get();
+    }
+}
@@ -1,6 +1,7 @@
 package org.mellowd.io.live;
 
 import org.mellowd.compiler.MellowDBlock;
+import org.mellowd.compiler.StatementCompiler;
 import org.mellowd.intermediate.SchedulerDirectives;
 import org.mellowd.intermediate.executable.statements.Statement;
 import org.mellowd.midi.MIDIChannel;
@@ -10,10 +11,13 @@ import org.mellowd.primitives.Beat;
 
 import javax.sound.midi.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
@@ -63,6 +67,20 @@ public class CycleScheduler extends Thread {
             );
         }
 
+        public ActiveBlock withEnqueuedReplacementIfCurrent(Statement[] code, MIDITrack next) {
+            //The block was re-evaluated while the replacement was being executed
+            if (this.code != code)
+                return this;
+            return this.withEnqueuedReplacement(next);
+        }
+
+        public ActiveBlock withPromotedReplacement(MIDITrack replacement) {
+            //The block was re-evaluated after the replacement was queued
+            if (this.queuedReplacementBuffer != replacement)
+                return this;
+            return new ActiveBlock(this.block, this.code, replacement, null, ActiveState.READY);
+        }
+
         @Override
         public String toString() {
             StringBuilder sb = new StringBuilder("ActiveBlock {\n");
@@ -78,6 +96,42 @@ public class CycleScheduler extends Thread {
         }
     }
 
+    // A single execution of a block's code into a new buffer for the measure at the deadline
+    private static class Execution {
+        final Statement[] code;
+        final long deadline;
+        volatile boolean cancelled;
+        CompletableFuture<Void> done;
+        // The thread running the execution, interrupted on cancel so a wait in a sync stops
+        private Thread runner;
+
+        Execution(Statement[] code, long deadline) {
+            this.code = code;
+            this.deadline = deadline;
+        }
+
+        synchronized boolean begin() {
+            if (this.cancelled)
+                return false;
+            this.runner = Thread.currentThread();
+            return true;
+        }
+
+        synchronized void end() {
+            this.runner = null;
+            //A cancel that came in at the end must not interrupt the worker's next task
+            Thread.interrupted();
+        }
+
+        synchronized void cancel() {
+            this.cancelled = true;
+            if (this.runner != null)
+                this.runner.interrupt();
+        }
+    }
+
+    private static final AtomicInteger executorThreadCount = new AtomicInteger();
+
     private final TimingEnvironment timingEnvironment;
     private final Synthesizer synth;
     private final Receiver out;
@@ -86,9 +140,13 @@ public class CycleScheduler extends Thread {
 
     private final BiConsumer<MellowDBlock, Throwable> exceptionHandler;
 
-    private final ExecutorService compilationExecutorService = Executors.newCachedThreadPool();
+    private final ExecutorService executionService;
     private final AtomicReference<Map<String, ActiveBlock>> activeBlocks;
 
+    // The latest execution of each block, it may still be running
+    private final Map<String, Execution> executions;
+    private final BlockExecutionStats stats;
+
 
     private AtomicLong stateTime = new AtomicLong(0);
     Beat frameDurationInBeats;
@@ -108,6 +166,16 @@ public class CycleScheduler extends Thread {
         this.exceptionHandler = exceptionHandler;
         this.activeBlocks = new AtomicReference<>(Collections.emptyMap());
 
+        //Blocks waiting in a sync hold their thread until the rest of the sync arrives so the
+        //pool cannot be bounded
+        this.executionService = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "MellowD-BlockExecutor-" + executorThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executions = new ConcurrentHashMap<>();
+        this.stats = new BlockExecutionStats();
+
         frameDurationInBeats = Beat.EIGHTH();
         frameDurationInTicks = timingEnvironment.ticksInBeat(frameDurationInBeats);
         frameDurationInUs = timingEnvironment.approxDurationOfBeatInUs(frameDurationInBeats);
@@ -126,6 +194,25 @@ public class CycleScheduler extends Thread {
 
     public void shutdown() {
         this.running.set(false);
+        this.executions.values().forEach(Execution::cancel);
+        this.executionService.shutdownNow();
+    }
+
+    /**
+     * @param blockName the name of the block
+     *
+     * @return a moving average of the time it takes to execute the block in nanoseconds, 0
+     * if it has not been executed yet
+     */
+    public long getAverageExecutionTime(String blockName) {
+        return this.stats.getAverageExecutionTime(blockName);
+    }
+
+    /**
+     * @return the number of executions that finished after their measure started
+     */
+    public long getLateExecutionCount() {
+        return this.stats.getLateExecutionCount();
     }
 
     private long getNextMeasureStart(long after, SchedulerDirectives directives) {
@@ -160,6 +247,8 @@ public class CycleScheduler extends Thread {
         return firstQuantizedMeasureStart + (after + (quantizedMeasureDurationTicks - (after % quantizedMeasureDurationTicks)));
     }
 
+    // The updater may be retried if another thread updates the blocks at the same time so it
+    // must not have side effects
     private void updateBlock(String name, Function<ActiveBlock, ActiveBlock> updater) {
         this.activeBlocks.updateAndGet(blocks -> {
             Map<String, ActiveBlock> newBlocks = new HashMap<>(blocks);
@@ -217,29 +306,59 @@ public class CycleScheduler extends Thread {
         MellowDBlock block = active.block;
         MIDITrack nextTrack = new MIDITrack(block.getName());
 
-        // TODO save this future and cancel if a reeval before it gets scheduled
         // TODO the activeBuffer should update it's start time to the frame that it actually ends
         // up running on incase it runs too late.
-        this.compilationExecutorService.submit(() -> {
+        // The previous execution may have been cancelled but still be running on the channel
+        Execution execution = new Execution(active.code, startStateTime);
+        Execution previous = this.executions.get(block.getName());
+        CompletableFuture<Void> after = previous == null
+                ? CompletableFuture.completedFuture(null)
+                : previous.done.handle((result, err) -> null);
+        execution.done = after.thenRunAsync(() -> this.execute(block, execution, nextTrack), this.executionService);
+        this.executions.put(block.getName(), execution);
+    }
+
+    private void execute(MellowDBlock block, Execution execution, MIDITrack nextTrack) {
+        if (!execution.begin())
+            return;
+
+        try {
+            long start = System.nanoTime();
             MIDIChannel channel = block.getMIDIChannel();
             channel.setTrack(nextTrack);
 
             // Jump to the start of the measure
-            //System.out.printf("%s: %d%n", block.getName(), startStateTime);
-            channel.stepIntoFuture(startStateTime - channel.getStateTime());
+            channel.stepIntoFuture(execution.deadline - channel.getStateTime());
 
             try {
-                for (Statement statement : active.code)
+                for (Statement statement : execution.code) {
+                    if (execution.cancelled)
+                        return;
                     statement.execute(block, block);
+                }
             } catch (Throwable t) {
+                // A cancelled execution is interrupted out of its syncs, that isn't an error
+                if (execution.cancelled)
+                    return;
                 this.exceptionHandler.accept(block, t);
             }
 
             channel.finalizeEOT(Beat.ZERO);
+            this.stats.recordExecutionTime(block.getName(), System.nanoTime() - start);
+        } finally {
+            execution.end();
+        }
 
-            // TODO if too slow updating wait to replace?
-            this.updateBlock(block.getName(), b -> b.withEnqueuedReplacement(nextTrack));
-        });
+        if (execution.cancelled)
+            return;
+
+        // Everything before the next frame has already been sent
+        DeadlineMissedException missed = this.stats.checkDeadline(block.getName(), execution.deadline, this.stateTime.get());
+        if (missed != null)
+            this.exceptionHandler.accept(block, missed);
+
+        // TODO if too slow updating wait to replace?
+        this.updateBlock(block.getName(), b -> b.withEnqueuedReplacementIfCurrent(execution.code, nextTrack));
     }
 
     private void flushFrame(long start, long stop, long nextFrameStop, ObjLongConsumer<MidiMessage> send) {
@@ -265,16 +384,16 @@ public class CycleScheduler extends Thread {
                     }
                 });
                 if (activeEnd < stop) {
-                    this.activeBlocks.updateAndGet(blocks -> {
-                        //System.out.println("Updated " + active.block.getName());
-                        Map<String, ActiveBlock> newBlocks = new HashMap<>(blocks);
-                        newBlocks.put(active.block.getName(), new ActiveBlock(active.block, active.code, active.queuedReplacementBuffer, null, ActiveState.READY));
-                        return newBlocks;
-                    });
+                    //System.out.println("Updated " + active.block.getName());
+                    MIDITrack replacement = active.queuedReplacementBuffer;
+                    this.updateBlock(active.block.getName(), b -> b.withPromotedReplacement(replacement));
                 }
             } else {
                 if (active.state == ActiveState.SHUTTING_DOWN) {
                     this.activeBlocks.updateAndGet(blocks -> {
+                        ActiveBlock current = blocks.get(active.block.getName());
+                        if (current == null || current.state != ActiveState.SHUTTING_DOWN)
+                            return blocks;
                         Map<String, ActiveBlock> newBlocks = new HashMap<>(blocks);
                         newBlocks.remove(active.block.getName());
                         return newBlocks;
@@ -287,8 +406,11 @@ public class CycleScheduler extends Thread {
                             activeEnd += 1;
                     }
                     long nextMeasureStart = this.getNextMeasureStart(activeEnd, active.block.getSchedulerDirectives());
-                    // The next frame contains the start so now is the time to start executing the next frame
-                    if (nextMeasureStart < nextFrameStop || active.state == ActiveState.INITIALIZING) {
+                    // Start executing once the next frame is within the time the block usually takes to execute
+                    // of the start so that it is ready in time
+                    long executionStart = nextMeasureStart
+                            - this.stats.getLeadTimeTicks(active.block.getName(), this.frameDurationInTicks, this.frameDurationInUs);
+                    if (executionStart < nextFrameStop || active.state == ActiveState.INITIALIZING) {
                         this.startExecutingBlock(active, nextMeasureStart);
                     }
                     //}
@@ -350,13 +472,20 @@ public class CycleScheduler extends Thread {
         });
      */
     public void updateBlocks(Collection<MellowDBlock> blocks) {
+        //The code is executed every cycle so it is worth compiling. This is done before the update
+        //as the update may be retried.
+        Map<String, Statement[]> compiled = new HashMap<>();
+        blocks.forEach(newBlock -> {
+            compiled.put(newBlock.getName(), StatementCompiler.compileAll(newBlock.getCode()));
+            newBlock.clearCode();
+        });
+
         this.activeBlocks.updateAndGet(oldBlocks -> {
             Map<String, ActiveBlock> newBlocks = new HashMap<>(oldBlocks.size());
 
             blocks.forEach(newBlock -> {
                 ActiveBlock oldActiveBlock = oldBlocks.get(newBlock.getName());
-                Statement[] newCode = newBlock.getCode();
-                newBlock.clearCode();
+                Statement[] newCode = compiled.get(newBlock.getName());
                 if (oldActiveBlock != null) {
                     newBlocks.put(newBlock.getName(), new ActiveBlock(newBlock, newCode, oldActiveBlock.activeBuffer, null, ActiveState.INITIALIZING));
                 } else {
@@ -377,6 +506,13 @@ public class CycleScheduler extends Thread {
 
         Set<String> updated = blocks.stream().map(MellowDBlock::getName).collect(Collectors.toSet());
 
+        // An execution of the old code would replace the buffer with something stale
+        updated.forEach(name -> {
+            Execution stale = this.executions.get(name);
+            if (stale != null)
+                stale.cancel();
+        });
+
         // TODO this resets all blocks to the next measure, the puller should start at some offset measure
 //        this.activeBlocks.get().values().stream()
 //                .filter(e -> updated.contains(e.block.getName()))
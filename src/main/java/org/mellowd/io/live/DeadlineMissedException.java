@@ -0,0 +1,37 @@
+package org.mellowd.io.live;
+
+/**
+ * Reported by the {@link CycleScheduler} when a block finishes executing after the measure it
+ * was executed for has started playing. The part of the measure that already passed is not
+ * played.
+ */
+public class DeadlineMissedException extends RuntimeException {
+    private final String blockName;
+    private final long deadline;
+    private final long lateness;
+
+    public DeadlineMissedException(String blockName, long deadline, long lateness) {
+        super(String.format("%s finished %d ticks after its measure at %d started", blockName, lateness, deadline));
+        this.blockName = blockName;
+        this.deadline = deadline;
+        this.lateness = lateness;
+    }
+
+    public String getBlockName() {
+        return blockName;
+    }
+
+    /**
+     * @return the state time that the block's execution needed to be ready by
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return the number of ticks after the {@link #getDeadline() deadline} that the execution finished
+     */
+    public long getLateness() {
+        return lateness;
+    }
+}
@@ -2,8 +2,6 @@ package org.mellowd.io.live;
 
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.TokenStream;
 import org.mellowd.compiler.*;
 import org.mellowd.io.Compiler;
 import org.mellowd.io.DirectorySourceFinder;
@@ -20,18 +18,30 @@ import java.util.List;
 
 public class MellowDSession {
     private final MellowD mellowD;
-    private MellowDCompiler compiler;
+    private MellowDIncrementalCompiler compiler;
+    private final TypeCheckEliminator checks;
+    private final ConstantFolder folder;
+    private final SlotResolver slots;
     private Path workingDirectory;
     private final CycleScheduler scheduler;
 
     public MellowDSession(MellowD mellowD, Synthesizer synth, String workingDirectory) throws MidiUnavailableException, InvalidMidiDataException {
         this.mellowD = mellowD;
-        this.compiler = new MellowDCompiler(mellowD);
+        this.compiler = new MellowDIncrementalCompiler(mellowD);
+        //The compiled code is kept across every reload of the source
+        this.compiler.setCopySourceText(true);
+        this.checks = new TypeCheckEliminator(mellowD.getTypeInference());
+        this.folder = new ConstantFolder();
+        this.slots = new SlotResolver();
         this.workingDirectory = Paths.get(workingDirectory);
 
         if (!synth.isOpen()) synth.open();
 
         this.scheduler = new CycleScheduler(synth, mellowD.getTimingEnvironment(), (block, err) -> {
+            if (err instanceof DeadlineMissedException) {
+                System.out.println("Late executing " + block.getName() + ": " + err.getMessage());
+                return;
+            }
             System.out.println("Error executing " + block.getName() + ": " + err.getMessage());
             err.printStackTrace(System.out);
         });
@@ -62,28 +72,26 @@ public class MellowDSession {
 
     public synchronized void eval(String code) throws ParseException, CompilationException {
         CharStream input = CharStreams.fromString(code);
-        MellowDLexer lexer = new MellowDLexer(input);
-
-        TokenStream tokens = new CommonTokenStream(lexer);
-        MellowDParser parser = new MellowDParser(tokens);
 
         ParseErrorListener errorListener = new ParseErrorListener();
-        lexer.removeErrorListeners();
-        parser.removeErrorListeners();
-        lexer.addErrorListener(errorListener);
-        parser.addErrorListener(errorListener);
-
-        MellowDParser.SongContext parseTree = parser.song();
+        MellowDParser.SongContext parseTree = SongParser.getInstance().parse(input, errorListener).getTree();
         if (errorListener.encounteredError())
             throw new ParseException(errorListener.getErrors());
 
         if (!parseTree.importStmt().isEmpty()) {
             // Compile the dependencies
-            parseTree.importStmt().forEach(this.compiler::visitImportStmt);
+            this.compiler.visitImports(parseTree.importStmt());
         }
 
+        //Only the blocks whose source changed since they were last submitted are recompiled, the
+        //rest keep running the code and buffers they already have.
         this.compiler.visitSong(parseTree);
 
+        //Only the new code is folded, the blocks that weren't recompiled have none
+        this.checks.run(this.mellowD);
+        this.folder.run(this.mellowD);
+        this.slots.run(this.mellowD);
+
         try {
             List<MellowDBlock> blocks = new LinkedList<>();
             this.mellowD.listBlocks().forEach(b -> {
@@ -93,6 +101,8 @@ public class MellowDSession {
 
             this.scheduler.updateBlocks(blocks);
         } catch (Exception e) {
+            //The scheduler may not be running the new code so make sure it is compiled next time
+            this.compiler.getRecompiledBlocks().forEach(this.compiler::invalidate);
             throw new ExecutionException("Error executing code: " + e.getLocalizedMessage(), e);
         }
     }
@@ -2,8 +2,6 @@ package org.mellowd.io.repl;
 
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.TokenStream;
 import org.mellowd.compiler.*;
 import org.mellowd.io.Compiler;
 import org.mellowd.io.DirectorySourceFinder;
@@ -19,12 +17,18 @@ public class MellowDKernel implements Closeable {
     private final MellowD mellowD;
     private MellowDBlock selectedBlock;
     private MellowDCompiler compiler;
+    private final TypeCheckEliminator checks;
+    private final ConstantFolder folder;
+    private final SlotResolver slots;
     private Path workingDirectory;
     private Synthesizer synth;
 
     public MellowDKernel(MellowD mellowD, String workingDirectory) throws MidiUnavailableException {
         this.mellowD = mellowD;
         this.compiler = new MellowDCompiler(mellowD);
+        this.checks = new TypeCheckEliminator(mellowD.getTypeInference());
+        this.folder = new ConstantFolder();
+        this.slots = new SlotResolver();
         this.workingDirectory = Paths.get(workingDirectory);
         this.synth = MidiSystem.getSynthesizer();
     }
@@ -93,27 +97,21 @@ public class MellowDKernel implements Closeable {
 
     public Sequence eval(String code) throws ParseException, CompilationException {
         CharStream input = CharStreams.fromString(code);
-        MellowDLexer lexer = new MellowDLexer(input);
-
-        TokenStream tokens = new CommonTokenStream(lexer);
-        MellowDParser parser = new MellowDParser(tokens);
 
         ParseErrorListener errorListener = new ParseErrorListener();
-        lexer.removeErrorListeners();
-        parser.removeErrorListeners();
-        lexer.addErrorListener(errorListener);
-        parser.addErrorListener(errorListener);
-
-        MellowDParser.SongContext parseTree = parser.song();
+        MellowDParser.SongContext parseTree = SongParser.getInstance().parse(input, errorListener).getTree();
         if (errorListener.encounteredError())
             throw new ParseException(errorListener.getErrors());
 
         if (!parseTree.importStmt().isEmpty()) {
             // Compile the dependencies
-            parseTree.importStmt().forEach(this.compiler::visitImportStmt);
+            this.compiler.visitImports(parseTree.importStmt());
         }
 
         this.compiler.visitSong(parseTree);
+        this.checks.run(this.mellowD);
+        this.folder.run(this.mellowD);
+        this.slots.run(this.mellowD);
 
         try {
             return mellowD.execute().toSequence();
@@ -17,6 +17,11 @@ public class Knob implements MIDIController {
         return type;
     }
 
+    // The raw setting, -1 if the knob has never been twisted
+    int getSetting() {
+        return this.setting;
+    }
+
     public int currentSetting() {
         return this.setting != -1 ? this.setting : 0;
     }
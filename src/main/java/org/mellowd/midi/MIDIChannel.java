@@ -79,14 +79,135 @@ public class MIDIChannel {
         }
     }
 
+    //Everything about the channel that can change what is played, with times relative to the
+    //state time. Two equal states play the same thing when given the same input.
+    private final class RelativeState {
+        private final int velocity = dynamic.getVelocity();
+        private final int instrument = MIDIChannel.this.instrument;
+        private final int soundBank = MIDIChannel.this.soundBank;
+        private final int pitchBend = MIDIChannel.this.pitchBend;
+        private final int octaveShift = MIDIChannel.this.octaveShift;
+        private final int transposeShift = MIDIChannel.this.transposeShift;
+        private final boolean muted = MIDIChannel.this.muted;
+        private final boolean slurred = MIDIChannel.this.slurred;
+        private final Object[] noteStates = MIDIChannel.this.noteStates.toArray();
+        //The pitches whose note off is at the state time, a slurred note could still remove it
+        private final BitSet noteOffsNow = new BitSet();
+        private final long[] pendingActions = new long[scheduledActions.size()];
+        private final long[] pendingNoteOffs = noteOffQueue.toRelativeArray(stateTime);
+        private final Map<MIDIControl<?>, Integer> controllers = new HashMap<>();
+
+        private RelativeState() {
+            int i = 0;
+            for (long time : scheduledActions.keySet())
+                this.pendingActions[i++] = time - stateTime;
+
+            for (int pitch = 0; pitch < noteOffTicks.length; pitch++) {
+                if (noteOffTicks[pitch] != NO_NOTE_OFF && noteOffTicks[pitch] >= stateTime)
+                    this.noteOffsNow.set(pitch);
+            }
+
+            MIDIChannel.this.controllers.forEach((type, controller) -> {
+                if (controller instanceof Pedal)
+                    this.controllers.put(type, ((Pedal) controller).isPressed() ? 1 : 0);
+                else if (controller instanceof Knob)
+                    this.controllers.put(type, ((Knob) controller).getSetting());
+                else
+                    this.controllers.put(type, System.identityHashCode(controller));
+            });
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RelativeState)) return false;
+
+            RelativeState that = (RelativeState) o;
+
+            return hasSameSettings(that)
+                    && Arrays.equals(noteStates, that.noteStates)
+                    && noteOffsNow.equals(that.noteOffsNow)
+                    && Arrays.equals(pendingActions, that.pendingActions)
+                    && Arrays.equals(pendingNoteOffs, that.pendingNoteOffs);
+        }
+
+        //Compare everything but the state of the notes
+        private boolean hasSameSettings(RelativeState that) {
+            return velocity == that.velocity
+                    && instrument == that.instrument
+                    && soundBank == that.soundBank
+                    && pitchBend == that.pitchBend
+                    && octaveShift == that.octaveShift
+                    && transposeShift == that.transposeShift
+                    && muted == that.muted
+                    && slurred == that.slurred
+                    && controllers.equals(that.controllers);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(velocity, instrument, soundBank, pitchBend, octaveShift, transposeShift, muted, slurred,
+                    Arrays.hashCode(noteStates), noteOffsNow, Arrays.hashCode(pendingActions), Arrays.hashCode(pendingNoteOffs),
+                    controllers);
+        }
+    }
+
+    //The events a phrase added to the channel along with the state of the notes it left behind,
+    //all relative to the state time it started at. The settings of the channel are the same at
+    //the end as they were at the start.
+    private static final class Template {
+        private static final long SAME_NOTE_OFF = -2L;
+
+        private final MidiMessage[] messages;
+        private final long[] ticks;
+        private final long duration;
+        private final Object[] noteStates;
+        //The tick, relative to the start, and velocity of the last note off of each pitch at the end
+        private final long[] noteOffTicks;
+        private final int[] noteOffVelocities;
+        private final long[] actionTimes;
+        private final Runnable[] actions;
+        //The note offs still waiting to be played at the end, relative to the end
+        private final long[] pendingNoteOffs;
+
+        private Template(MidiMessage[] messages, long[] ticks, long duration, Object[] noteStates,
+                         long[] noteOffTicks, int[] noteOffVelocities, long[] actionTimes, Runnable[] actions,
+                         long[] pendingNoteOffs) {
+            this.messages = messages;
+            this.ticks = ticks;
+            this.duration = duration;
+            this.noteStates = noteStates;
+            this.noteOffTicks = noteOffTicks;
+            this.noteOffVelocities = noteOffVelocities;
+            this.actionTimes = actionTimes;
+            this.actions = actions;
+            this.pendingNoteOffs = pendingNoteOffs;
+        }
+    }
+
+    private static final int MAX_TEMPLATES_PER_SOURCE = 4;
+
     public static final int DEFAULT_OFF_VELOCITY = 96;
 
+    private static final int REST_INDEX = 128;
+    private static final long NO_NOTE_OFF = -1L;
+    //A note off that can't be cancelled by handle, such as a copy from a repeat
+    private static final long NO_HANDLE = -1L;
+
     private volatile MIDITrack midiTrack;
     private final boolean percussion;
     private final int channelNum;
     private final TimingEnvironment timingEnvironment;
     private SortedMap<Long, ScheduledAction> scheduledActions;
-    private final PitchIndexedArray<MidiEvent> noteOffEvents;
+    //Note offs are by far the most common thing done later so they are kept apart from the actions
+    private final NoteOffQueue noteOffQueue;
+    //The last note off added for each pitch, a slurred note may still remove it. The ids
+    //count up with every note off added so that it can be told which ones were added when.
+    private final long[] noteOffTicks;
+    private final int[] noteOffVelocities;
+    private final long[] noteOffHandles;
+    private final long[] noteOffIds;
+    private long noteOffCount = 0L;
     private final PitchIndexedArray<NoteState> noteStates;
 
     private int instrument = GeneralMidiInstrument.ACOUSTIC_GRAND_PIANO.midiNum();
@@ -101,16 +222,24 @@ public class MIDIChannel {
 
     private boolean slurred = false;
 
+    //Rendered templates by the object that rendered them and the state it was rendered in
+    private final Map<Object, Map<RelativeState, Template>> templates = new WeakHashMap<>();
+
     public MIDIChannel(MIDITrack midiTrack, boolean percussion, int channelNum, TimingEnvironment timingEnvironment) {
         this.midiTrack = midiTrack;
         this.percussion = percussion;
         this.channelNum = channelNum;
         this.timingEnvironment = timingEnvironment;
         this.scheduledActions = new TreeMap<>(Long::compare);
+        this.noteOffQueue = new NoteOffQueue();
         this.controllers = new HashMap<>();
 
         this.noteStates = new PitchIndexedArray<>(NoteState.OFF);
-        this.noteOffEvents = new PitchIndexedArray<>();
+        this.noteOffTicks = new long[REST_INDEX + 1];
+        Arrays.fill(this.noteOffTicks, NO_NOTE_OFF);
+        this.noteOffVelocities = new int[REST_INDEX + 1];
+        this.noteOffHandles = new long[REST_INDEX + 1];
+        this.noteOffIds = new long[REST_INDEX + 1];
     }
 
     public MIDITrack replaceTrack(MIDITrack newTrack) {
@@ -129,9 +258,10 @@ public class MIDIChannel {
             rolledBackActions.put(rolledBackTime, rolledBackAction);
         });
         this.scheduledActions = rolledBackActions;
+        this.noteOffQueue.shift(-timeDiff);
 
         // Clear the note off events because they don't exist on the new track
-        this.noteOffEvents.setAll(null);
+        Arrays.fill(this.noteOffTicks, NO_NOTE_OFF);
 
         // Turn on all notes that should be on at the average velocity
         // TODO this velocity should not be arbitrary. Consider even excluding this and leaving the notes off
@@ -188,7 +318,13 @@ public class MIDIChannel {
 
     protected void addMessage(MidiMessage message, boolean overrideMute) {
         if (overrideMute || !muted)
-            this.midiTrack.add(new MidiEvent(message, getStateTime()));
+            this.midiTrack.add(getStateTime(), message);
+    }
+
+    // Add a channel message at the state time without creating any objects for it
+    private void addChannelMessage(int command, int data1, int data2, boolean overrideMute) {
+        if (overrideMute || !muted)
+            this.midiTrack.add(this.stateTime, command | this.channelNum, data1, data2);
     }
 
     protected void addEvent(MidiEvent event, boolean overrideMute) {
@@ -257,11 +393,22 @@ public class MIDIChannel {
     public synchronized final long stepIntoFuture(long stateTimeMod) {
         long newTime = this.stateTime + stateTimeMod;
 
-        Long earliest;
-        while (!scheduledActions.isEmpty()
-                && (earliest = scheduledActions.firstKey()) <= newTime) {
-            this.stateTime = earliest;
-            scheduledActions.remove(earliest).action.run();
+        while (true) {
+            long nextNoteOff = noteOffQueue.isEmpty() ? Long.MAX_VALUE : noteOffQueue.peekTick();
+            long nextAction = scheduledActions.isEmpty() ? Long.MAX_VALUE : scheduledActions.firstKey();
+            //Note offs go first so that an action starting a note at the same time isn't cut off
+            if (nextNoteOff <= nextAction && nextNoteOff <= newTime) {
+                this.stateTime = nextNoteOff;
+                int pitch = noteOffQueue.peekPitch();
+                int velocity = noteOffQueue.peekVelocity();
+                noteOffQueue.remove();
+                this.noteOff(Pitch.getPitch(pitch), velocity);
+            } else if (nextAction <= newTime) {
+                this.stateTime = nextAction;
+                scheduledActions.remove(nextAction).action.run();
+            } else {
+                break;
+            }
         }
 
         return this.stateTime = newTime;
@@ -314,6 +461,192 @@ public class MIDIChannel {
                 schAction == null ? new ScheduledAction(action, time) : schAction.andThen(action));
     }
 
+    /**
+     * Run the {@code iteration} {@code times} times in a row. The iteration must be invariant,
+     * given the same channel state it must play the same thing, so that once the channel is in a
+     * steady state the rest of the iterations can be copied rather than run.
+     * <p>
+     * The first iteration is run normally as it may be finishing notes started before it. The
+     * events added by the second are recorded and if the channel finishes it in the same
+     * relative state that it started it, every other iteration would add the same events. They
+     * are copied at the offsets the iterations would have started at and the channel, along
+     * with any pending note offs, is moved to the end of the last iteration.
+     *
+     * @param times     the number of times to run the iteration
+     * @param iteration plays a single iteration into this channel
+     */
+    public void repeat(int times, Runnable iteration) {
+        if (times < 3) {
+            for (int i = 0; i < times; i++)
+                iteration.run();
+            return;
+        }
+
+        iteration.run();
+
+        MIDITrack track = this.midiTrack;
+        long start = this.stateTime;
+        RelativeState startState = new RelativeState();
+        long startNoteOffCount = this.noteOffCount;
+        List<MidiEvent> added = new ArrayList<>();
+        boolean recorded;
+        track.startRecording(added);
+        try {
+            iteration.run();
+        } finally {
+            recorded = track.stopRecording();
+        }
+
+        long period = this.stateTime - start;
+        if (!recorded || period <= 0 || !startState.equals(new RelativeState())) {
+            //Not in a steady state, fall back to running the rest of the iterations
+            for (int i = 2; i < times; i++)
+                iteration.run();
+            return;
+        }
+
+        replicate(track, added, period, times - 2, startNoteOffCount);
+    }
+
+    private void replicate(MIDITrack track, List<MidiEvent> events, long period, int copies, long startNoteOffCount) {
+        for (int copy = 1; copy <= copies; copy++) {
+            long offset = copy * period;
+            for (MidiEvent event : events)
+                track.add(event.getTick() + offset, event.getMessage());
+        }
+
+        //Move to where the channel would be after running the last copy
+        long shift = copies * period;
+        this.stateTime += shift;
+
+        SortedMap<Long, ScheduledAction> shiftedActions = new TreeMap<>(Long::compare);
+        this.scheduledActions.values().forEach(action ->
+                shiftedActions.put(action.stateTime + shift, new ScheduledAction(action.action, action.stateTime + shift)));
+        this.scheduledActions = shiftedActions;
+        this.noteOffQueue.shift(shift);
+
+        //A later slur may need to remove the note offs added by the last copy
+        for (int i = 0; i < this.noteOffTicks.length; i++) {
+            if (this.noteOffTicks[i] != NO_NOTE_OFF && this.noteOffIds[i] > startNoteOffCount) {
+                this.noteOffTicks[i] += shift;
+                this.noteOffHandles[i] = NO_HANDLE;
+            }
+        }
+    }
+
+    /**
+     * Play something that always renders the same events given the same channel state, such as
+     * a phrase. The first time the {@code source} is played in a particular state the events
+     * {@code render} adds are recorded as a template. The next time it is played in an equal
+     * state, relative to the state time, the template is spliced in at the state time instead
+     * of rendering it again.
+     * <p>
+     * A template is only kept if nothing is pending on the channel when it starts and its
+     * settings (dynamic, instrument, shifts, mute, slur and controllers) are the same at the end
+     * as they were at the start. The note offs it leaves pending are kept with it. The
+     * {@code source} is compared by identity and must not change after it is first played.
+     *
+     * @param source the object being played, the key for its templates
+     * @param render plays the {@code source} into this channel
+     */
+    public void playTemplate(Object source, Runnable render) {
+        if (!this.scheduledActions.isEmpty() || !this.noteOffQueue.isEmpty()) {
+            //Actions from before the source would end up in the template
+            render.run();
+            return;
+        }
+
+        RelativeState startState = new RelativeState();
+        Map<RelativeState, Template> sourceTemplates = this.templates.get(source);
+        Template template = sourceTemplates == null ? null : sourceTemplates.get(startState);
+        if (template != null) {
+            splice(template);
+            return;
+        }
+
+        if (sourceTemplates != null && sourceTemplates.size() >= MAX_TEMPLATES_PER_SOURCE) {
+            render.run();
+            return;
+        }
+
+        template = record(startState, render);
+        if (template != null)
+            this.templates.computeIfAbsent(source, k -> new HashMap<>()).put(startState, template);
+    }
+
+    private Template record(RelativeState startState, Runnable render) {
+        MIDITrack track = this.midiTrack;
+        long start = this.stateTime;
+        long[] startNoteOffIds = this.noteOffIds.clone();
+        List<MidiEvent> added = new ArrayList<>();
+        boolean recorded;
+        track.startRecording(added);
+        try {
+            render.run();
+        } finally {
+            recorded = track.stopRecording();
+        }
+
+        if (!recorded || this.midiTrack != track || !startState.hasSameSettings(new RelativeState()))
+            return null;
+
+        MidiMessage[] messages = new MidiMessage[added.size()];
+        long[] ticks = new long[added.size()];
+        for (int i = 0; i < messages.length; i++) {
+            MidiEvent event = added.get(i);
+            messages[i] = event.getMessage();
+            ticks[i] = event.getTick() - start;
+        }
+
+        long[] noteOffTicks = new long[this.noteOffTicks.length];
+        for (int i = 0; i < noteOffTicks.length; i++) {
+            if (this.noteOffTicks[i] == NO_NOTE_OFF)
+                noteOffTicks[i] = NO_NOTE_OFF;
+            else if (this.noteOffIds[i] == startNoteOffIds[i])
+                noteOffTicks[i] = Template.SAME_NOTE_OFF;
+            else
+                noteOffTicks[i] = this.noteOffTicks[i] - start;
+        }
+
+        long end = this.stateTime;
+        long[] actionTimes = new long[this.scheduledActions.size()];
+        Runnable[] actions = new Runnable[actionTimes.length];
+        int i = 0;
+        for (ScheduledAction action : this.scheduledActions.values()) {
+            actionTimes[i] = action.stateTime - end;
+            actions[i++] = action.action;
+        }
+
+        return new Template(messages, ticks, end - start, this.noteStates.toArray(),
+                noteOffTicks, this.noteOffVelocities.clone(), actionTimes, actions, this.noteOffQueue.toRelativeArray(end));
+    }
+
+    private void splice(Template template) {
+        long start = this.stateTime;
+        for (int i = 0; i < template.messages.length; i++)
+            this.midiTrack.add(template.ticks[i] + start, template.messages[i]);
+
+        this.stateTime = start + template.duration;
+        for (int i = 0; i < template.actions.length; i++) {
+            long time = this.stateTime + template.actionTimes[i];
+            this.scheduledActions.put(time, new ScheduledAction(template.actions[i], time));
+        }
+        this.noteOffQueue.addRelativeArray(template.pendingNoteOffs, this.stateTime);
+
+        this.noteStates.setFromArray(template.noteStates);
+        for (int i = 0; i < this.noteOffTicks.length; i++) {
+            long tick = template.noteOffTicks[i];
+            if (tick == NO_NOTE_OFF) {
+                this.noteOffTicks[i] = NO_NOTE_OFF;
+            } else if (tick != Template.SAME_NOTE_OFF) {
+                this.noteOffTicks[i] = start + tick;
+                this.noteOffVelocities[i] = template.noteOffVelocities[i];
+                this.noteOffHandles[i] = NO_HANDLE;
+                this.noteOffIds[i] = ++this.noteOffCount;
+            }
+        }
+    }
+
     //This method should be called to put the EOT in the correct place. The EOT (end of track message)
     //marks the end of the music played on this track. The song stops playback when all of the tracks
     //have finished playing and therefor this message must be properly placed at the end with the invocation
@@ -379,12 +712,14 @@ public class MIDIChannel {
         Pitch toPlay = pitch.shiftOctave(this.getOctaveShift()).transpose(this.getTranspose());
 
         if (this.isSlurred() && this.noteStates.get(toPlay).isSlurred) {
-            MidiEvent offEvent = noteOffEvents.get(toPlay);
+            int index = indexOf(toPlay);
+            long offTick = this.noteOffTicks[index];
             // TODO this should make sure that the off event corresponds to the last note played, 1 doesn't properly capture this
-            if (offEvent != null && (this.getStateTime() - offEvent.getTick()) < 1) {
+            if (offTick != NO_NOTE_OFF && (this.getStateTime() - offTick) < 1) {
                 //Skipping the last off and play the on softer
-                this.midiTrack.remove(offEvent);
-                noteOffEvents.set(toPlay, null);
+                this.midiTrack.cancel(this.noteOffHandles[index], offTick,
+                        ShortMessage.NOTE_OFF | this.channelNum, toPlay.getMidiNum(), this.noteOffVelocities[index]);
+                this.noteOffTicks[index] = NO_NOTE_OFF;
             }
 
             this.noteOn(toPlay, (int) (-(dynamic.getVelocity() + velocityMod) / 3d));
@@ -393,7 +728,7 @@ public class MIDIChannel {
             this.noteOn(toPlay, velocityMod);
         }
 
-        this.doLater(duration, () -> this.noteOff(toPlay, offVelocity));
+        this.noteOffQueue.add(this.stateTime + duration, toPlay.getMidiNum(), offVelocity);
     }
 
     public void playNote(Pitch pitch, int velocityMod, Beat duration, int offVelocity) {
@@ -409,30 +744,28 @@ public class MIDIChannel {
         pitches.forEach(p -> playNote(p, velocityMod, duration, offVelocity));
     }
 
+    private static int indexOf(Pitch pitch) {
+        return pitch == Pitch.REST ? REST_INDEX : pitch.getMidiNum();
+    }
+
     protected final void noteOn(Pitch pitch, int velocityMod) {
-        ShortMessage message;
-        try {
-            message = new ShortMessage(ShortMessage.NOTE_ON, channelNum, pitch.getMidiNum(), this.dynamic.louder(velocityMod).getVelocity());
-        } catch (InvalidMidiDataException e) {
-            throw new MidiRuntimeException("Cannot turn note on (" + pitch.getMidiNum() + ") with dynamic of " + this.dynamic.louder(velocityMod).getVelocity() + ".", e);
-        }
-        addMessage(message, false);
+        int velocity = this.dynamic.louder(velocityMod).getVelocity();
+        addChannelMessage(ShortMessage.NOTE_ON, pitch.getMidiNum(), velocity, false);
 
-        this.noteOffEvents.set(pitch, null);
+        this.noteOffTicks[indexOf(pitch)] = NO_NOTE_OFF;
         this.noteStates.set(pitch, NoteState.getState(true, isSlurred()));
     }
 
     protected final void noteOff(Pitch pitch, int offVelocity) {
-        ShortMessage message;
-        try {
-            message = new ShortMessage(ShortMessage.NOTE_OFF, channelNum, pitch.getMidiNum(), offVelocity);
-        } catch (InvalidMidiDataException e) {
-            throw new MidiRuntimeException("Cannot turn note off (" + pitch.getMidiNum() + ") with dynamic of " + offVelocity + ".", e);
-        }
-
-        MidiEvent offEvent = new MidiEvent(message, this.stateTime);
-        addEvent(offEvent, true);
-        this.noteOffEvents.set(pitch, offEvent);
+        if (offVelocity < GeneralMidiConstants.MIN_VELOCITY || offVelocity > GeneralMidiConstants.MAX_VELOCITY)
+            throw new MidiRuntimeException("Cannot turn note off (" + pitch.getMidiNum() + ") with dynamic of " + offVelocity + ".");
+
+        int index = indexOf(pitch);
+        this.noteOffHandles[index] = this.midiTrack.addCancellable(this.stateTime, ShortMessage.NOTE_OFF | this.channelNum,
+                pitch.getMidiNum(), offVelocity);
+        this.noteOffTicks[index] = this.stateTime;
+        this.noteOffVelocities[index] = offVelocity;
+        this.noteOffIds[index] = ++this.noteOffCount;
 
         this.noteStates.set(pitch, NoteState.getState(false, isSlurred()));
     }
@@ -20,6 +20,24 @@ public class MIDISequence {
         return sequence;
     }
 
+    public TimingEnvironment getTimingEnvironment() {
+        return timingEnvironment;
+    }
+
+    /**
+     * @return the tick of the last event in any track
+     */
+    public long getTickLength() {
+        long length = 0;
+        for (MIDITrack track : this.tracks.values())
+            length = Math.max(length, track.endTimeStamp());
+        return length;
+    }
+
+    public long getMicrosecondLength() {
+        return this.timingEnvironment.ticksToUs(this.getTickLength());
+    }
+
     public MIDITrack getOrCreateTrack(String name) {
         return this.tracks.computeIfAbsent(name, MIDITrack::new);
     }
@@ -1,63 +1,94 @@
 package org.mellowd.midi;
 
 import javax.sound.midi.*;
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.NavigableMap;
-import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.ObjLongConsumer;
 
+/**
+ * The events played by a single block. Events are stored in columns rather than as
+ * {@link MidiEvent}s, a {@code long} tick and an {@code int} with the status and data bytes of
+ * a short message packed into it. Meta and system exclusive messages are kept in a side table
+ * and the packed int refers to them by index. The {@code javax.sound.midi} objects are only
+ * created when the events are read.
+ * <p>
+ * Events are almost always added in order so adding to the end of the columns keeps them
+ * sorted. When an event is added out of order the columns are merge sorted the next time
+ * they are read. Events at the same tick keep the order they were added in.
+ * <p>
+ * An event added with {@link #addCancellable(long, int, int, int)} can be cancelled in
+ * constant time, as a slur does to the note off before it. The event is marked as a tombstone
+ * in place and the tombstones are dropped the next time the track is read.
+ */
 public class MIDITrack {
-    private static int comapreEvents(MidiEvent left, MidiEvent right) {
-        int timeCmp = Long.compare(left.getTick(), right.getTick());
-        if (timeCmp != 0) return timeCmp;
-
-        MidiMessage leftMsg = left.getMessage();
-        MidiMessage rightMsg = right.getMessage();
+    public static boolean isNotMeta(MidiEvent event) {
+        return event.getMessage().getStatus() != MetaMessage.META;
+    }
 
-        // If same, don't do the complicated comparisons
-        if (leftMsg == rightMsg) return 0;
+    public static boolean isNotMeta(MidiMessage msg) {
+        return msg.getStatus() != MetaMessage.META;
+    }
 
-        // Try and get a quick status comparison to make the distinction
-        int statusCmp = Integer.compare(leftMsg.getStatus(), rightMsg.getStatus());
-        if (statusCmp != 0) return statusCmp;
+    private static final int INITIAL_CAPACITY = 64;
+    // A packed event with this bit set is an index into the side table
+    private static final int SIDE_TABLE_FLAG = 0x80000000;
+    // A packed event that was cancelled, it doesn't collide with any short message
+    private static final int TOMBSTONE = 0x40000000;
 
-        // Resort to the shorter message
-        int lenCmp = Integer.compare(leftMsg.getLength(), rightMsg.getLength());
-        if (lenCmp != 0) return lenCmp;
+    private static int pack(int status, int data1, int data2) {
+        return (status & 0xFF) << 16 | (data1 & 0xFF) << 8 | (data2 & 0xFF);
+    }
 
-        // Worst case, compare contents
-        byte[] leftData = leftMsg.getMessage();
-        byte[] rightData = rightMsg.getMessage();
-        for (int i = 0; i < leftData.length; i++) {
-            int dataCmp = Byte.compare(leftData[i], rightData[i]);
-            if (dataCmp != 0) return dataCmp;
-        }
+    // Receives the events of a track in order, short messages are given as their bytes
+    interface EventVisitor {
+        void visitShortMessage(long tick, int status, int data1, int data2);
 
-        // They are the same...
-        return 0;
+        void visitMessage(long tick, MidiMessage message);
     }
 
-    public static boolean isNotMeta(MidiEvent event) {
-        return event.getMessage().getStatus() != MetaMessage.META;
-    }
+    private static class Recording {
+        private final List<MidiEvent> events;
+        private boolean complete = true;
 
-    public static boolean isNotMeta(MidiMessage msg) {
-        return msg.getStatus() != MetaMessage.META;
+        private Recording(List<MidiEvent> events) {
+            this.events = events;
+        }
     }
 
     private final String name;
 
-    private final NavigableMap<Long, Collection<MidiEvent>> events;
-    private final AtomicLong lastNonMetaMessageTime;
+    private long[] ticks;
+    private int[] packed;
+    private int size;
+    private boolean sorted;
+    private int tombstones;
+    //Changes whenever events move in the columns, a cancel handle is only valid in its layout
+    private int layout;
+    private final List<MidiMessage> sideTable;
+
+    private long lastNonMetaMessageTime;
+    //The number of non meta events at the last non meta time
+    private int lastNonMetaMessageCount;
+
+    //Every event added is also added to each recording, a recording may be started inside another
+    private final Deque<Recording> recordings = new ArrayDeque<>();
 
     public MIDITrack(String name) {
         this.name = name;
 
-        this.events = new TreeMap<>(Long::compare);
-        this.lastNonMetaMessageTime = new AtomicLong();
+        this.ticks = new long[INITIAL_CAPACITY];
+        this.packed = new int[INITIAL_CAPACITY];
+        this.size = 0;
+        this.sorted = true;
+        this.tombstones = 0;
+        this.layout = 0;
+        this.sideTable = new ArrayList<>();
+        this.lastNonMetaMessageTime = 0;
+        this.lastNonMetaMessageCount = 0;
     }
 
     public String getName() {
@@ -74,55 +105,388 @@ public class MIDITrack {
         this.forEach(track::add);
     }
 
-    private synchronized void updateLastNonMetaMessageTime() {
-        this.events.descendingMap().values().stream()
-                .flatMap(e -> e.stream().filter(MIDITrack::isNotMeta))
-                .findFirst()
-                .ifPresent(e -> {
-                    this.lastNonMetaMessageTime.set(e.getTick());
-                });
+    /**
+     * @return the number of events in the track
+     */
+    public synchronized int size() {
+        return this.size - this.tombstones;
     }
 
     public synchronized void add(MidiEvent event) {
-        this.lastNonMetaMessageTime.updateAndGet(last ->
-                MIDITrack.isNotMeta(event) && event.getTick() >= event.getTick()
-                        ? event.getTick() : last);
+        this.add(event.getTick(), event.getMessage(), event);
+    }
+
+    /**
+     * Add a message without wrapping it in a {@link MidiEvent}.
+     *
+     * @param tick    the time of the message
+     * @param message the message to add
+     */
+    public synchronized void add(long tick, MidiMessage message) {
+        this.add(tick, message, null);
+    }
+
+    private void add(long tick, MidiMessage message, MidiEvent event) {
+        int packedMessage;
+        if (message instanceof ShortMessage) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            packedMessage = pack(shortMessage.getStatus(), shortMessage.getData1(), shortMessage.getData2());
+        } else {
+            packedMessage = SIDE_TABLE_FLAG | this.sideTable.size();
+            this.sideTable.add(message);
+        }
+
+        this.append(tick, packedMessage);
+
+        if (!this.recordings.isEmpty()) {
+            if (event == null)
+                event = new MidiEvent(message, tick);
+            for (Recording recording : this.recordings)
+                recording.events.add(event);
+        }
+    }
+
+    /**
+     * Add a short message without creating a {@link MidiEvent} for it.
+     *
+     * @param tick   the time of the event
+     * @param status the status byte, including the channel for a channel message
+     * @param data1  the first data byte
+     * @param data2  the second data byte, ignored if the message only has one
+     */
+    public synchronized void add(long tick, int status, int data1, int data2) {
+        int packedMessage = pack(status, data1, data2);
+        this.append(tick, packedMessage);
+
+        if (!this.recordings.isEmpty()) {
+            MidiEvent event = new MidiEvent(this.unpack(packedMessage), tick);
+            for (Recording recording : this.recordings)
+                recording.events.add(event);
+        }
+    }
+
+    /**
+     * Add a short message that may be {@link #cancel(long, long, int, int, int) cancelled} later.
+     *
+     * @param tick   the time of the event
+     * @param status the status byte, including the channel for a channel message
+     * @param data1  the first data byte
+     * @param data2  the second data byte, ignored if the message only has one
+     *
+     * @return a handle to pass to {@link #cancel(long, long, int, int, int)}
+     */
+    public synchronized long addCancellable(long tick, int status, int data1, int data2) {
+        this.add(tick, status, data1, data2);
+        return (long) this.layout << 32 | (this.size - 1);
+    }
+
+    /**
+     * Remove a message added by {@link #addCancellable(long, int, int, int)}. If the events have
+     * not been read since then, this takes constant time. Otherwise the message is removed as
+     * with {@link #remove(long, int, int, int)}.
+     *
+     * @param handle the handle returned when the message was added
+     * @param tick   the time of the message
+     * @param status the status byte of the message
+     * @param data1  the first data byte of the message
+     * @param data2  the second data byte of the message
+     */
+    public synchronized void cancel(long handle, long tick, int status, int data1, int data2) {
+        int packedMessage = pack(status, data1, data2);
+        int index = (int) handle;
+        if ((int) (handle >>> 32) != this.layout || index < 0 || index >= this.size
+                || this.ticks[index] != tick || this.packed[index] != packedMessage) {
+            this.remove(tick, status, data1, data2);
+            return;
+        }
+
+        for (Recording recording : this.recordings) {
+            if (!removeFromRecording(recording.events, tick, packedMessage))
+                recording.complete = false;
+        }
+
+        this.packed[index] = TOMBSTONE;
+        this.tombstones++;
+        if (!this.isMeta(packedMessage))
+            this.removedNonMeta(tick);
+    }
+
+    private void append(long tick, int packedMessage) {
+        int size = this.size;
+        if (size == this.ticks.length) {
+            int capacity = size + (size >> 1);
+            this.ticks = Arrays.copyOf(this.ticks, capacity);
+            this.packed = Arrays.copyOf(this.packed, capacity);
+        }
+
+        if (size > 0 && tick < this.ticks[size - 1])
+            this.sorted = false;
+        this.ticks[size] = tick;
+        this.packed[size] = packedMessage;
+        this.size = size + 1;
+
+        if (!this.isMeta(packedMessage)) {
+            if (tick > this.lastNonMetaMessageTime || this.lastNonMetaMessageCount == 0) {
+                this.lastNonMetaMessageTime = tick;
+                this.lastNonMetaMessageCount = 1;
+            } else if (tick == this.lastNonMetaMessageTime) {
+                this.lastNonMetaMessageCount++;
+            }
+        }
+    }
+
+    private boolean isMeta(int packedMessage) {
+        if ((packedMessage & SIDE_TABLE_FLAG) != 0)
+            return !isNotMeta(this.sideTable.get(packedMessage & ~SIDE_TABLE_FLAG));
+        return (packedMessage >>> 16) == MetaMessage.META;
+    }
+
+    private MidiMessage unpack(int packedMessage) {
+        if ((packedMessage & SIDE_TABLE_FLAG) != 0)
+            return this.sideTable.get(packedMessage & ~SIDE_TABLE_FLAG);
+
+        int status = packedMessage >>> 16;
+        int data1 = (packedMessage >>> 8) & 0xFF;
+        int data2 = packedMessage & 0xFF;
+        try {
+            return new ShortMessage(status, data1, data2);
+        } catch (InvalidMidiDataException e) {
+            //The bytes came from a valid message
+            throw new MidiRuntimeException(e);
+        }
+    }
+
+    // Start adding every event added to this track to the `recording` as well until the
+    // matching call to stopRecording.
+    synchronized void startRecording(List<MidiEvent> recording) {
+        this.recordings.push(new Recording(recording));
+    }
 
-        this.events.compute(event.getTick(), (time, events) -> {
-            if (events == null)
-                events = new LinkedList<>();
-            events.add(event);
-            return events;
-        });
+    // Stop recording. Returns true if nothing added before the recording started was removed
+    // from the track while recording and therefore the recording holds every change made to
+    // the track.
+    synchronized boolean stopRecording() {
+        return this.recordings.pop().complete;
     }
 
     public synchronized void remove(MidiEvent event) {
-        this.events.computeIfPresent(event.getTick(), (time, events) -> {
-            if (events.remove(event) && MIDITrack.isNotMeta(event) && this.lastNonMetaMessageTime.get() >= time)
-                this.updateLastNonMetaMessageTime();
+        //Removing an event that was recorded just takes it back out of the recording
+        for (Recording recording : this.recordings) {
+            if (!recording.events.remove(event))
+                recording.complete = false;
+        }
+
+        MidiMessage message = event.getMessage();
+        if (message instanceof ShortMessage) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            this.remove(event.getTick(), pack(shortMessage.getStatus(), shortMessage.getData1(), shortMessage.getData2()), null);
+        } else {
+            this.remove(event.getTick(), SIDE_TABLE_FLAG, message);
+        }
+    }
+
+    /**
+     * Remove a short message that was added to the track. If more than one equal message was
+     * added at the {@code tick} only one is removed.
+     *
+     * @param tick   the time of the message
+     * @param status the status byte, including the channel for a channel message
+     * @param data1  the first data byte
+     * @param data2  the second data byte
+     */
+    public synchronized void remove(long tick, int status, int data1, int data2) {
+        int packedMessage = pack(status, data1, data2);
+        for (Recording recording : this.recordings) {
+            if (!removeFromRecording(recording.events, tick, packedMessage))
+                recording.complete = false;
+        }
+
+        this.remove(tick, packedMessage, null);
+    }
+
+    private static boolean removeFromRecording(List<MidiEvent> events, long tick, int packedMessage) {
+        for (int i = events.size() - 1; i >= 0; i--) {
+            MidiEvent event = events.get(i);
+            MidiMessage message = event.getMessage();
+            if (event.getTick() == tick && message instanceof ShortMessage
+                    && pack(message.getStatus(), ((ShortMessage) message).getData1(), ((ShortMessage) message).getData2()) == packedMessage) {
+                events.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Remove the last event at the tick with the packed message, or the side table `message`
+    private void remove(long tick, int packedMessage, MidiMessage message) {
+        this.prepareForRead();
+
+        //Events with the same tick and message are interchangeable so remove the last one
+        int index = this.lowerBound(tick + 1) - 1;
+        for (; index >= 0 && this.ticks[index] == tick; index--) {
+            int candidate = this.packed[index];
+            if (message == null
+                    ? candidate == packedMessage
+                    : (candidate & SIDE_TABLE_FLAG) != 0 && this.sideTable.get(candidate & ~SIDE_TABLE_FLAG) == message)
+                break;
+        }
+        if (index < 0 || this.ticks[index] != tick)
+            return;
+
+        boolean wasNotMeta = !this.isMeta(this.packed[index]);
+        System.arraycopy(this.ticks, index + 1, this.ticks, index, this.size - index - 1);
+        System.arraycopy(this.packed, index + 1, this.packed, index, this.size - index - 1);
+        this.size--;
+        this.layout++;
+
+        if (wasNotMeta)
+            this.removedNonMeta(tick);
+    }
+
+    private void removedNonMeta(long tick) {
+        if (tick != this.lastNonMetaMessageTime || --this.lastNonMetaMessageCount > 0)
+            return;
 
-            return events.isEmpty() ? null : events;
-        });
+        //The last non meta event is gone, find the one before it
+        this.lastNonMetaMessageTime = 0;
+        this.lastNonMetaMessageCount = 0;
+        for (int i = this.size - 1; i >= 0; i--) {
+            int packedMessage = this.packed[i];
+            if (packedMessage == TOMBSTONE || this.isMeta(packedMessage))
+                continue;
+
+            long time = this.ticks[i];
+            if (this.lastNonMetaMessageCount == 0 || time > this.lastNonMetaMessageTime) {
+                this.lastNonMetaMessageTime = time;
+                this.lastNonMetaMessageCount = 1;
+            } else if (time == this.lastNonMetaMessageTime) {
+                this.lastNonMetaMessageCount++;
+            } else if (this.sorted) {
+                //Everything before is earlier
+                return;
+            }
+        }
     }
 
-    public long lastNonMetaEventTime() {
-        return this.lastNonMetaMessageTime.get();
+    public synchronized long lastNonMetaEventTime() {
+        return this.lastNonMetaMessageTime;
     }
 
     public synchronized long endTimeStamp() {
-        if (this.events.isEmpty())
+        this.prepareForRead();
+        if (this.size == 0)
             return 0;
-        return this.events.lastKey();
+        return this.ticks[this.size - 1];
     }
 
     public synchronized long startTimeStamp() {
-        if (this.events.isEmpty())
+        this.prepareForRead();
+        if (this.size == 0)
             return 0;
-        return this.events.firstKey();
+        return this.ticks[0];
     }
 
     public synchronized void forEach(Consumer<MidiEvent> consumer) {
-        this.events.forEach((time, events) -> events.forEach(consumer));
+        this.prepareForRead();
+        for (int i = 0; i < this.size; i++)
+            consumer.accept(new MidiEvent(this.unpack(this.packed[i]), this.ticks[i]));
+    }
+
+    // Visit each event in order without creating objects for the short messages
+    synchronized void visit(EventVisitor visitor) {
+        this.prepareForRead();
+        for (int i = 0; i < this.size; i++) {
+            int packedMessage = this.packed[i];
+            if ((packedMessage & SIDE_TABLE_FLAG) != 0)
+                visitor.visitMessage(this.ticks[i], this.sideTable.get(packedMessage & ~SIDE_TABLE_FLAG));
+            else
+                visitor.visitShortMessage(this.ticks[i], packedMessage >>> 16, (packedMessage >>> 8) & 0xFF, packedMessage & 0xFF);
+        }
+    }
+
+    // Pass each event with a tick in [from, to) to the consumer, with its tick moved by `offset`
+    private void forEachBetween(long from, long to, long offset, ObjLongConsumer<MidiMessage> consumer) {
+        for (int i = this.lowerBound(from); i < this.size && this.ticks[i] < to; i++)
+            consumer.accept(this.unpack(this.packed[i]), offset + this.ticks[i]);
+    }
+
+    // The index of the first event at or after the tick
+    private int lowerBound(long tick) {
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.ticks[mid] < tick)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    // Drop the tombstones and sort the columns
+    private void prepareForRead() {
+        if (this.tombstones > 0) {
+            int kept = 0;
+            for (int i = 0; i < this.size; i++) {
+                if (this.packed[i] != TOMBSTONE) {
+                    this.ticks[kept] = this.ticks[i];
+                    this.packed[kept++] = this.packed[i];
+                }
+            }
+            this.size = kept;
+            this.tombstones = 0;
+            this.layout++;
+        }
+
+        if (this.sorted)
+            return;
+
+        long[] ticksBuffer = new long[this.size];
+        int[] packedBuffer = new int[this.size];
+        mergeSort(this.ticks, this.packed, ticksBuffer, packedBuffer, 0, this.size);
+        this.sorted = true;
+        this.layout++;
+    }
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    // A stable sort of [from, to) by tick. Runs that are already in order are not merged.
+    private static void mergeSort(long[] ticks, int[] packed, long[] ticksBuffer, int[] packedBuffer, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                long tick = ticks[i];
+                int packedMessage = packed[i];
+                int j = i - 1;
+                for (; j >= from && ticks[j] > tick; j--) {
+                    ticks[j + 1] = ticks[j];
+                    packed[j + 1] = packed[j];
+                }
+                ticks[j + 1] = tick;
+                packed[j + 1] = packedMessage;
+            }
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        mergeSort(ticks, packed, ticksBuffer, packedBuffer, from, mid);
+        mergeSort(ticks, packed, ticksBuffer, packedBuffer, mid, to);
+        if (ticks[mid - 1] <= ticks[mid])
+            return;
+
+        System.arraycopy(ticks, from, ticksBuffer, from, to - from);
+        System.arraycopy(packed, from, packedBuffer, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && ticksBuffer[left] <= ticksBuffer[right])) {
+                ticks[i] = ticksBuffer[left];
+                packed[i] = packedBuffer[left++];
+            } else {
+                ticks[i] = ticksBuffer[right];
+                packed[i] = packedBuffer[right++];
+            }
+        }
     }
 
     // TODO should have alternatives, not necessarily all tracks are infinte
@@ -153,30 +517,23 @@ public class MIDITrack {
 
         // If doesn't overflow then simply iterate over all those values
         if (!overflows) {
-            this.events.subMap(virtualStart, virtualStop).values().forEach(es ->
-                    es.forEach(e -> consumer.accept(e.getMessage(), virtualTrackStart + e.getTick())));
+            this.forEachBetween(virtualStart, virtualStop, virtualTrackStart, consumer);
             return;
         }
 
         // Consume the first segment
-        this.events.tailMap(virtualStart).values().forEach(es ->
-                es.forEach(e ->
-                        consumer.accept(e.getMessage(), virtualTrackStart + e.getTick())));
+        this.forEachBetween(virtualStart, Long.MAX_VALUE, virtualTrackStart, consumer);
 
         // Consume the looped segments
         int loops = (int) ((stop - start) / trackDuration);
         // from [1,loops] inclusive
         for (int loop = 1; loop <= loops; loop++) {
             long loopTrackStart = virtualTrackStart + (loop * trackDuration);
-            this.events.values().forEach(es ->
-                    es.forEach(e ->
-                            consumer.accept(e.getMessage(), loopTrackStart + e.getTick())));
+            this.forEachBetween(Long.MIN_VALUE, Long.MAX_VALUE, loopTrackStart, consumer);
         }
 
         // Consume the tail segment
         long virtualLoopTailTrackStart = virtualTrackStart + ((1 + loops) * trackDuration);
-        this.events.headMap(virtualStop).values().forEach(es ->
-                es.forEach(e ->
-                        consumer.accept(e.getMessage(), virtualLoopTailTrackStart + e.getTick())));
+        this.forEachBetween(Long.MIN_VALUE, virtualStop, virtualLoopTailTrackStart, consumer);
     }
 }
@@ -4,6 +4,10 @@ package org.mellowd.midi;
  * Created on 2016-06-14.
  */
 public class MidiRuntimeException extends RuntimeException {
+    public MidiRuntimeException(String message) {
+        super(message);
+    }
+
     public MidiRuntimeException(String message, Throwable cause) {
         super(message, cause);
     }
@@ -0,0 +1,171 @@
+package org.mellowd.midi;
+
+import java.util.Arrays;
+
+/**
+ * The note offs waiting to be played on a channel, ordered by tick. This is a binary min-heap
+ * stored in primitive arrays so scheduling a note off doesn't allocate. Note offs at the same
+ * tick come out in the order they were added.
+ */
+final class NoteOffQueue {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] ticks;
+    //The order the note offs were added in, breaks ties between equal ticks
+    private long[] sequence;
+    //The off velocity in the high bits and the pitch in the low byte
+    private int[] notes;
+    private int size;
+    private long added;
+
+    NoteOffQueue() {
+        this.ticks = new long[INITIAL_CAPACITY];
+        this.sequence = new long[INITIAL_CAPACITY];
+        this.notes = new int[INITIAL_CAPACITY];
+        this.size = 0;
+        this.added = 0;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    void add(long tick, int pitch, int velocity) {
+        if (this.size == this.ticks.length) {
+            int capacity = this.size * 2;
+            this.ticks = Arrays.copyOf(this.ticks, capacity);
+            this.sequence = Arrays.copyOf(this.sequence, capacity);
+            this.notes = Arrays.copyOf(this.notes, capacity);
+        }
+
+        int i = this.size++;
+        this.ticks[i] = tick;
+        this.sequence[i] = this.added++;
+        this.notes[i] = velocity << 8 | pitch;
+        this.siftUp(i);
+    }
+
+    /**
+     * @return the tick of the earliest note off, the queue must not be empty
+     */
+    long peekTick() {
+        return this.ticks[0];
+    }
+
+    int peekPitch() {
+        return this.notes[0] & 0xFF;
+    }
+
+    int peekVelocity() {
+        return this.notes[0] >> 8;
+    }
+
+    /**
+     * Remove the earliest note off, the queue must not be empty
+     */
+    void remove() {
+        int last = --this.size;
+        if (last > 0) {
+            this.move(last, 0);
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Move every note off by the same number of ticks. The order doesn't change.
+     *
+     * @param ticks the number of ticks to add to the time of each note off
+     */
+    void shift(long ticks) {
+        for (int i = 0; i < this.size; i++)
+            this.ticks[i] += ticks;
+    }
+
+    /**
+     * Get the note offs in the order they will be played as triples of the tick relative
+     * to {@code time}, the pitch and the off velocity.
+     *
+     * @param time the tick to make the times relative to
+     *
+     * @return the note offs, 3 elements per note off
+     */
+    long[] toRelativeArray(long time) {
+        Integer[] order = new Integer[this.size];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, this::compare);
+
+        long[] result = new long[this.size * 3];
+        for (int i = 0; i < order.length; i++) {
+            int entry = order[i];
+            result[i * 3] = this.ticks[entry] - time;
+            result[i * 3 + 1] = this.notes[entry] & 0xFF;
+            result[i * 3 + 2] = this.notes[entry] >> 8;
+        }
+        return result;
+    }
+
+    /**
+     * Add the note offs in an array made by {@link #toRelativeArray(long)}.
+     *
+     * @param noteOffs the note offs, 3 elements per note off
+     * @param time     the tick the times are relative to
+     */
+    void addRelativeArray(long[] noteOffs, long time) {
+        for (int i = 0; i < noteOffs.length; i += 3)
+            this.add(time + noteOffs[i], (int) noteOffs[i + 1], (int) noteOffs[i + 2]);
+    }
+
+    private int compare(int a, int b) {
+        int cmp = Long.compare(this.ticks[a], this.ticks[b]);
+        return cmp != 0 ? cmp : Long.compare(this.sequence[a], this.sequence[b]);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (this.compare(i, parent) >= 0)
+                return;
+            this.swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= this.size)
+                return;
+            if (child + 1 < this.size && this.compare(child + 1, child) < 0)
+                child++;
+            if (this.compare(child, i) >= 0)
+                return;
+            this.swap(i, child);
+            i = child;
+        }
+    }
+
+    private void move(int from, int to) {
+        this.ticks[to] = this.ticks[from];
+        this.sequence[to] = this.sequence[from];
+        this.notes[to] = this.notes[from];
+    }
+
+    private void swap(int a, int b) {
+        long tick = this.ticks[a];
+        this.ticks[a] = this.ticks[b];
+        this.ticks[b] = tick;
+
+        long sequence = this.sequence[a];
+        this.sequence[a] = this.sequence[b];
+        this.sequence[b] = sequence;
+
+        int note = this.notes[a];
+        this.notes[a] = this.notes[b];
+        this.notes[b] = note;
+    }
+}
@@ -2,7 +2,9 @@ package org.mellowd.midi;
 
 import org.mellowd.primitives.Pitch;
 
+import java.util.Arrays;
 import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 public class PitchIndexedArray<T> {
     private static final int REST_INDEX = 128;
@@ -35,6 +37,21 @@ public class PitchIndexedArray<T> {
             this.data[i] = value;
     }
 
+    public void replaceAll(UnaryOperator<T> operator) {
+        for (int i = 0; i < 129; i++)
+            this.data[i] = operator.apply(this.data[i]);
+    }
+
+    public Object[] toArray() {
+        return Arrays.copyOf(this.data, this.data.length, Object[].class);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void setFromArray(Object[] values) {
+        for (int i = 0; i < 129; i++)
+            this.data[i] = (T) values[i];
+    }
+
     public void forEach(BiConsumer<Pitch, T> consumer) {
         for (int i = 0; i < 128; i++)
             consumer.accept(Pitch.getPitch(i), data[i]);
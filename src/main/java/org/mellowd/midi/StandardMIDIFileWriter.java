@@ -0,0 +1,217 @@
+package org.mellowd.midi;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a {@link MIDISequence} as a type 1 standard MIDI file straight from the events in its
+ * {@link MIDITrack}s. Nothing is copied into a {@link javax.sound.midi.Sequence} first.
+ * <p>
+ * The file is the same one {@link javax.sound.midi.MidiSystem#write} writes for
+ * {@link MIDISequence#toSequence()}. The first track holds the time signature and tempo. Each
+ * track ends with a single end of track event at its last tick, and channel messages use
+ * running status. Each track is encoded twice, once to measure the length of its chunk and
+ * once to write it, so a track is never held in memory as bytes.
+ */
+public class StandardMIDIFileWriter {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final int MTHD = 0x4D546864;
+    private static final int MTRK = 0x4D54726B;
+    private static final int HEADER_LENGTH = 6;
+    private static final int FORMAT_MULTI_TRACK = 1;
+
+    private static final int END_OF_TRACK_TYPE = 0x2F;
+    private static final int NO_STATUS = -1;
+
+    private final MIDISequence sequence;
+
+    public StandardMIDIFileWriter(MIDISequence sequence) {
+        this.sequence = sequence;
+    }
+
+    public void write(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.write(channel);
+        }
+    }
+
+    public void write(WritableByteChannel channel) throws IOException {
+        TimingEnvironment timing = this.sequence.getTimingEnvironment();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        buffer.putInt(MTHD);
+        buffer.putInt(HEADER_LENGTH);
+        buffer.putShort((short) FORMAT_MULTI_TRACK);
+        buffer.putShort((short) (1 + this.sequence.listTracks().size()));
+        buffer.putShort((short) timing.getPPQ());
+
+        try {
+            //The timing track that TimingEnvironment#createSequence starts every sequence with
+            TrackEncoder timingTrack = track -> {
+                track.visitMessage(0, timing.timeSignatureMessage());
+                track.visitMessage(0, timing.tempoMessage());
+            };
+            writeTrack(timingTrack, buffer, channel);
+
+            for (MIDITrack track : this.sequence.listTracks())
+                writeTrack(track::visit, buffer, channel);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private interface TrackEncoder {
+        void encode(MIDITrack.EventVisitor visitor);
+    }
+
+    private static void writeTrack(TrackEncoder track, ByteBuffer buffer, WritableByteChannel channel) {
+        Encoder measure = new Encoder(null, null);
+        track.encode(measure);
+        measure.endTrack();
+
+        Encoder write = new Encoder(buffer, channel);
+        write.putInt(MTRK);
+        write.putInt((int) measure.length);
+        track.encode(write);
+        write.endTrack();
+    }
+
+    // Encodes the events of a track. Without a buffer it only counts the bytes it would write.
+    private static final class Encoder implements MIDITrack.EventVisitor {
+        private final ByteBuffer buffer;
+        private final WritableByteChannel channel;
+        private long length = 0;
+
+        private long lastTick = 0;
+        private int runningStatus = NO_STATUS;
+        private long endOfTrackTick = 0;
+
+        private Encoder(ByteBuffer buffer, WritableByteChannel channel) {
+            this.buffer = buffer;
+            this.channel = channel;
+        }
+
+        @Override
+        public void visitShortMessage(long tick, int status, int data1, int data2) {
+            int dataLength = dataLength(status);
+            //System messages have no place in a file
+            if (dataLength < 0)
+                return;
+
+            this.putDelta(tick);
+            if (status != this.runningStatus) {
+                this.runningStatus = status;
+                this.put(status);
+            }
+            this.put(data1);
+            if (dataLength == 2)
+                this.put(data2);
+        }
+
+        @Override
+        public void visitMessage(long tick, MidiMessage message) {
+            //Like a javax.sound.midi.Track, the track has 1 end of track at its very end
+            if (message instanceof MetaMessage && ((MetaMessage) message).getType() == END_OF_TRACK_TYPE) {
+                this.endOfTrackTick = Math.max(this.endOfTrackTick, tick);
+                return;
+            }
+
+            byte[] data = message.getMessage();
+            this.putDelta(tick);
+            this.runningStatus = NO_STATUS;
+            if (message instanceof MetaMessage) {
+                //The message already holds the type and the length of the data
+                this.put(data, 0, data.length);
+            } else {
+                //A system exclusive message is written with the length of the data after its status
+                this.put(data[0]);
+                this.putVarInt(data.length - 1);
+                this.put(data, 1, data.length - 1);
+            }
+        }
+
+        private void endTrack() {
+            this.putDelta(Math.max(this.endOfTrackTick, this.lastTick));
+            this.put(MetaMessage.META);
+            this.put(END_OF_TRACK_TYPE);
+            this.put(0);
+        }
+
+        private void putDelta(long tick) {
+            this.putVarInt(tick - this.lastTick);
+            this.lastTick = tick;
+        }
+
+        private void putVarInt(long value) {
+            int shift = 63;
+            while (shift > 0 && (value & (0x7FL << shift)) == 0)
+                shift -= 7;
+            for (; shift > 0; shift -= 7)
+                this.put((int) ((value >>> shift) & 0x7F) | 0x80);
+            this.put((int) (value & 0x7F));
+        }
+
+        private void putInt(int value) {
+            this.put(value >>> 24);
+            this.put(value >>> 16);
+            this.put(value >>> 8);
+            this.put(value);
+        }
+
+        private void put(byte[] data, int offset, int length) {
+            for (int i = offset; i < offset + length; i++)
+                this.put(data[i]);
+        }
+
+        private void put(int b) {
+            this.length++;
+            if (this.buffer == null)
+                return;
+
+            if (!this.buffer.hasRemaining())
+                this.flush();
+            this.buffer.put((byte) b);
+        }
+
+        private void flush() {
+            this.buffer.flip();
+            try {
+                while (this.buffer.hasRemaining())
+                    this.channel.write(this.buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.buffer.clear();
+        }
+    }
+
+    // The number of data bytes after a channel message's status or -1 if it isn't one
+    private static int dataLength(int status) {
+        switch (status & 0xF0) {
+            case 0x80:
+            case 0x90:
+            case 0xA0:
+            case 0xB0:
+            case 0xE0:
+                return 2;
+            case 0xC0:
+            case 0xD0:
+                return 1;
+            default:
+                return -1;
+        }
+    }
+}
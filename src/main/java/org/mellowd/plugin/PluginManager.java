@@ -4,10 +4,11 @@ import org.mellowd.compiler.MellowD;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
+// A manager may be shared by compilations running on different threads, see BatchCompiler.
 public class PluginManager {
     private static String formatMetaDataFilePath(String name) {
         return "/" + name + ".mellowd-plugin.properties";
@@ -16,7 +17,7 @@ public class PluginManager {
     private final Map<String, MellowDPlugin> plugins;
 
     public PluginManager() {
-        this.plugins = new HashMap<>();
+        this.plugins = new ConcurrentHashMap<>();
     }
 
     /**
@@ -65,7 +66,29 @@ public class PluginManager {
         MellowDPlugin plugin = this.plugins.get(name);
         if (plugin != null) return plugin;
 
-        return loadPluginOnClasspath(name);
+        synchronized (this) {
+            // Another thread may have loaded it while we were waiting
+            plugin = this.plugins.get(name);
+            if (plugin != null) return plugin;
+
+            plugin = loadPluginOnClasspath(name);
+            this.plugins.put(name, plugin);
+            return plugin;
+        }
+    }
+
+    /**
+     * Load the plugins with the given id's if they are not already loaded
+     * so that later calls to {@link #applySome(MellowD, Iterable)} don't
+     * need to.
+     *
+     * @param plugins the plugins to load
+     *
+     * @throws PluginLoadException if a plugin could not be loaded
+     */
+    public void loadSome(Iterable<String> plugins) throws PluginLoadException {
+        for (String pluginId : plugins)
+            getOrLoadPlugin(pluginId);
     }
 
     /**
@@ -113,7 +136,7 @@ public class PluginManager {
     /**
      * Unload all of the plugins from this manager
      */
-    public void unloadAll() {
+    public synchronized void unloadAll() {
         this.plugins.values().forEach(MellowDPlugin::onUnload);
         this.plugins.clear();
     }
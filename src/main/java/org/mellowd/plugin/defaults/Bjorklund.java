@@ -31,7 +31,7 @@ public class Bjorklund implements MellowDPlugin {
 
         this.bjorklundFunctionName = QualifiedName.fromString("mellowd.euclid");
         this.bjorklundFunction = new Abstraction(
-                new Parameters(this.melodyParam, this.pulsesParam, this.stepsParam), false,
+                new Parameters(this.melodyParam, this.pulsesParam, this.stepsParam), false, true,
                 Statement.lift((env, out) -> {
                     Memory locals = env.getMemory();
 
@@ -102,7 +102,7 @@ public class CompilerTest {
                     .setTempo(tempo)
                     .setSilent(true)
                     .build();
-            Sequence compilationResult = Compiler.compile(toCompile, options);
+            Sequence compilationResult = Compiler.compile(toCompile, options).toSequence();
             writeOut(compilationResult);
             System.out.println();
         } catch (IOException e) {
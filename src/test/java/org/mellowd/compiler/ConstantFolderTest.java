@@ -0,0 +1,89 @@
+package org.mellowd.compiler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.intermediate.Phrase;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.expressions.*;
+import org.mellowd.primitives.*;
+import org.mellowd.testutil.DummyEnvironment;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ConstantFolderTest {
+    private ConcatenationDelegate<Melody> melodyDelegate;
+    private ConcatenationDelegate<Rhythm> rhythmDelegate;
+    private ConstantFolder folder;
+
+    @Before
+    public void setUp() throws Exception {
+        this.melodyDelegate = new ConcatenationDelegate<>();
+        this.melodyDelegate.addDelegate(Articulated.class, Melody::append);
+        this.melodyDelegate.addDelegate(Pitch.class, Melody::append);
+
+        this.rhythmDelegate = new ConcatenationDelegate<>();
+        this.rhythmDelegate.addDelegate(Beat.class, Rhythm::append);
+
+        this.folder = new ConstantFolder();
+    }
+
+    @Test
+    public void literalPhraseFolds() throws Exception {
+        Concatenation<Melody> melody = new Concatenation<>(Melody::new, this.melodyDelegate);
+        melody.addArgument(new Articulate(new Constant<>(Pitch.C), new Constant<>(Articulation.STACCATO)));
+        melody.addArgument(new Constant<>(Pitch.D));
+
+        Concatenation<Rhythm> rhythm = new Concatenation<>(Rhythm::new, this.rhythmDelegate);
+        rhythm.addArgument(new Constant<>(Beat.QUARTER()));
+        rhythm.addArgument(new Constant<>(Beat.HALF()));
+
+        Expression<Phrase> folded = this.folder.transform(new PhraseConstruction(melody, rhythm));
+
+        assertTrue("Literal phrase was not folded", folded instanceof Constant);
+        assertEquals("Articulate, both concatenations and the phrase should be folded",
+                4, this.folder.getFoldedCount());
+
+        Phrase phrase = folded.evaluate(DummyEnvironment.getInstance());
+        assertEquals(2, phrase.getMelody().size());
+        assertEquals(2, phrase.getRhythm().size());
+    }
+
+    @Test
+    public void referencesAreNotFolded() throws Exception {
+        Concatenation<Melody> melody = new Concatenation<>(Melody::new, this.melodyDelegate);
+        melody.addArgument(new Articulate(new Constant<>(Pitch.C), new Constant<>(Articulation.ACCENT)));
+        melody.addArgument(new ReferenceResolution(QualifiedName.ofUnqualified("x")));
+
+        Expression<Melody> folded = this.folder.transform(melody);
+
+        assertSame("Melody with a reference was folded", melody, folded);
+        assertEquals("Only the constant articulation should be folded",
+                1, this.folder.getFoldedCount());
+    }
+
+    @Test
+    public void failuresAreLeftForRuntime() throws Exception {
+        Concatenation<Rhythm> rhythm = new Concatenation<>(Rhythm::new, this.rhythmDelegate);
+        rhythm.addArgument(new Constant<>("not a beat"));
+
+        Expression<Rhythm> folded = this.folder.transform(rhythm);
+
+        assertSame("Invalid concatenation was folded", rhythm, folded);
+        assertEquals(0, this.folder.getFoldedCount());
+    }
+
+    @Test
+    public void environmentAccessIsLeftForRuntime() throws Exception {
+        Expression<Integer> timed = Expression.lift(env -> env.getTimingEnvironment().getPPQ());
+        Expression<Object> read = Expression.lift(env -> env.getMemory().get(QualifiedName.ofUnqualified("x")));
+
+        assertSame("Expression reading the timing was folded", timed, this.folder.foldIfConstant(timed));
+        Expression<Object> folded = this.folder.foldIfConstant(read);
+        assertTrue(folded instanceof Constant);
+        assertNull("Nothing is defined while folding", folded.evaluate(DummyEnvironment.getInstance()));
+        assertEquals(1, this.folder.getFoldedCount());
+    }
+}
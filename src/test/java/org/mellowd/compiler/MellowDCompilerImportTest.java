@@ -0,0 +1,133 @@
+package org.mellowd.compiler;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.io.SourceFinder;
+import org.mellowd.io.SourceResolutionException;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.midi.TimingEnvironment;
+import org.mellowd.primitives.Melody;
+import org.mellowd.primitives.Pitch;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class MellowDCompilerImportTest {
+    private final Map<String, String> sources = new HashMap<>();
+    private final List<String> resolved = Collections.synchronizedList(new ArrayList<>());
+
+    private MellowD mellowD(SourceFinder finder) {
+        MellowD mellowD = new MellowD(finder, new TimingEnvironment(4, 4, 120));
+        mellowD.setModuleCache(new ModuleCache(4));
+        return mellowD;
+    }
+
+    private SourceFinder finder() {
+        return path -> {
+            String name = String.join(".", path);
+            this.resolved.add(name);
+            String source = this.sources.get(name);
+            if (source == null)
+                throw new SourceResolutionException(path, "No source for " + name);
+            return new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8));
+        };
+    }
+
+    private static void visitImports(MellowD mellowD, String song) {
+        MellowDParser.SongContext tree = SongParser.getInstance().parse(CharStreams.fromString(song), null).getTree();
+        new MellowDCompiler(mellowD).visitImports(tree.importStmt());
+    }
+
+    private static Melody melody(Pitch... pitches) {
+        Melody melody = new Melody();
+        for (Pitch pitch : pitches)
+            melody.append(pitch);
+        return melody;
+    }
+
+    @Test
+    public void importsAreLoadedInParallel() throws Exception {
+        this.sources.put("one", "motif -> [c]");
+        this.sources.put("two", "motif -> [d]");
+
+        //Neither load can finish until both have started
+        CountDownLatch started = new CountDownLatch(2);
+        SourceFinder finder = finder();
+        MellowD mellowD = mellowD(path -> {
+            started.countDown();
+            try {
+                if (!started.await(5, TimeUnit.SECONDS))
+                    throw new SourceResolutionException(path, "The imports were loaded one at a time");
+            } catch (InterruptedException e) {
+                throw new SourceResolutionException(path, "Interrupted");
+            }
+            return finder.resolve(path);
+        });
+
+        visitImports(mellowD, "import * from one\nimport * from two\n");
+
+        assertEquals(melody(Pitch.C), mellowD.getGlobals().get(QualifiedName.fromString("one.motif")));
+        assertEquals(melody(Pitch.D), mellowD.getGlobals().get(QualifiedName.fromString("two.motif")));
+    }
+
+    @Test
+    public void importsAreAppliedInOrder() throws Exception {
+        this.sources.put("one", "motif -> [c]");
+        this.sources.put("two", "motif -> [d]");
+        MellowD mellowD = mellowD(finder());
+
+        visitImports(mellowD, "import * from one as lib\nimport * from two as lib\n");
+
+        assertEquals(melody(Pitch.D), mellowD.getGlobals().get(QualifiedName.fromString("lib.motif")));
+    }
+
+    @Test
+    public void sameModuleIsLoadedOnce() throws Exception {
+        this.sources.put("one", "motif -> [c]");
+        MellowD mellowD = mellowD(finder());
+
+        visitImports(mellowD, "import * from one\nimport * from one as other\n");
+
+        assertEquals(Collections.singletonList("one"), this.resolved);
+        assertEquals(melody(Pitch.C), mellowD.getGlobals().get(QualifiedName.fromString("other.motif")));
+    }
+
+    @Test
+    public void cyclicImportsAreNotFollowed() throws Exception {
+        this.sources.put("one", "import * from two\nmotif -> [c]");
+        this.sources.put("two", "import * from one\nmotif -> [d]");
+        MellowD mellowD = mellowD(finder());
+
+        visitImports(mellowD, "import * from one\n");
+
+        //The imports of a module are never applied so they aren't loaded
+        assertEquals(Collections.singletonList("one"), this.resolved);
+        assertEquals(melody(Pitch.C), mellowD.getGlobals().get(QualifiedName.fromString("one.motif")));
+        assertNull(mellowD.getGlobals().get(QualifiedName.fromString("two.motif")));
+    }
+
+    @Test
+    public void loadErrorIsReportedOnItsImport() throws Exception {
+        this.sources.put("one", "motif -> [c]");
+        MellowD mellowD = mellowD(finder());
+
+        try {
+            visitImports(mellowD, "import * from one\nimport * from missing\n");
+            fail("The missing import was not reported");
+        } catch (CompilationException e) {
+            assertTrue(e.getCause() instanceof SourceResolutionException);
+            assertEquals(2, e.getLine());
+        }
+
+        //The imports before the failed one are still applied
+        assertEquals(melody(Pitch.C), mellowD.getGlobals().get(QualifiedName.fromString("one.motif")));
+    }
+}
@@ -0,0 +1,121 @@
+package org.mellowd.compiler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.intermediate.executable.PooledExecutionEngine;
+import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.midi.TimingEnvironment;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class MellowDExecuteTest {
+    private PooledExecutionEngine engine;
+    private MellowD mellowD;
+
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        this.engine = new PooledExecutionEngine(2);
+        this.mellowD = new MellowD(null, new TimingEnvironment(4, 4, 120));
+        this.mellowD.setExecutionEngine(this.engine);
+        this.mellowD.setCompileCode(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.engine.shutdown();
+    }
+
+    private static Statement sleep(long millis) {
+        return Statement.lift((env, output) -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    // A statement that never finishes on its own
+    private Statement hang() {
+        return Statement.lift((env, output) -> {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                this.interrupted.countDown();
+            }
+        });
+    }
+
+    @Test
+    public void executionTimesAreRecordedPerBlock() throws Exception {
+        this.mellowD.defineBlock("lead", false).appendStatement(sleep(20));
+        this.mellowD.defineBlock("bass", false).appendStatement(sleep(40));
+
+        this.mellowD.execute();
+
+        assertEquals(new HashSet<>(Arrays.asList("lead", "bass")), this.mellowD.getExecutionTimes().keySet());
+        assertTrue(this.mellowD.getExecutionTimes().get("lead") >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(this.mellowD.getExecutionTimes().get("bass") >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(new HashSet<>(Arrays.asList("lead", "bass")), this.mellowD.getSyncWaitTimes().keySet());
+        assertEquals(0L, (long) this.mellowD.getSyncWaitTimes().get("lead"));
+    }
+
+    @Test
+    public void failureCancelsOtherBlocksAndPropagates() throws Exception {
+        this.mellowD.defineBlock("lead", false).appendStatement(Statement.lift((env, output) -> {
+            throw new IllegalStateException("lead failed");
+        }));
+        this.mellowD.defineBlock("bass", false).appendStatement(hang());
+
+        try {
+            this.mellowD.execute();
+            fail("The failure was not reported");
+        } catch (IllegalStateException e) {
+            assertEquals("lead failed", e.getMessage());
+        }
+
+        assertTrue("The other block was not cancelled", this.interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(this.mellowD.getExecutionTimes().isEmpty());
+        assertEquals(0, this.mellowD.getBlock("bass").getCode().length);
+    }
+
+    @Test
+    public void timeoutCancelsBlocks() throws Exception {
+        this.mellowD.setExecutionTimeout(100, TimeUnit.MILLISECONDS);
+        this.mellowD.defineBlock("lead", false).appendStatement(hang());
+
+        try {
+            this.mellowD.execute();
+            fail("The execution did not time out");
+        } catch (TimeoutException expected) { }
+
+        assertTrue("The block was not cancelled", this.interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void noTimeoutByDefault() throws Exception {
+        assertEquals(0, this.mellowD.getExecutionTimeout(TimeUnit.MILLISECONDS));
+
+        this.mellowD.defineBlock("lead", false).appendStatement(sleep(20));
+        this.mellowD.execute();
+
+        assertTrue(this.mellowD.getExecutionTimes().get("lead") >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timeoutMustBePositive() throws Exception {
+        this.mellowD.setExecutionTimeout(0, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,131 @@
+package org.mellowd.compiler;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.TestErrorListener;
+import org.mellowd.io.SourceFinder;
+import org.mellowd.midi.TimingEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class MellowDIncrementalCompilerTest {
+    private final Map<String, String> sources = new HashMap<>();
+    private final SourceFinder finder = path ->
+            new ByteArrayInputStream(sources.get(String.join(".", path)).getBytes(StandardCharsets.UTF_8));
+
+    private MellowDIncrementalCompiler compiler;
+
+    @Before
+    public void setUp() throws Exception {
+        MellowD mellowD = new MellowD(this.finder, new TimingEnvironment(4, 4, 120));
+        mellowD.setModuleCache(new ModuleCache(4));
+        this.compiler = new MellowDIncrementalCompiler(mellowD);
+        submit("def block lead, bass\n");
+    }
+
+    // Compile the source like a live session does and return the blocks that were recompiled
+    private Set<String> submit(String source) {
+        TestErrorListener errorListener = new TestErrorListener();
+        MellowDParser.SongContext song = SongParser.getInstance().parse(CharStreams.fromString(source), errorListener).getTree();
+        assertFalse(errorListener.getErrors().toString(), errorListener.encounteredError());
+
+        if (!song.importStmt().isEmpty())
+            this.compiler.visitImports(song.importStmt());
+        this.compiler.visitSong(song);
+        return this.compiler.getRecompiledBlocks();
+    }
+
+    @Test
+    public void unchangedBlockIsSkipped() throws Exception {
+        String song = "lead { [c, d]*<q> }\n";
+
+        assertEquals(Collections.singleton("lead"), submit(song));
+        assertEquals(Collections.emptySet(), submit(song));
+    }
+
+    @Test
+    public void formattingIsIgnored() throws Exception {
+        submit("lead { [c, d]*<q> }\n");
+
+        assertEquals(Collections.emptySet(), submit("//The same block\n" +
+                "lead {\n" +
+                "    [c,   d] * <q>\n" +
+                "}\n"));
+    }
+
+    @Test
+    public void changedBlockIsRecompiled() throws Exception {
+        submit("lead { [c, d]*<q> }\n" +
+                "bass { [e]*<q> }\n");
+
+        assertEquals(Collections.singleton("lead"), submit("lead { [c, e]*<q> }\n" +
+                "bass { [e]*<q> }\n"));
+    }
+
+    @Test
+    public void changedDefinitionRecompilesReaders() throws Exception {
+        submit("motif -> [c, d]\n" +
+                "theme -> motif\n" +
+                "lead { theme*<q> }\n" +
+                "bass { [e]*<q> }\n");
+
+        //lead reads motif through theme
+        assertEquals(Collections.singleton("lead"), submit("motif -> [c, e]\n" +
+                "theme -> motif\n" +
+                "lead { theme*<q> }\n" +
+                "bass { [e]*<q> }\n"));
+    }
+
+    @Test
+    public void definitionFromEarlierSubmissionIsTracked() throws Exception {
+        submit("motif -> [c, d]\n");
+        submit("lead { motif*<q> }\n");
+
+        submit("motif -> [c, e]\n");
+        assertEquals(Collections.singleton("lead"), submit("lead { motif*<q> }\n"));
+    }
+
+    @Test
+    public void changedImportRecompilesReaders() throws Exception {
+        this.sources.put("lib", "motif -> [c, d]");
+        String song = "import * from lib\n" +
+                "lead { lib.motif*<q> }\n";
+
+        submit(song);
+        assertEquals(Collections.emptySet(), submit(song));
+
+        this.sources.put("lib", "motif -> [c, e]");
+        assertEquals(Collections.singleton("lead"), submit(song));
+    }
+
+    @Test
+    public void syncedBlocksAreRecompiledTogether() throws Exception {
+        submit("lead, bass { [c]*<q> }\n" +
+                "bass { [e]*<q> }\n");
+
+        assertEquals(new HashSet<>(Arrays.asList("lead", "bass")), submit("lead, bass { [c]*<q> }\n" +
+                "bass { [f]*<q> }\n"));
+    }
+
+    @Test
+    public void invalidatedBlockIsRecompiled() throws Exception {
+        String song = "lead { [c, d]*<q> }\n";
+        submit(song);
+
+        this.compiler.invalidate("lead");
+        assertEquals(Collections.singleton("lead"), submit(song));
+    }
+}
@@ -0,0 +1,68 @@
+package org.mellowd.compiler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.io.SourceFinder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ModuleCacheTest {
+    private final Map<String, String> sources = new HashMap<>();
+    private final SourceFinder finder = path ->
+            new ByteArrayInputStream(sources.get(String.join(".", path)).getBytes(StandardCharsets.UTF_8));
+
+    @Test
+    public void testUnchangedSourceIsReused() throws Exception {
+        ModuleCache cache = new ModuleCache(4);
+        sources.put("lib.a", "x -> [a, b, c]");
+
+        ImportedModule first = cache.load(finder, new String[]{ "lib", "a" });
+        ImportedModule second = cache.load(finder, new String[]{ "lib", "a" });
+
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testChangedSourceIsReparsed() throws Exception {
+        ModuleCache cache = new ModuleCache(4);
+        sources.put("lib.a", "x -> [a, b, c]");
+        ImportedModule first = cache.load(finder, new String[]{ "lib", "a" });
+
+        sources.put("lib.a", "x -> [d, e, f]");
+        ImportedModule second = cache.load(finder, new String[]{ "lib", "a" });
+
+        assertNotSame(first, second);
+        assertNotEquals(first.getContentHash(), second.getContentHash());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        ModuleCache cache = new ModuleCache(2);
+        sources.put("a", "x -> [a]");
+        sources.put("b", "x -> [b]");
+        sources.put("c", "x -> [c]");
+
+        ImportedModule a = cache.load(finder, new String[]{ "a" });
+        cache.load(finder, new String[]{ "b" });
+        assertSame(a, cache.load(finder, new String[]{ "a" }));
+
+        // b is now the least recently used
+        cache.load(finder, new String[]{ "c" });
+        assertEquals(2, cache.size());
+        assertSame(a, cache.load(finder, new String[]{ "a" }));
+
+        long misses = cache.getMisses();
+        cache.load(finder, new String[]{ "b" });
+        assertEquals(misses + 1, cache.getMisses());
+    }
+}
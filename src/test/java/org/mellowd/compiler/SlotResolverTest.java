@@ -0,0 +1,48 @@
+package org.mellowd.compiler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.expressions.*;
+import org.mellowd.intermediate.executable.statements.AssignmentStatement;
+import org.mellowd.intermediate.variables.FrameLayout;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class SlotResolverTest {
+    private static final QualifiedName X = QualifiedName.ofUnqualified("x");
+
+    @Test
+    public void localsAreResolvedToSlots() throws Exception {
+        FrameLayout locals = new FrameLayout();
+        SlotResolver resolver = new SlotResolver();
+
+        resolver.enterBlock(locals);
+        resolver.transform(new AssignmentStatement(X, new Constant<>(1), false, false, false));
+        Expression<Object> resolved = resolver.transform(new ReferenceResolution(X));
+        resolver.exitBlock();
+
+        assertTrue("Local was not resolved", resolved instanceof SlotReference);
+        assertEquals(0, locals.slotOf("x"));
+    }
+
+    @Test
+    public void namesOutsideOfAFrameAreLookedUpByName() throws Exception {
+        SlotResolver resolver = new SlotResolver();
+        ReferenceResolution reference = new ReferenceResolution(X);
+
+        assertSame(reference, resolver.transform(reference));
+    }
+
+    @Test
+    public void otherPassesDoNotResolve() throws Exception {
+        ConstantFolder folder = new ConstantFolder();
+        ReferenceResolution reference = new ReferenceResolution(X);
+
+        folder.enterBlock(new FrameLayout());
+        assertSame("The folder resolved a slot", reference, folder.transform(reference));
+        folder.exitBlock();
+    }
+}
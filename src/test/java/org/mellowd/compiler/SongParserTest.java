@@ -0,0 +1,112 @@
+package org.mellowd.compiler;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.TestErrorListener;
+import org.mellowd.io.Compiler;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class SongParserTest {
+    private static final String VALID = "motif -> [c, d]\n" +
+            "lead { motif*<q> }\n";
+    //Each melody is missing a comma, the second error is only found if the first is recovered from
+    private static final String INVALID = "motif -> [c d]\n" +
+            "theme -> [e f]\n" +
+            "lead { theme*<q> }\n";
+
+    private final SongParser songParser = new SongParser();
+
+    // The tree of a plain LL parse with the default error recovery
+    private static String llTree(CharStream input) {
+        MellowDLexer lexer = new MellowDLexer(input);
+        lexer.removeErrorListeners();
+        MellowDParser parser = new MellowDParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        return parser.song().toStringTree(parser);
+    }
+
+    private static String tree(SongParser.Result result) {
+        return result.getTree().toStringTree(Arrays.asList(MellowDParser.ruleNames));
+    }
+
+    @Test
+    public void validInputIsParsedWithSll() throws Exception {
+        TestErrorListener errorListener = new TestErrorListener();
+        SongParser.Result result = this.songParser.parse(CharStreams.fromString(VALID), errorListener);
+
+        errorListener.assertNoErrors();
+        assertFalse(result.isFallback());
+        assertEquals(0, result.getLlTime());
+        assertEquals(llTree(CharStreams.fromString(VALID)), tree(result));
+
+        assertEquals(1, this.songParser.getParseCount());
+        assertEquals(0, this.songParser.getFallbackCount());
+        assertEquals(0, this.songParser.getTotalLlTime());
+    }
+
+    @Test
+    public void testSongsDoNotNeedLl() throws Exception {
+        //No valid song is known to need full LL prediction. If the grammar changes so that one
+        //does, it must still parse to the same tree.
+        File[] songs = new File(Thread.currentThread().getContextClassLoader().getResource("compilertest").toURI())
+                .listFiles((dir, name) -> name.endsWith(Compiler.FILE_EXTENSION));
+        assertNotNull(songs);
+        assertTrue(songs.length > 0);
+
+        for (File song : songs) {
+            TestErrorListener errorListener = new TestErrorListener();
+            SongParser.Result result = this.songParser.parse(CharStreams.fromFileName(song.getPath()), errorListener);
+
+            errorListener.assertNoErrors();
+            assertFalse(song.getName() + " needed LL", result.isFallback());
+            assertEquals(song.getName(), llTree(CharStreams.fromFileName(song.getPath())), tree(result));
+        }
+        assertEquals(songs.length, this.songParser.getParseCount());
+        assertEquals(0, this.songParser.getFallbackCount());
+    }
+
+    @Test
+    public void errorsAreReportedByTheLlStage() throws Exception {
+        TestErrorListener errorListener = new TestErrorListener();
+        SongParser.Result result = this.songParser.parse(CharStreams.fromString(INVALID), errorListener);
+
+        assertTrue(result.isFallback());
+        //The SLL stage bails out on the first error without reporting it, the default strategy
+        //recovers and reports both
+        assertEquals(errorListener.getErrors().toString(), 2, errorListener.getErrors().size());
+        assertTrue(errorListener.getErrors().get(0).startsWith("line 1:"));
+        assertTrue(errorListener.getErrors().get(1).startsWith("line 2:"));
+        assertEquals(2, result.getNumberOfSyntaxErrors());
+        assertEquals(3, result.getTree().topLevelStmt().size());
+    }
+
+    @Test
+    public void fallbackParsesFromTheStart() throws Exception {
+        SongParser.Result result = this.songParser.parse(CharStreams.fromString(INVALID), new TestErrorListener());
+
+        assertEquals(llTree(CharStreams.fromString(INVALID)), tree(result));
+    }
+
+    @Test
+    public void fallbacksAreCounted() throws Exception {
+        SongParser.Result valid = this.songParser.parse(CharStreams.fromString(VALID), new TestErrorListener());
+        SongParser.Result invalid = this.songParser.parse(CharStreams.fromString(INVALID), new TestErrorListener());
+
+        assertEquals(2, this.songParser.getParseCount());
+        assertEquals(1, this.songParser.getFallbackCount());
+        assertEquals(valid.getSllTime() + invalid.getSllTime(), this.songParser.getTotalSllTime());
+        assertEquals(invalid.getLlTime(), this.songParser.getTotalLlTime());
+        assertTrue(invalid.getLlTime() > 0);
+    }
+}
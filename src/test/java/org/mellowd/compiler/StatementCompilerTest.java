@@ -0,0 +1,150 @@
+package org.mellowd.compiler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.intermediate.NullOutput;
+import org.mellowd.intermediate.Output;
+import org.mellowd.intermediate.Phrase;
+import org.mellowd.intermediate.Playable;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.expressions.Constant;
+import org.mellowd.intermediate.executable.expressions.Expression;
+import org.mellowd.intermediate.executable.statements.*;
+import org.mellowd.primitives.Melody;
+import org.mellowd.primitives.Rhythm;
+import org.mellowd.testutil.TestEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class StatementCompilerTest {
+    private static final QualifiedName X = QualifiedName.ofUnqualified("x");
+
+    private static class RecordingOutput implements Output {
+        private final List<Playable> played = new ArrayList<>();
+
+        @Override
+        public void put(Playable playable) {
+            this.played.add(playable);
+        }
+
+        @Override
+        public long getStateTime() {
+            return 0;
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    private final List<String> trace = new ArrayList<>();
+
+    private Statement record(String name) {
+        return Statement.lift((env, output) ->
+                trace.add(name + ":" + env.getMemory().get(RepeatedStatementList.IMPLICIT_LOOP_COUNTER_ID)));
+    }
+
+    private static Expression<Boolean> xEquals(int value) {
+        return Expression.lift(env -> Integer.valueOf(value).equals(env.getMemory().get(X)));
+    }
+
+    // Run the statement interpreted and then compiled and check they did the same thing
+    private List<String> runBoth(Statement statement, Object x) {
+        TestEnvironment env = new TestEnvironment();
+        env.getMemory().set(X, x);
+        statement.execute(env, NullOutput.getInstance());
+        List<String> interpreted = new ArrayList<>(trace);
+        trace.clear();
+
+        Statement compiled = StatementCompiler.compile(statement);
+        assertTrue("Statement was not compiled", compiled instanceof CompiledStatement);
+        env = new TestEnvironment();
+        env.getMemory().set(X, x);
+        compiled.execute(env, NullOutput.getInstance());
+
+        assertEquals(interpreted, trace);
+        return interpreted;
+    }
+
+    @Test
+    public void sequenceRunsInOrder() throws Exception {
+        StatementList list = new StatementList();
+        for (int i = 0; i < 7; i++)
+            list.add(record(String.valueOf(i)));
+
+        assertEquals(7, runBoth(list, null).size());
+        assertEquals("0:null", trace.get(0));
+        assertEquals("6:null", trace.get(6));
+    }
+
+    @Test
+    public void repeatSetsCounter() throws Exception {
+        RepeatedStatementList inner = new RepeatedStatementList(new Constant<>(2));
+        inner.add(record("inner"));
+
+        RepeatedStatementList outer = new RepeatedStatementList(Expression.lift(env -> 3));
+        outer.add(record("outer"));
+        outer.add(inner);
+        outer.add(new StatementList());
+
+        List<String> result = runBoth(outer, null);
+        assertEquals(9, result.size());
+        assertEquals("outer:2", result.get(6));
+        assertEquals("inner:1", result.get(8));
+    }
+
+    @Test
+    public void ifTakesFirstMatchingBranch() throws Exception {
+        IfStatement statement = new IfStatement.Builder(xEquals(1), record("one"))
+                .addElseIf(new Constant<>(false), record("never"))
+                .addElseIf(xEquals(2), record("two"))
+                .setElse(record("other"))
+                .build();
+
+        assertEquals("one:null", runBoth(statement, 1).get(0));
+        trace.clear();
+        assertEquals("two:null", runBoth(statement, 2).get(0));
+        trace.clear();
+        assertEquals("other:null", runBoth(statement, 3).get(0));
+        trace.clear();
+
+        IfStatement noElse = new IfStatement.Builder(xEquals(1), record("one")).build();
+        assertTrue(runBoth(noElse, 2).isEmpty());
+    }
+
+    @Test
+    public void playPutsPhrase() throws Exception {
+        Phrase constant = new Phrase(new Melody(), new Rhythm());
+        Phrase dynamic = new Phrase(new Melody(), new Rhythm());
+
+        StatementList list = new StatementList();
+        list.add(new PlayPhraseStatement(new Constant<>(constant)));
+        list.add(new PlayPhraseStatement(Expression.lift(env -> dynamic)));
+
+        RecordingOutput output = new RecordingOutput();
+        StatementCompiler.compile(list).execute(new TestEnvironment(), output);
+
+        assertEquals(2, output.played.size());
+        assertSame(constant, output.played.get(0));
+        assertSame(dynamic, output.played.get(1));
+    }
+
+    @Test
+    public void exceptionsPropagate() throws Exception {
+        StatementList list = new StatementList();
+        list.add(Statement.lift((env, output) -> {
+            throw new IllegalStateException("failed");
+        }));
+
+        try {
+            StatementCompiler.compile(list).execute(new TestEnvironment(), NullOutput.getInstance());
+            fail("Exception thrown by the statement was swallowed");
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.mellowd.compiler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.expressions.*;
+import org.mellowd.primitives.Melody;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class TypeCheckEliminatorTest {
+    @Test
+    public void provenChecksAreRemoved() throws Exception {
+        TypeInference types = new TypeInference();
+        types.declareConstant(QualifiedName.ofUnqualified("melody"), StaticType.of(Melody.class));
+        TypeCheckEliminator eliminator = new TypeCheckEliminator(types);
+
+        ReferenceResolution reference = new ReferenceResolution(QualifiedName.ofUnqualified("melody"));
+        Expression<Melody> checked = new RuntimeNullCheck<>(QualifiedName.ofUnqualified("melody"),
+                new RuntimeTypeCheck<>(Melody.class, reference, null), null);
+
+        Expression<Melody> result = eliminator.transform(checked);
+
+        assertSame("Checks on a constant of a known type were not removed", reference, result);
+        assertEquals(2, eliminator.getEliminatedCheckCount());
+    }
+
+    @Test
+    public void shadowedConstantsKeepChecks() throws Exception {
+        TypeInference types = new TypeInference();
+        types.declareConstant(QualifiedName.ofUnqualified("melody"), StaticType.of(Melody.class));
+        types.markAssigned(QualifiedName.ofUnqualified("melody"));
+        TypeCheckEliminator eliminator = new TypeCheckEliminator(types);
+
+        Expression<Melody> checked = new RuntimeTypeCheck<>(Melody.class,
+                new ReferenceResolution(QualifiedName.ofUnqualified("melody")), null);
+
+        Expression<Melody> result = eliminator.transform(checked);
+
+        assertSame("Check on a reassigned name was removed", checked, result);
+        assertEquals(0, eliminator.getEliminatedCheckCount());
+    }
+
+    @Test
+    public void constantsAreNotFolded() throws Exception {
+        TypeCheckEliminator eliminator = new TypeCheckEliminator();
+        Expression<Boolean> not = new BooleanNotExpression(new Constant<>(true));
+
+        assertSame("The eliminator folded a constant", not, eliminator.transform(not));
+        assertEquals(0, eliminator.getEliminatedCheckCount());
+    }
+}
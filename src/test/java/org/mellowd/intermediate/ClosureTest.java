@@ -0,0 +1,218 @@
+package org.mellowd.intermediate;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.compiler.MellowD;
+import org.mellowd.intermediate.executable.expressions.Abstraction;
+import org.mellowd.intermediate.executable.expressions.Constant;
+import org.mellowd.intermediate.executable.expressions.FunctionCall;
+import org.mellowd.intermediate.executable.expressions.ReferenceResolution;
+import org.mellowd.intermediate.executable.expressions.RuntimeTypeCheck;
+import org.mellowd.intermediate.executable.statements.AssignmentStatement;
+import org.mellowd.intermediate.executable.statements.PlayPhraseStatement;
+import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.intermediate.executable.statements.StatementList;
+import org.mellowd.intermediate.functions.Argument;
+import org.mellowd.intermediate.functions.CallCache;
+import org.mellowd.intermediate.functions.FunctionInvocationException;
+import org.mellowd.intermediate.functions.Parameter;
+import org.mellowd.intermediate.functions.Parameters;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.midi.TimingEnvironment;
+import org.mellowd.plugin.defaults.Bjorklund;
+import org.mellowd.primitives.ArticulatedPitch;
+import org.mellowd.primitives.Melody;
+import org.mellowd.primitives.Pitch;
+import org.mellowd.primitives.Rhythm;
+import org.mellowd.testutil.TestEnvironment;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ClosureTest {
+    private static final QualifiedName X = QualifiedName.ofUnqualified("x");
+    private static final QualifiedName Y = QualifiedName.ofUnqualified("y");
+
+    // f(x, y?) -> return: [x, y]
+    private static Closure pair(TestEnvironment env) {
+        Parameters params = new Parameters(
+                Parameter.newRequiredParameter("x"),
+                Parameter.newOptionalParameter("y"));
+        Statement body = Statement.lift((e, out) ->
+                e.getMemory().set(Closure.RETURN_NAME, e.getMemory().get(X) + "," + e.getMemory().get(Y)));
+        return new Abstraction(params, false, body).evaluate(env);
+    }
+
+    @Test
+    public void positionalArguments() throws Exception {
+        TestEnvironment env = new TestEnvironment();
+        Closure closure = pair(env);
+
+        assertEquals("1,2", closure.call(env, NullOutput.getInstance(),
+                new Argument<>(new Constant<>(1)), new Argument<>(new Constant<>(2))));
+        assertEquals("1,null", closure.call(env, NullOutput.getInstance(),
+                new Argument<>(new Constant<>(1))));
+    }
+
+    @Test
+    public void namedArguments() throws Exception {
+        TestEnvironment env = new TestEnvironment();
+        Closure closure = pair(env);
+
+        assertEquals("1,2", closure.call(env, NullOutput.getInstance(),
+                new Argument<>("y", new Constant<>(2)), new Argument<>("x", new Constant<>(1))));
+    }
+
+    @Test(expected = FunctionInvocationException.class)
+    public void namedArgumentsMustCoverRequired() throws Exception {
+        TestEnvironment env = new TestEnvironment();
+        pair(env).call(env, NullOutput.getInstance(), new Argument<>("y", new Constant<>(2)));
+    }
+
+    @Test
+    public void bodyRunsInCallFrame() throws Exception {
+        TestEnvironment env = new TestEnvironment(true);
+        Parameters params = new Parameters(Parameter.newRequiredParameter("x"));
+        Statement body = Statement.lift((e, out) -> {
+            assertTrue(e instanceof CallFrame);
+            assertSame(e, e.getMemory());
+            assertFalse(e.isPercussion());
+            assertSame(env.getTimingEnvironment(), e.getTimingEnvironment());
+            //The parameters and the return value fit in the frame's slots
+            e.getMemory().set(Closure.RETURN_NAME, e.getMemory().get(X));
+            assertFalse(((Frame) e).hasOverflow());
+        });
+
+        Closure closure = new Abstraction(params, false, body).evaluate(env);
+        assertEquals(3, closure.call(env, NullOutput.getInstance(), new Argument<>(new Constant<>(3))));
+    }
+
+    @Test
+    public void pureCallsAreMemoized() throws Exception {
+        TestEnvironment env = new TestEnvironment();
+        AtomicInteger runs = new AtomicInteger();
+        Parameters params = new Parameters(Parameter.newRequiredParameter("x"));
+        Statement body = Statement.lift((e, out) -> {
+            runs.incrementAndGet();
+            e.getMemory().set(Closure.RETURN_NAME, e.getMemory().get(X));
+        });
+
+        Closure closure = new Abstraction(params, false, true, body).evaluate(env);
+        for (int i = 0; i < 10; i++)
+            assertEquals(i % 2, closure.call(env, NullOutput.getInstance(), new Argument<>(new Constant<>(i % 2))));
+
+        assertEquals(2, runs.get());
+        assertEquals(8, closure.getCallCache().getHits());
+        assertEquals(2, closure.getCallCache().getMisses());
+    }
+
+    @Test
+    public void purityIsInferred() throws Exception {
+        Parameters params = new Parameters(Parameter.newRequiredParameter("x"));
+
+        StatementList computes = new StatementList();
+        computes.add(new AssignmentStatement(Closure.RETURN_NAME, new Constant<>(1), false, false, false));
+        assertTrue(new Abstraction(params, false, computes).isPure());
+
+        StatementList plays = new StatementList();
+        plays.add(new PlayPhraseStatement(new Constant<>(new Phrase(new Melody(), new Rhythm()))));
+        assertFalse(new Abstraction(params, false, plays).isPure());
+
+        StatementList qualified = new StatementList();
+        qualified.add(new AssignmentStatement(QualifiedName.fromString("a.b"), new Constant<>(1), false, false, false));
+        assertFalse(new Abstraction(params, false, qualified).isPure());
+
+        assertFalse(new Abstraction(params, false, Statement.lift((e, out) -> { })).isPure());
+        assertNull(new Abstraction(params, false, plays).evaluate(new TestEnvironment()).getCallCache());
+    }
+
+    @Test
+    public void callsToImpureFunctionsAreImpure() throws Exception {
+        TestEnvironment env = new TestEnvironment();
+        Parameters params = new Parameters(Parameter.newRequiredParameter("x"));
+
+        Closure impure = new Abstraction(params, false, Statement.lift((e, out) -> { })).evaluate(env);
+        StatementList callsImpure = new StatementList();
+        callsImpure.add(new AssignmentStatement(Closure.RETURN_NAME,
+                new FunctionCall(new Constant<>(impure), new Argument<?>[]{ new Argument<>(new Constant<>(1)) }),
+                false, false, false));
+        assertFalse(new Abstraction(params, false, callsImpure).isPure());
+
+        //The function a name refers to is only known when the call is made
+        StatementList callsByName = new StatementList();
+        callsByName.add(new AssignmentStatement(Closure.RETURN_NAME,
+                new FunctionCall(new RuntimeTypeCheck<>(Closure.class, new ReferenceResolution(QualifiedName.ofUnqualified("f")), null),
+                        new Argument<?>[0]),
+                false, false, false));
+        assertFalse(new Abstraction(params, false, callsByName).isPure());
+
+        StatementList computes = new StatementList();
+        computes.add(new AssignmentStatement(Closure.RETURN_NAME, new Constant<>(1), false, false, false));
+        Closure pure = new Abstraction(params, false, computes).evaluate(env);
+        StatementList callsPure = new StatementList();
+        callsPure.add(new AssignmentStatement(Closure.RETURN_NAME,
+                new FunctionCall(new Constant<>(pure), new Argument<?>[]{ new Argument<>(new Constant<>(1)) }),
+                false, false, false));
+        assertTrue(new Abstraction(params, false, callsPure).isPure());
+    }
+
+    @Test
+    public void melodyResultsAreMemoized() throws Exception {
+        TestEnvironment env = new TestEnvironment();
+        AtomicInteger runs = new AtomicInteger();
+        Parameters params = new Parameters(Parameter.newRequiredParameter("x"));
+        Statement body = Statement.lift((e, out) -> {
+            runs.incrementAndGet();
+            e.getMemory().set(Closure.RETURN_NAME, new Melody(new ArticulatedPitch(Pitch.C)));
+        });
+
+        Closure closure = new Abstraction(params, false, true, body).evaluate(env);
+        Object first = closure.call(env, NullOutput.getInstance(), new Argument<>(new Constant<>(1)));
+        Object second = closure.call(env, NullOutput.getInstance(), new Argument<>(new Constant<>(1)));
+
+        assertSame(first, second);
+        assertEquals(1, runs.get());
+        assertEquals(1, closure.getCallCache().getHits());
+    }
+
+    @Test
+    public void euclidCallsAreMemoized() throws Exception {
+        MellowD mellowD = new MellowD(null, new TimingEnvironment(4, 4, 120));
+        new Bjorklund().apply(mellowD);
+        Closure euclid = (Closure) mellowD.getGlobals().get(QualifiedName.fromString("mellowd.euclid"));
+
+        Object first = euclid.call(mellowD, NullOutput.getInstance(), new Argument<>(new Constant<>(new Melody(new ArticulatedPitch(Pitch.C)))),
+                new Argument<>(new Constant<>(3)), new Argument<>(new Constant<>(8)));
+        //An equal melody built separately reuses the result
+        Object second = euclid.call(mellowD, NullOutput.getInstance(), new Argument<>(new Constant<>(new Melody(new ArticulatedPitch(Pitch.C)))),
+                new Argument<>(new Constant<>(3)), new Argument<>(new Constant<>(8)));
+
+        assertSame(first, second);
+        assertEquals(8, ((Melody) first).size());
+        assertEquals(1, euclid.getCallCache().getHits());
+        assertEquals(1, euclid.getCallCache().getMisses());
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        CallCache cache = new CallCache(2);
+        cache.put(Collections.singletonList(1), "a");
+        cache.put(Collections.singletonList(2), "b");
+        assertEquals("a", cache.get(Collections.singletonList(1)));
+        cache.put(Collections.singletonList(3), "c");
+
+        assertEquals(2, cache.size());
+        assertSame(CallCache.NOT_CACHED, cache.get(Collections.singletonList(2)));
+        assertEquals("a", cache.get(Collections.singletonList(1)));
+        assertEquals("c", cache.get(Collections.singletonList(3)));
+
+        cache.put(Collections.singletonList(4), null);
+        assertNull("A null result was not cached", cache.get(Collections.singletonList(4)));
+        assertEquals(4, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+}
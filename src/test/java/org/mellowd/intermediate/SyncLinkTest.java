@@ -0,0 +1,141 @@
+package org.mellowd.intermediate;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class SyncLinkTest {
+    private static class TimedOutput implements Output {
+        private long stateTime;
+
+        TimedOutput(long stateTime) {
+            this.stateTime = stateTime;
+        }
+
+        @Override
+        public void put(Playable playable) {
+            if (playable instanceof LeapInTime)
+                this.stateTime += ((LeapInTime) playable).getTicks();
+        }
+
+        @Override
+        public long getStateTime() {
+            return stateTime;
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    private static Set<Output> setOf(Output... outputs) {
+        Set<Output> set = new LinkedHashSet<>();
+        for (Output output : outputs)
+            set.add(output);
+        return set;
+    }
+
+    private static Thread syncInBackground(SyncLink link, TimedOutput output, int times) {
+        Thread thread = new Thread(() -> {
+            try {
+                for (int i = 0; i < times; i++) {
+                    link.sync(output);
+                    output.stateTime += 10 * (i + 1);
+                }
+            } catch (InterruptedException ignored) { }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void outputsLeapToLatest() throws Exception {
+        TimedOutput a = new TimedOutput(100);
+        TimedOutput b = new TimedOutput(250);
+        TimedOutput c = new TimedOutput(50);
+        SyncLink link = new SyncLink(setOf(a, b, c));
+
+        Thread ta = syncInBackground(link, a, 1);
+        Thread tb = syncInBackground(link, b, 1);
+        link.sync(c);
+        ta.join(5000L);
+        tb.join(5000L);
+
+        assertEquals(260, a.getStateTime());
+        assertEquals(260, b.getStateTime());
+        assertEquals(250, c.getStateTime());
+    }
+
+    @Test
+    public void linkIsReusable() throws Exception {
+        TimedOutput a = new TimedOutput(0);
+        TimedOutput b = new TimedOutput(5);
+        SyncLink link = new SyncLink(setOf(a, b));
+
+        Thread ta = syncInBackground(link, a, 100);
+        for (int i = 0; i < 100; i++) {
+            link.sync(b);
+            // b falls behind a after every sync
+            b.stateTime += i;
+        }
+        ta.join(5000L);
+
+        assertFalse("Sync never completed", ta.isAlive());
+        assertTrue(link.getWaitTime(a) >= 0);
+    }
+
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue("Thread never blocked", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void interruptedOutputIsNotCountedTwice() throws Exception {
+        TimedOutput a = new TimedOutput(100);
+        TimedOutput b = new TimedOutput(250);
+        SyncLink link = new SyncLink(setOf(a, b));
+
+        //a is cancelled while waiting and then relaunched
+        Thread cancelled = syncInBackground(link, a, 1);
+        awaitBlocked(cancelled);
+        cancelled.interrupt();
+        cancelled.join(5000L);
+        assertEquals(100, a.getStateTime());
+
+        Thread relaunched = syncInBackground(link, a, 1);
+        awaitBlocked(relaunched);
+        assertTrue("Relaunched output synced without the other", relaunched.isAlive());
+
+        link.sync(b);
+        relaunched.join(5000L);
+        assertFalse("Sync never completed", relaunched.isAlive());
+        assertEquals(260, a.getStateTime());
+        assertEquals(250, b.getStateTime());
+
+        //The link is still in step for the next sync
+        Thread next = syncInBackground(link, a, 1);
+        link.sync(b);
+        next.join(5000L);
+        assertFalse("Sync never completed", next.isAlive());
+        assertEquals(270, a.getStateTime());
+        assertEquals(260, b.getStateTime());
+    }
+
+    @Test
+    public void outputNotInLinkDoesNotWait() throws Exception {
+        SyncLink link = new SyncLink(setOf(new TimedOutput(0), new TimedOutput(0)));
+        TimedOutput other = new TimedOutput(0);
+
+        assertEquals(0, link.sync(other));
+        assertEquals(0, other.getStateTime());
+        assertEquals(0, link.getWaitTime(other));
+    }
+}
@@ -0,0 +1,183 @@
+package org.mellowd.intermediate.executable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.intermediate.LeapInTime;
+import org.mellowd.intermediate.Output;
+import org.mellowd.intermediate.Playable;
+import org.mellowd.intermediate.SyncLink;
+import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.intermediate.executable.statements.SyncStatement;
+import org.mellowd.testutil.DummyEnvironment;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class DeterministicExecutionEngineTest {
+    private static class TimedOutput implements Output {
+        private long stateTime = 0;
+        private boolean closed = false;
+
+        @Override
+        public void put(Playable playable) {
+            if (playable instanceof LeapInTime)
+                this.stateTime += ((LeapInTime) playable).getTicks();
+        }
+
+        @Override
+        public long getStateTime() {
+            return stateTime;
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+
+    private final List<String> trace = new ArrayList<>();
+
+    private Statement play(String name, long duration) {
+        return Statement.lift((env, output) -> {
+            trace.add(name + "@" + output.getStateTime());
+            output.put(new LeapInTime(duration));
+        });
+    }
+
+    private static CodeExecutor executor(String name, Output output, Statement... code) {
+        return new CodeExecutor(name, DummyEnvironment.getInstance(), output, Arrays.asList(code));
+    }
+
+    private static Set<Output> setOf(Output... outputs) {
+        return new LinkedHashSet<>(Arrays.asList(outputs));
+    }
+
+    @Test
+    public void furthestBehindExecutesFirst() throws Exception {
+        TimedOutput a = new TimedOutput();
+        TimedOutput b = new TimedOutput();
+
+        List<CompletableFuture<Long>> results = new DeterministicExecutionEngine().executeAll(Arrays.asList(
+                executor("a", a, play("a", 30), play("a", 30)),
+                executor("b", b, play("b", 20), play("b", 20), play("b", 20))
+        ));
+
+        assertEquals(Arrays.asList("a@0", "b@0", "b@20", "a@30", "b@40"), trace);
+        for (CompletableFuture<Long> result : results)
+            assertTrue(result.isDone() && !result.isCompletedExceptionally());
+        assertTrue(a.closed && b.closed);
+    }
+
+    @Test
+    public void syncSuspendsUntilAllArrive() throws Exception {
+        TimedOutput a = new TimedOutput();
+        TimedOutput b = new TimedOutput();
+        SyncLink link = new SyncLink(setOf(a, b));
+
+        new DeterministicExecutionEngine().executeAll(Arrays.asList(
+                executor("a", a, play("a", 10), new SyncStatement(null, link), play("a", 10)),
+                executor("b", b, play("b", 50), new SyncStatement(null, link), play("b", 10))
+        ));
+
+        assertEquals(Arrays.asList("a@0", "b@0", "a@50", "b@50"), trace);
+        assertEquals(60, a.getStateTime());
+        assertEquals(60, b.getStateTime());
+    }
+
+    @Test
+    public void orderIsReproducible() throws Exception {
+        List<String> firstTrace = null;
+        for (int run = 0; run < 5; run++) {
+            trace.clear();
+            TimedOutput a = new TimedOutput();
+            TimedOutput b = new TimedOutput();
+            TimedOutput c = new TimedOutput();
+            SyncLink link = new SyncLink(setOf(a, b, c));
+
+            new DeterministicExecutionEngine().executeAll(Arrays.asList(
+                    executor("a", a, play("a", 5), new SyncStatement(null, link), play("a", 5)),
+                    executor("b", b, play("b", 5), new SyncStatement(null, link), play("b", 5)),
+                    executor("c", c, play("c", 5), new SyncStatement(null, link), play("c", 5))
+            ));
+
+            if (firstTrace == null)
+                firstTrace = new ArrayList<>(trace);
+            else
+                assertEquals(firstTrace, trace);
+        }
+    }
+
+    @Test
+    public void failureCancelsOtherBlocks() throws Exception {
+        TimedOutput a = new TimedOutput();
+        TimedOutput b = new TimedOutput();
+
+        List<CompletableFuture<Long>> results = new DeterministicExecutionEngine().executeAll(Arrays.asList(
+                executor("a", a, Statement.lift((env, output) -> {
+                    throw new IllegalStateException("a failed");
+                })),
+                executor("b", b, play("b", 10), play("b", 10))
+        ));
+
+        try {
+            results.get(0).get();
+            fail("Failure was not reported");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(results.get(1).isCompletedExceptionally());
+        assertTrue("Blocks kept executing after a failure", trace.size() <= 1);
+    }
+
+    @Test
+    public void failureToFinishCancelsOtherBlocks() throws Exception {
+        TimedOutput a = new TimedOutput() {
+            @Override
+            public void close() {
+                throw new IllegalStateException("a cannot close");
+            }
+        };
+        TimedOutput b = new TimedOutput();
+        TimedOutput c = new TimedOutput();
+        SyncLink link = new SyncLink(setOf(b, c));
+
+        //c is waiting in the sync and b is ready when a fails to finish
+        List<CompletableFuture<Long>> results = new DeterministicExecutionEngine().executeAll(Arrays.asList(
+                executor("c", c, new SyncStatement(null, link)),
+                executor("a", a),
+                executor("b", b, play("b", 10), new SyncStatement(null, link))
+        ));
+
+        for (CompletableFuture<Long> result : results)
+            assertTrue(result.isDone());
+        try {
+            results.get(1).get();
+            fail("Failure was not reported");
+        } catch (ExecutionException e) {
+            assertEquals("a cannot close", e.getCause().getMessage());
+        }
+        assertTrue(results.get(0).isCompletedExceptionally());
+        assertTrue(results.get(2).isCompletedExceptionally());
+        assertTrue("Blocks kept executing after a failure", trace.isEmpty());
+    }
+
+    @Test
+    public void unreachableSyncFails() throws Exception {
+        TimedOutput a = new TimedOutput();
+        TimedOutput b = new TimedOutput();
+        SyncLink link = new SyncLink(setOf(a, b));
+
+        List<CompletableFuture<Long>> results = new DeterministicExecutionEngine().executeAll(Arrays.asList(
+                executor("a", a, new SyncStatement(null, link)),
+                executor("b", b, play("b", 10))
+        ));
+
+        assertTrue(results.get(0).isCompletedExceptionally());
+        assertFalse(results.get(1).isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,41 @@
+package org.mellowd.intermediate.executable;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.compiler.MellowDLexer;
+import org.mellowd.compiler.MellowDParser;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class SourceLinkTest {
+    private static MellowDParser.MelodyContext melody(String source) {
+        MellowDParser parser = new MellowDParser(new CommonTokenStream(new MellowDLexer(CharStreams.fromString(source))));
+        return parser.melody();
+    }
+
+    @Test
+    public void textIsReadFromTheSource() throws Exception {
+        SourceLink link = new SourceLink(melody("[c, d, e]"));
+
+        assertEquals("[c, d, e]", link.getText());
+        assertEquals(0, link.start);
+        assertEquals(8, link.stop);
+        assertEquals(1, link.line);
+        assertEquals(0, link.startPosInLine);
+    }
+
+    @Test
+    public void copiedTextMatches() throws Exception {
+        MellowDParser.MelodyContext ctx = melody("[c, d, e]");
+        TerminalNode open = (TerminalNode) ctx.getChild(0);
+
+        assertEquals(new SourceLink(ctx).getText(), new SourceLink(ctx, true).getText());
+        assertEquals("[", new SourceLink(open).getText());
+        assertEquals("[", new SourceLink(open, true).getText());
+    }
+}
@@ -0,0 +1,64 @@
+package org.mellowd.intermediate.executable.statements;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.compiler.ConstantFolder;
+import org.mellowd.intermediate.Phrase;
+import org.mellowd.intermediate.executable.expressions.Constant;
+import org.mellowd.intermediate.executable.expressions.Expression;
+import org.mellowd.intermediate.executable.expressions.ReferenceResolution;
+import org.mellowd.intermediate.executable.expressions.RuntimeTypeCheck;
+import org.mellowd.primitives.Melody;
+import org.mellowd.primitives.Rhythm;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class RepeatedStatementListTest {
+    private static PlayPhraseStatement playConstant() {
+        return new PlayPhraseStatement(new Constant<>(new Phrase(new Melody(), new Rhythm())));
+    }
+
+    @Test
+    public void constantBodyIsInvariant() throws Exception {
+        RepeatedStatementList inner = new RepeatedStatementList(new Constant<>(4));
+        inner.add(playConstant());
+
+        RepeatedStatementList loop = new RepeatedStatementList(new Constant<>(256));
+        loop.add(playConstant());
+        loop.add(inner);
+        loop.add(EmptyStatement.getInstance());
+        new ConstantFolder().transform(loop);
+
+        assertTrue(loop.isInvariant());
+    }
+
+    @Test
+    public void bodyReadingCounterIsNotInvariant() throws Exception {
+        RepeatedStatementList loop = new RepeatedStatementList(new Constant<>(8));
+        loop.add(new PlayPhraseStatement(new RuntimeTypeCheck<>(Phrase.class,
+                new ReferenceResolution(RepeatedStatementList.IMPLICIT_LOOP_COUNTER_ID), null)));
+        new ConstantFolder().transform(loop);
+
+        assertFalse(loop.isInvariant());
+    }
+
+    @Test
+    public void bodyWithOtherSideEffectsIsNotInvariant() throws Exception {
+        RepeatedStatementList loop = new RepeatedStatementList(new Constant<>(8));
+        loop.add(playConstant());
+        loop.add(Statement.lift((env, output) -> { }));
+        new ConstantFolder().transform(loop);
+
+        assertFalse(loop.isInvariant());
+    }
+
+    @Test
+    public void unfoldedIsNotInvariant() throws Exception {
+        RepeatedStatementList loop = new RepeatedStatementList(Expression.lift(env -> 8));
+        loop.add(playConstant());
+
+        assertFalse(loop.isInvariant());
+    }
+}
@@ -0,0 +1,107 @@
+package org.mellowd.intermediate.variables;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.intermediate.QualifiedName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ConcurrentSymbolTableTest {
+    private static final QualifiedName SAMPLE = QualifiedName.ofUnqualified("Sample");
+    private static final int THREADS = 8;
+
+    private static <T> List<T> runConcurrently(Callable<T> task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CyclicBarrier start = new CyclicBarrier(THREADS);
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures)
+                results.add(future.get(10, TimeUnit.SECONDS));
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void behavesLikeSymbolTable() throws Exception {
+        ConcurrentSymbolTable parent = new ConcurrentSymbolTable();
+        Memory table = new ConcurrentSymbolTable(parent);
+
+        parent.set(SAMPLE, 10);
+        assertEquals(10, table.get(SAMPLE));
+        table.set(SAMPLE, 20);
+        assertEquals(20, table.get(SAMPLE));
+
+        //Setting null falls back to the parent but is still defined
+        table.set(SAMPLE, null);
+        assertEquals(10, table.get(SAMPLE));
+        assertTrue(table.isDefined(SAMPLE));
+
+        table.define(QualifiedName.fromString("ns.constant"), 5);
+        assertEquals(5, table.get(QualifiedName.fromString("ns.constant")));
+        assertTrue(table.lookupNamespace("ns") instanceof ConcurrentSymbolTable);
+        try {
+            table.set(QualifiedName.fromString("ns.constant"), 6);
+            fail("A constant was overwritten");
+        } catch (AlreadyDefinedException e) {
+            assertEquals(5, table.get(QualifiedName.fromString("ns.constant")));
+        }
+    }
+
+    @Test
+    public void resolvedValueIsPublishedOnce() throws Exception {
+        ConcurrentSymbolTable table = new ConcurrentSymbolTable();
+        AtomicInteger resolutions = new AtomicInteger();
+        table.set(SAMPLE, (DelayedResolution<Object>) scope -> new Object[]{ resolutions.incrementAndGet() });
+
+        List<Object> results = runConcurrently(() -> table.get(SAMPLE));
+
+        //Every reader sees the value that was stored, even if it resolved its own
+        Object stored = table.get(SAMPLE);
+        assertTrue(stored instanceof Object[]);
+        for (Object result : results)
+            assertSame("A reader saw a value other than the published one", stored, result);
+    }
+
+    @Test
+    public void namespacesAreCreatedOnce() throws Exception {
+        ConcurrentSymbolTable table = new ConcurrentSymbolTable();
+
+        List<Memory> namespaces = runConcurrently(() -> table.lookupOrCreateNamespace("shared"));
+
+        for (Memory namespace : namespaces)
+            assertSame(namespaces.get(0), namespace);
+    }
+
+    @Test
+    public void concurrentWritesAreNotLost() throws Exception {
+        ConcurrentSymbolTable table = new ConcurrentSymbolTable();
+        AtomicInteger ids = new AtomicInteger();
+
+        runConcurrently(() -> {
+            int id = ids.getAndIncrement();
+            for (int i = 0; i < 1000; i++)
+                table.set("name" + id + "_" + i, i);
+            return null;
+        });
+
+        assertEquals(THREADS * 1000, table.countReferences());
+        assertEquals(999, table.get("name0_999"));
+    }
+}
@@ -0,0 +1,116 @@
+package org.mellowd.intermediate.variables;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.expressions.SlotReference;
+import org.mellowd.midi.TimingEnvironment;
+import org.mellowd.testutil.DummyEnvironment;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class FrameTest {
+    private QualifiedName sampleName = QualifiedName.ofUnqualified("Sample");
+    private QualifiedName otherName = QualifiedName.ofUnqualified("Other");
+    private SymbolTable superTable;
+    private FrameLayout layout;
+    private Frame frame;
+
+    @Before
+    public void setUp() throws Exception {
+        this.superTable = new SymbolTable();
+        this.layout = new FrameLayout(sampleName.getName());
+        this.frame = new Frame(layout, superTable);
+    }
+
+    private ExecutionEnvironment inFrame() {
+        return new ExecutionEnvironment() {
+            @Override
+            public boolean isPercussion() {
+                return false;
+            }
+
+            @Override
+            public Memory getMemory() {
+                return frame;
+            }
+
+            @Override
+            public TimingEnvironment getTimingEnvironment() {
+                return DummyEnvironment.getInstance().getTimingEnvironment();
+            }
+        };
+    }
+
+    @Test
+    public void testSlotAndNameAgree() throws Exception {
+        this.frame.set(sampleName, 10);
+        assertEquals(10, this.frame.getSlot(this.layout.slotOf(sampleName.getName())));
+
+        this.frame.setSlot(this.layout.slotOf(sampleName.getName()), 20);
+        assertEquals(20, this.frame.get(sampleName));
+    }
+
+    @Test
+    public void testNamesOutsideLayout() throws Exception {
+        this.frame.set(otherName, 10);
+        assertEquals(10, this.frame.get(otherName));
+        assertEquals(-1, this.layout.slotOf(otherName.getName()));
+    }
+
+    @Test
+    public void testEmptySlotFallsBackToParent() throws Exception {
+        this.superTable.set(sampleName, 10);
+        assertEquals(10, this.frame.get(sampleName));
+
+        this.frame.set(sampleName, 20);
+        assertEquals(20, this.frame.get(sampleName));
+    }
+
+    @Test
+    public void testCantSetOverDefinition() throws Exception {
+        this.frame.define(sampleName, 10);
+
+        try {
+            this.frame.setSlot(this.layout.slotOf(sampleName.getName()), 20);
+            fail("No exception thrown when trying to set a value to a constant");
+        } catch (AlreadyDefinedException e) {
+            assertEquals("Exception thrown but constant value still changed",
+                    10, this.frame.get(sampleName));
+        }
+    }
+
+    @Test
+    public void testLayoutGrowsAfterFrameCreated() throws Exception {
+        int slot = this.layout.define(otherName.getName());
+        this.frame.setSlot(slot, 10);
+
+        assertEquals(10, this.frame.get(otherName));
+    }
+
+    @Test
+    public void testSlotReference() throws Exception {
+        SlotReference reference = new SlotReference(sampleName, new FrameLayout[]{ this.layout });
+        this.superTable.set(sampleName, 10);
+        assertEquals(10, reference.evaluate(inFrame()));
+
+        this.frame.set(sampleName, 20);
+        assertEquals(20, reference.evaluate(inFrame()));
+    }
+
+    @Test
+    public void testSlotReferenceSeesNewShadow() throws Exception {
+        SlotReference reference = new SlotReference(otherName, new FrameLayout[]{ this.layout });
+        this.superTable.set(otherName, 10);
+        assertEquals(10, reference.evaluate(inFrame()));
+
+        // Declaring the name in the frame after the reference was resolved shadows the parent
+        this.frame.setSlot(this.layout.define(otherName.getName()), 20);
+        assertEquals(20, reference.evaluate(inFrame()));
+        assertEquals(20, reference.evaluate(inFrame()));
+    }
+}
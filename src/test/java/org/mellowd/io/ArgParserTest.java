@@ -320,6 +320,63 @@ public class ArgParserTest {
         assertTrue("Silent flag not set when --silent is given", options.wantsSilent());
     }
 
+    @Test
+    public void cacheFlag() throws Exception {
+        String[] args = new String[] {
+                "--cache"
+        };
+
+        CompilerOptions options = ArgParser.parse(args);
+
+        assertTrue("Cache not enabled when --cache is given", options.shouldUseCache());
+    }
+
+    @Test
+    public void batchFlag() throws Exception {
+        String[] args = new String[] {
+                "--batch", "songs", "-b", "more/**/*.mlod", "-j", "3"
+        };
+
+        CompilerOptions options = ArgParser.parse(args);
+
+        assertTrue("Batch mode not enabled when --batch is given", options.isBatch());
+        assertEquals("Incorrect batch sources set in the options", 2, options.getBatchSources().size());
+        assertEquals("Incorrect batch source set in the options", "more/**/*.mlod", options.getBatchSources().get(1));
+        assertEquals("Incorrect jobs set in the options", 3, options.getJobs());
+    }
+
+    @Test
+    public void jobsFlagValueNotPositive() throws Exception {
+        testThrowsException("No exception thrown when jobs is 0",
+                "--jobs", "0"
+        );
+        testThrowsException("No exception thrown when jobs value is missing",
+                "--jobs"
+        );
+    }
+
+    @Test
+    public void deterministicFlag() throws Exception {
+        String[] args = new String[] {
+                "--deterministic"
+        };
+
+        CompilerOptions options = ArgParser.parse(args);
+
+        assertTrue("Deterministic execution not enabled when --deterministic is given", options.isDeterministic());
+    }
+
+    @Test
+    public void interpretFlag() throws Exception {
+        String[] args = new String[] {
+                "--interpret"
+        };
+
+        CompilerOptions options = ArgParser.parse(args);
+
+        assertTrue("Interpreter not forced when --interpret is given", options.shouldInterpret());
+    }
+
     @Test
     public void defaults() throws Exception {
         String[] args = new String[] { };
@@ -342,5 +399,13 @@ public class ArgParserTest {
         assertFalse("WAVE output flag not disabled by default", options.shouldOutputWAV());
 
         assertFalse("Silent not disabled by default", options.wantsSilent());
+
+        assertFalse("Cache enabled by default", options.shouldUseCache());
+
+        assertFalse("Batch mode enabled by default", options.isBatch());
+        assertTrue("Jobs not positive by default", options.getJobs() > 0);
+
+        assertFalse("Deterministic execution enabled by default", options.isDeterministic());
+        assertFalse("Interpreter forced by default", options.shouldInterpret());
     }
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+package org.mellowd.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.midi.TimingEnvironment;
+import org.mellowd.plugin.PluginManager;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class BatchCompilerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String path, String source) throws Exception {
+        File file = new File(folder.getRoot(), path);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static final String SONG = "def block lead\nlead { [c, d]*<q> }\n";
+
+    private static List<String> describe(List<BatchCompiler.Source> sources) {
+        List<String> described = new ArrayList<>();
+        for (BatchCompiler.Source source : sources)
+            described.add(source.getRelativeDir() + ":" + source.getFile().getName());
+        return described;
+    }
+
+    private static CompilerOptions.Builder options(File outDir) {
+        return new CompilerOptions.Builder()
+                .setOutputDir(outDir.getPath())
+                .setJobs(2);
+    }
+
+    @Test
+    public void songsWithTheSameNameAreCachedSeparately() throws Exception {
+        File a = write("songs/a/intro" + Compiler.FILE_EXTENSION, "def block lead\nlead { [c, d]*<q> }\n");
+        File b = write("songs/b/intro" + Compiler.FILE_EXTENSION, "def block lead\nlead { [e]*<h> }\n");
+        File outDir = folder.newFolder("out");
+        CompilerOptions options = options(outDir).setUseCache(true).build();
+        BatchCompiler batch = new BatchCompiler(options, outDir, new PluginManager());
+
+        List<BatchCompiler.Source> sources = BatchCompiler.findSources(
+                Collections.singletonList(new File(folder.getRoot(), "songs").getPath()));
+        for (BatchCompiler.Result result : batch.compileAll(sources, null))
+            assertNull(result.getError());
+
+        assertFalse(new File(outDir, "intro" + CompiledSongCache.FILE_EXTENSION).exists());
+        TimingEnvironment timing = new TimingEnvironment(4, 4, 120);
+        for (File source : new File[]{ a, b }) {
+            String dir = source.getParentFile().getName();
+            File cacheFile = new File(new File(outDir, dir), "intro" + CompiledSongCache.FILE_EXTENSION);
+            CompiledSongCache.Key key = new CompiledSongCache.Key(CompiledSongCache.hashSource(source), timing, options);
+
+            assertNotNull(dir + " was not cached", CompiledSongCache.load(cacheFile, key, timing, path -> {
+                throw new SourceResolutionException(path, "No imports");
+            }));
+            assertTrue(new File(new File(outDir, dir), "intro.mid").isFile());
+        }
+    }
+
+    @Test
+    public void directoryIsSearchedRecursively() throws Exception {
+        write("songs/top" + Compiler.FILE_EXTENSION, SONG);
+        write("songs/a/x" + Compiler.FILE_EXTENSION, SONG);
+        write("songs/b/c/y" + Compiler.FILE_EXTENSION, SONG);
+        write("songs/a/notes.txt", "not a song");
+
+        List<BatchCompiler.Source> sources = BatchCompiler.findSources(
+                Collections.singletonList(new File(folder.getRoot(), "songs").getPath()));
+
+        assertEquals(Arrays.asList("a:x.mlod", "b" + File.separator + "c:y.mlod", ":top.mlod"), describe(sources));
+        assertEquals("a" + File.separator + "x.mlod", sources.get(0).getDisplayName());
+        assertEquals("top.mlod", sources.get(2).getDisplayName());
+    }
+
+    @Test
+    public void globIsRelativeToItsRoot() throws Exception {
+        write("songs/top" + Compiler.FILE_EXTENSION, SONG);
+        write("songs/a/x" + Compiler.FILE_EXTENSION, SONG);
+        write("songs/a/b/y" + Compiler.FILE_EXTENSION, SONG);
+        write("songs/a/b/z.txt", "not a song");
+
+        List<BatchCompiler.Source> sources = BatchCompiler.findSources(Collections.singletonList(
+                new File(folder.getRoot(), "songs").getPath() + "/**/*" + Compiler.FILE_EXTENSION));
+
+        //The root is songs/ so the top level file has no directory to match **/
+        assertEquals(Arrays.asList("a" + File.separator + "b:y.mlod", "a:x.mlod"), describe(sources));
+        for (BatchCompiler.Source source : sources)
+            assertTrue(source.getFile().isAbsolute());
+    }
+
+    @Test
+    public void plainFileHasNoRelativeDir() throws Exception {
+        File song = write("songs/a/x" + Compiler.FILE_EXTENSION, SONG);
+
+        List<BatchCompiler.Source> sources = BatchCompiler.findSources(Collections.singletonList(song.getPath()));
+
+        assertEquals(1, sources.size());
+        assertEquals(song.getAbsoluteFile(), sources.get(0).getFile());
+        assertEquals("", sources.get(0).getRelativeDir());
+    }
+
+    @Test
+    public void duplicatesKeepTheirFirstPosition() throws Exception {
+        File x = write("songs/a/x" + Compiler.FILE_EXTENSION, SONG);
+        write("songs/y" + Compiler.FILE_EXTENSION, SONG);
+        String songs = new File(folder.getRoot(), "songs").getPath();
+
+        List<BatchCompiler.Source> sources = BatchCompiler.findSources(Arrays.asList(
+                x.getPath(), songs, songs + "/*" + Compiler.FILE_EXTENSION, x.getPath()));
+
+        //x was first found as a plain file so it keeps the empty relative dir
+        assertEquals(Arrays.asList(":x.mlod", ":y.mlod"), describe(sources));
+    }
+
+    @Test(expected = IOException.class)
+    public void missingDirectoryFails() throws Exception {
+        BatchCompiler.findSources(Collections.singletonList(new File(folder.getRoot(), "missing").getPath()));
+    }
+
+    @Test
+    public void failureKeepsResultsInOrder() throws Exception {
+        write("songs/a" + Compiler.FILE_EXTENSION, SONG);
+        write("songs/b" + Compiler.FILE_EXTENSION, "lead { [c, d]*<q> }\n");
+        write("songs/c" + Compiler.FILE_EXTENSION, SONG);
+        File outDir = folder.newFolder("out");
+        BatchCompiler batch = new BatchCompiler(options(outDir).build(), outDir, new PluginManager());
+
+        List<BatchCompiler.Source> sources = BatchCompiler.findSources(
+                Collections.singletonList(new File(folder.getRoot(), "songs").getPath()));
+        List<BatchCompiler.Result> results = batch.compileAll(sources, null);
+
+        assertEquals(3, results.size());
+        for (int i = 0; i < results.size(); i++)
+            assertSame(sources.get(i), results.get(i).getSource());
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(1).getError(), results.get(1).getError().contains("lead"));
+        assertTrue(results.get(2).isSuccess());
+        assertTrue(new File(outDir, "a.mid").isFile());
+        assertFalse(new File(outDir, "b.mid").exists());
+        assertTrue(new File(outDir, "c.mid").isFile());
+    }
+}
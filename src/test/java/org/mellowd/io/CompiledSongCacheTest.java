@@ -0,0 +1,144 @@
+package org.mellowd.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.compiler.ImportedModule;
+import org.mellowd.compiler.ModuleCache;
+import org.mellowd.midi.MIDISequence;
+import org.mellowd.midi.MIDITrack;
+import org.mellowd.midi.TimingEnvironment;
+
+import javax.sound.midi.*;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class CompiledSongCacheTest {
+    private static final String SOURCE_HASH = ModuleCache.contentHash("song".getBytes(StandardCharsets.UTF_8));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, String> sources = new HashMap<>();
+    private final SourceFinder finder = path ->
+            new ByteArrayInputStream(sources.get(String.join(".", path)).getBytes(StandardCharsets.UTF_8));
+
+    private final TimingEnvironment timing = new TimingEnvironment(4, 4, 120);
+
+    private static CompiledSongCache.Key key(String version, TimingEnvironment timing, boolean deterministic, boolean interpret) {
+        return new CompiledSongCache.Key(version, SOURCE_HASH, timing, deterministic, interpret);
+    }
+
+    private static MIDISequence song(TimingEnvironment timing) throws Exception {
+        MIDISequence song = new MIDISequence(timing);
+        MIDITrack track = song.getOrCreateTrack("lead");
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), 0));
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0), timing.getPPQ()));
+        return song;
+    }
+
+    private File store(CompiledSongCache.Key key, List<ImportedModule> imports) throws Exception {
+        File cacheFile = CompiledSongCache.cacheFileFor(new File("song" + Compiler.FILE_EXTENSION), folder.getRoot());
+        CompiledSongCache.store(cacheFile, key, imports, song(this.timing));
+        return cacheFile;
+    }
+
+    @Test
+    public void cacheFileIsInOutputDirectory() throws Exception {
+        File source = new File(folder.newFolder("src"), "song" + Compiler.FILE_EXTENSION);
+        File out = folder.newFolder("out");
+
+        assertEquals(new File(out, "song" + CompiledSongCache.FILE_EXTENSION),
+                CompiledSongCache.cacheFileFor(source, out));
+    }
+
+    @Test
+    public void matchingKeyIsLoaded() throws Exception {
+        File cacheFile = store(key("1.0", this.timing, false, false), Collections.emptyList());
+
+        MIDISequence loaded = CompiledSongCache.load(cacheFile, key("1.0", this.timing, false, false), this.timing, this.finder);
+
+        assertNotNull(loaded);
+        assertEquals(song(this.timing).getTickLength(), loaded.getTickLength());
+    }
+
+    @Test
+    public void tempoIsReplaced() throws Exception {
+        File cacheFile = store(key("1.0", this.timing, false, false), Collections.emptyList());
+        TimingEnvironment faster = new TimingEnvironment(4, 4, 240);
+
+        MIDISequence loaded = CompiledSongCache.load(cacheFile, key("1.0", faster, false, false), faster, this.finder);
+
+        assertNotNull(loaded);
+        assertSame(faster, loaded.getTimingEnvironment());
+        assertEquals(song(faster).toSequence().getMicrosecondLength(), loaded.toSequence().getMicrosecondLength());
+    }
+
+    @Test
+    public void changedSourceMisses() throws Exception {
+        File cacheFile = store(key("1.0", this.timing, false, false), Collections.emptyList());
+        CompiledSongCache.Key changed = new CompiledSongCache.Key("1.0",
+                ModuleCache.contentHash("changed".getBytes(StandardCharsets.UTF_8)), this.timing, false, false);
+
+        assertNull(CompiledSongCache.load(cacheFile, changed, this.timing, this.finder));
+    }
+
+    @Test
+    public void changedCompilerVersionMisses() throws Exception {
+        File cacheFile = store(key("1.0", this.timing, false, false), Collections.emptyList());
+
+        assertNull(CompiledSongCache.load(cacheFile, key("1.1", this.timing, false, false), this.timing, this.finder));
+    }
+
+    @Test
+    public void changedTimeSignatureMisses() throws Exception {
+        File cacheFile = store(key("1.0", this.timing, false, false), Collections.emptyList());
+
+        TimingEnvironment threeFour = new TimingEnvironment(3, 4, 120);
+        assertNull(CompiledSongCache.load(cacheFile, key("1.0", threeFour, false, false), threeFour, this.finder));
+        TimingEnvironment fourEight = new TimingEnvironment(4, 8, 120);
+        assertNull(CompiledSongCache.load(cacheFile, key("1.0", fourEight, false, false), fourEight, this.finder));
+    }
+
+    @Test
+    public void changedExecutionOptionsMiss() throws Exception {
+        File cacheFile = store(key("1.0", this.timing, false, false), Collections.emptyList());
+
+        assertNull(CompiledSongCache.load(cacheFile, key("1.0", this.timing, true, false), this.timing, this.finder));
+        assertNull(CompiledSongCache.load(cacheFile, key("1.0", this.timing, false, true), this.timing, this.finder));
+    }
+
+    @Test
+    public void changedImportMisses() throws Exception {
+        this.sources.put("lib", "motif -> [c]");
+        ImportedModule lib = new ImportedModule("lib",
+                ModuleCache.contentHash("motif -> [c]".getBytes(StandardCharsets.UTF_8)), null);
+        File cacheFile = store(key("1.0", this.timing, false, false), Collections.singletonList(lib));
+
+        assertNotNull(CompiledSongCache.load(cacheFile, key("1.0", this.timing, false, false), this.timing, this.finder));
+
+        this.sources.put("lib", "motif -> [d]");
+        assertNull(CompiledSongCache.load(cacheFile, key("1.0", this.timing, false, false), this.timing, this.finder));
+    }
+
+    @Test
+    public void missingImportMisses() throws Exception {
+        ImportedModule lib = new ImportedModule("lib", "0", null);
+        File cacheFile = store(key("1.0", this.timing, false, false), Collections.singletonList(lib));
+        SourceFinder missing = path -> {
+            throw new SourceResolutionException(path, "Moved");
+        };
+
+        assertNull(CompiledSongCache.load(cacheFile, key("1.0", this.timing, false, false), this.timing, missing));
+    }
+}
@@ -0,0 +1,110 @@
+package org.mellowd.io;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.compiler.MellowDLexer;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class MappedCharStreamTest {
+    private static final String ASCII_SOURCE = "//The melody\n" +
+            "motif -> [c, d, e]\n" +
+            "lead { motif*<q> }\n";
+    private static final String UNICODE_SOURCE = "//La m\u00e9lodie \u266a\n" +
+            "motif -> [c, d, e]\n" +
+            "lead { motif*<q> }\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CharStream open(String source) throws Exception {
+        File file = folder.newFile("song" + Compiler.FILE_EXTENSION);
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        return MappedCharStream.fromFile(file);
+    }
+
+    private static List<String> tokens(CharStream stream) {
+        List<String> tokens = new ArrayList<>();
+        for (Token token : new MellowDLexer(stream).getAllTokens())
+            tokens.add(token.getType() + " " + token.getStartIndex() + ":" + token.getStopIndex() + " " + token.getText());
+        return tokens;
+    }
+
+    @Test
+    public void asciiSourceIsMapped() throws Exception {
+        CharStream stream = open(ASCII_SOURCE);
+
+        assertTrue(stream instanceof MappedCharStream);
+        assertEquals(ASCII_SOURCE.length(), stream.size());
+        assertEquals(ASCII_SOURCE, stream.toString());
+    }
+
+    @Test
+    public void asciiSourceLexesLikeAString() throws Exception {
+        assertEquals(tokens(CharStreams.fromString(ASCII_SOURCE)), tokens(open(ASCII_SOURCE)));
+    }
+
+    @Test
+    public void asciiSourceText() throws Exception {
+        CharStream stream = open(ASCII_SOURCE);
+        int start = ASCII_SOURCE.indexOf("motif");
+
+        assertEquals("motif", stream.getText(Interval.of(start, start + 4)));
+        //Intervals past the end are cut off
+        assertEquals("}\n", stream.getText(Interval.of(ASCII_SOURCE.length() - 2, ASCII_SOURCE.length() + 10)));
+        assertEquals("", stream.getText(Interval.of(ASCII_SOURCE.length(), ASCII_SOURCE.length() + 10)));
+    }
+
+    @Test
+    public void asciiSourceLookAhead() throws Exception {
+        CharStream stream = open(ASCII_SOURCE);
+
+        assertEquals('/', stream.LA(1));
+        assertEquals(IntStream.EOF, stream.LA(-1));
+        stream.consume();
+        assertEquals('/', stream.LA(-1));
+
+        stream.seek(ASCII_SOURCE.length() - 1);
+        assertEquals('\n', stream.LA(1));
+        stream.consume();
+        assertEquals(IntStream.EOF, stream.LA(1));
+        try {
+            stream.consume();
+            fail("Consumed past the end of the source");
+        } catch (IllegalStateException expected) { }
+    }
+
+    @Test
+    public void unicodeSourceIsDecodedByCodePoint() throws Exception {
+        CharStream stream = open(UNICODE_SOURCE);
+
+        assertFalse(stream instanceof MappedCharStream);
+        assertEquals(UNICODE_SOURCE.codePointCount(0, UNICODE_SOURCE.length()), stream.size());
+
+        int accent = UNICODE_SOURCE.indexOf('\u00e9');
+        stream.seek(accent);
+        assertEquals(0xE9, stream.LA(1));
+        int note = UNICODE_SOURCE.indexOf('\u266a');
+        assertEquals("\u266a", stream.getText(Interval.of(note, note)));
+    }
+
+    @Test
+    public void unicodeSourceLexesLikeAString() throws Exception {
+        assertEquals(tokens(CharStreams.fromString(UNICODE_SOURCE)), tokens(open(UNICODE_SOURCE)));
+    }
+}
@@ -0,0 +1,70 @@
+package org.mellowd.io.live;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class BlockExecutionStatsTest {
+
+    @Test
+    public void firstExecutionSetsTheAverage() throws Exception {
+        BlockExecutionStats stats = new BlockExecutionStats();
+        assertEquals(0, stats.getAverageExecutionTime("a"));
+
+        stats.recordExecutionTime("a", 1000);
+        assertEquals(1000, stats.getAverageExecutionTime("a"));
+        assertEquals(0, stats.getAverageExecutionTime("b"));
+    }
+
+    @Test
+    public void averageMovesTowardsLatestExecution() throws Exception {
+        BlockExecutionStats stats = new BlockExecutionStats();
+        stats.recordExecutionTime("a", 1000);
+        stats.recordExecutionTime("a", 2000);
+        // 1000 + 0.25 * (2000 - 1000)
+        assertEquals(1250, stats.getAverageExecutionTime("a"));
+
+        stats.recordExecutionTime("a", 250);
+        // 1250 + 0.25 * (250 - 1250)
+        assertEquals(1000, stats.getAverageExecutionTime("a"));
+    }
+
+    @Test
+    public void leadTimeIsTwiceTheAverageInTicks() throws Exception {
+        BlockExecutionStats stats = new BlockExecutionStats();
+        assertEquals(0, stats.getLeadTimeTicks("a", 96, 2_000_000));
+
+        // A 1ms average is a 2ms lead
+        stats.recordExecutionTime("a", 1_000_000);
+        assertEquals(48, stats.getLeadTimeTicks("a", 96, 4000));
+        assertEquals(192, stats.getLeadTimeTicks("a", 96, 1000));
+        // Part of a tick is a whole tick
+        assertEquals(1, stats.getLeadTimeTicks("a", 96, 2_000_000));
+    }
+
+    @Test
+    public void onTimeExecutionIsNotLate() throws Exception {
+        BlockExecutionStats stats = new BlockExecutionStats();
+        assertNull(stats.checkDeadline("a", 100, 50));
+        assertNull(stats.checkDeadline("a", 100, 100));
+        assertEquals(0, stats.getLateExecutionCount());
+    }
+
+    @Test
+    public void lateExecutionMissesDeadline() throws Exception {
+        BlockExecutionStats stats = new BlockExecutionStats();
+        DeadlineMissedException missed = stats.checkDeadline("a", 100, 130);
+
+        assertNotNull(missed);
+        assertEquals("a", missed.getBlockName());
+        assertEquals(100, missed.getDeadline());
+        assertEquals(30, missed.getLateness());
+        assertEquals(1, stats.getLateExecutionCount());
+
+        stats.checkDeadline("b", 0, 1);
+        assertEquals(2, stats.getLateExecutionCount());
+    }
+}
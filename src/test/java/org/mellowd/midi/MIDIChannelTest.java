@@ -0,0 +1,196 @@
+package org.mellowd.midi;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.intermediate.Phrase;
+import org.mellowd.primitives.Beat;
+import org.mellowd.primitives.Dynamic;
+import org.mellowd.primitives.Melody;
+import org.mellowd.primitives.Pitch;
+import org.mellowd.primitives.Rhythm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class MIDIChannelTest {
+    private static final TimingEnvironment TIMING = new TimingEnvironment(4, 4, 120);
+
+    private static MIDIChannel newChannel() {
+        return new MIDIChannel(new MIDITrack("test"), false, 0, TIMING);
+    }
+
+    private static Phrase phrase(Pitch[] pitches, Beat... beats) {
+        Melody melody = new Melody();
+        for (Pitch pitch : pitches)
+            melody.append(pitch);
+        Rhythm rhythm = new Rhythm();
+        for (Beat beat : beats)
+            rhythm.append(beat);
+        return new Phrase(melody, rhythm);
+    }
+
+    private static List<String> events(MIDITrack track) {
+        List<String> events = new ArrayList<>();
+        track.forEach(event -> events.add(event.getTick() + ":" + Arrays.toString(event.getMessage().getMessage())));
+        return events;
+    }
+
+    // Play the phrase `times` times with and without repeat and check the tracks are the same
+    private static int assertRepeatMatchesLoop(Phrase phrase, int times, Phrase after) {
+        MIDIChannel looped = newChannel();
+        for (int i = 0; i < times; i++)
+            phrase.play(looped);
+        after.play(looped);
+
+        MIDIChannel repeated = newChannel();
+        AtomicInteger iterations = new AtomicInteger();
+        repeated.repeat(times, () -> {
+            iterations.incrementAndGet();
+            phrase.play(repeated);
+        });
+        after.play(repeated);
+
+        assertEquals(looped.getStateTime(), repeated.getStateTime());
+        assertEquals(events(looped.getTrack()), events(repeated.getTrack()));
+        return iterations.get();
+    }
+
+    @Test
+    public void repeatCopiesSteadyIterations() throws Exception {
+        Phrase beat = phrase(new Pitch[]{ Pitch.C, Pitch.D, Pitch.E }, Beat.QUARTER(), Beat.EIGHTH(), Beat.EIGHTH());
+        Phrase after = phrase(new Pitch[]{ Pitch.G }, Beat.HALF());
+
+        int iterations = assertRepeatMatchesLoop(beat, 64, after);
+        assertEquals("Steady iterations were not copied", 2, iterations);
+    }
+
+    @Test
+    public void repeatWithSlursMatchesLoop() throws Exception {
+        Phrase slurred = phrase(new Pitch[]{ Pitch.C, Pitch.C, Pitch.E },
+                new Beat(1, true), new Beat(1, true), Beat.HALF());
+        Phrase after = phrase(new Pitch[]{ Pitch.C }, new Beat(1, true));
+
+        assertRepeatMatchesLoop(slurred, 16, after);
+    }
+
+    @Test
+    public void fewRepetitionsAreRun() throws Exception {
+        Phrase beat = phrase(new Pitch[]{ Pitch.C }, Beat.QUARTER());
+        Phrase after = phrase(new Pitch[]{ Pitch.D }, Beat.QUARTER());
+
+        assertEquals(2, assertRepeatMatchesLoop(beat, 2, after));
+        assertEquals(0, assertRepeatMatchesLoop(beat, 0, after));
+    }
+
+    @Test
+    public void changingIterationIsRun() throws Exception {
+        MIDIChannel channel = newChannel();
+        AtomicInteger iterations = new AtomicInteger();
+        Phrase beat = phrase(new Pitch[]{ Pitch.C }, Beat.QUARTER());
+
+        channel.repeat(10, () -> {
+            iterations.incrementAndGet();
+            channel.changeDynamic(1);
+            beat.play(channel);
+        });
+
+        assertEquals("An iteration that changes the channel must not be copied", 10, iterations.get());
+    }
+
+    // Play copies of the phrases so that nothing can come from a template
+    private static void playFresh(MIDIChannel channel, Phrase... phrases) {
+        for (Phrase phrase : phrases)
+            new Phrase(phrase.getMelody(), phrase.getRhythm()).play(channel);
+    }
+
+    @Test
+    public void templateMatchesRendering() throws Exception {
+        Phrase beat = phrase(new Pitch[]{ Pitch.C, Pitch.D, Pitch.E }, Beat.QUARTER(), Beat.EIGHTH(), Beat.EIGHTH());
+        Phrase slurred = phrase(new Pitch[]{ Pitch.E, Pitch.E, Pitch.G },
+                new Beat(1, true), new Beat(1, true), new Beat(1, true));
+        Phrase[] song = { beat, beat, slurred, slurred, beat, slurred, beat, beat };
+
+        MIDIChannel rendered = newChannel();
+        MIDIChannel templated = newChannel();
+        for (int i = 0; i < song.length; i++) {
+            if (i == 5) {
+                rendered.setDynamic(Dynamic.ff);
+                templated.setDynamic(Dynamic.ff);
+            }
+            playFresh(rendered, song[i]);
+            song[i].play(templated);
+        }
+
+        assertEquals(rendered.getStateTime(), templated.getStateTime());
+        assertEquals(events(rendered.getTrack()), events(templated.getTrack()));
+    }
+
+    @Test
+    public void templateIsSplicedInEqualState() throws Exception {
+        MIDIChannel channel = newChannel();
+        AtomicInteger renders = new AtomicInteger();
+        Runnable render = () -> {
+            renders.incrementAndGet();
+            channel.playNote(Pitch.C, 0, Beat.QUARTER(), MIDIChannel.DEFAULT_OFF_VELOCITY);
+            channel.stepIntoFuture(Beat.QUARTER());
+        };
+
+        //The first play starts without the note off the rest start with
+        for (int i = 0; i < 6; i++)
+            channel.playTemplate(render, render);
+        assertEquals(2, renders.get());
+
+        channel.setOctaveShift(1);
+        channel.playTemplate(render, render);
+        assertEquals("A template was used in a different state", 3, renders.get());
+    }
+
+    @Test
+    public void pendingActionsAreRendered() throws Exception {
+        MIDIChannel channel = newChannel();
+        AtomicInteger renders = new AtomicInteger();
+        Runnable render = () -> {
+            renders.incrementAndGet();
+            channel.playNote(Pitch.C, 0, Beat.QUARTER(), MIDIChannel.DEFAULT_OFF_VELOCITY);
+            channel.stepIntoFuture(Beat.QUARTER());
+        };
+
+        channel.playTemplate(render, render);
+        channel.doLater(1, () -> channel.setDynamic(Dynamic.p));
+        channel.playTemplate(render, render);
+
+        assertEquals(2, renders.get());
+        assertEquals(Dynamic.p, channel.getDynamic());
+    }
+
+    @Test
+    public void slurredNoteRemovesNoteOff() throws Exception {
+        MIDIChannel channel = newChannel();
+        channel.setSlurred(true);
+        channel.playNote(Pitch.C, 0, 10, MIDIChannel.DEFAULT_OFF_VELOCITY);
+        channel.stepIntoFuture(10);
+        channel.playNote(Pitch.C, 0, 10, MIDIChannel.DEFAULT_OFF_VELOCITY);
+        channel.stepIntoFuture(10);
+
+        //The note off between the two slurred notes is gone
+        List<String> events = events(channel.getTrack());
+        assertEquals(3, events.size());
+        assertTrue(events.get(0).startsWith("0:"));
+        assertTrue(events.get(1).startsWith("10:"));
+        assertTrue(events.get(2).startsWith("20:"));
+        assertEquals(20, channel.getTrack().lastNonMetaEventTime());
+    }
+
+    @Test(expected = MidiRuntimeException.class)
+    public void invalidOffVelocityIsRejected() throws Exception {
+        MIDIChannel channel = newChannel();
+        channel.playNote(Pitch.C, 0, 10, 200);
+        channel.stepIntoFuture(10);
+    }
+}
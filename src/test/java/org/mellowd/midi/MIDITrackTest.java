@@ -0,0 +1,150 @@
+package org.mellowd.midi;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class MIDITrackTest {
+    private static MidiEvent noteOn(int pitch, long tick) throws Exception {
+        return new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, pitch, 100), tick);
+    }
+
+    private static List<String> events(MIDITrack track) {
+        List<String> events = new ArrayList<>();
+        track.forEach(event -> events.add(event.getTick() + ":" + event.getMessage().getStatus()
+                + ":" + (event.getMessage().getLength() > 1 ? event.getMessage().getMessage()[1] : -1)));
+        return events;
+    }
+
+    @Test
+    public void eventsAreReadInOrder() throws Exception {
+        MIDITrack track = new MIDITrack("test");
+        //Enough events to merge more than one run
+        for (int i = 0; i < 100; i++)
+            track.add(noteOn(i, (i * 37) % 50));
+        track.add(noteOn(100, 10));
+
+        List<Long> ticks = new ArrayList<>();
+        List<Integer> pitches = new ArrayList<>();
+        track.forEach(event -> {
+            ticks.add(event.getTick());
+            pitches.add(((ShortMessage) event.getMessage()).getData1());
+        });
+
+        assertEquals(101, ticks.size());
+        for (int i = 1; i < ticks.size(); i++)
+            assertTrue(ticks.get(i - 1) <= ticks.get(i));
+
+        //Events at the same tick stay in the order they were added
+        int first = ticks.indexOf(10L);
+        assertEquals(30, (int) pitches.get(first));
+        assertEquals(80, (int) pitches.get(first + 1));
+        assertEquals(100, (int) pitches.get(first + 2));
+
+        assertEquals(0, track.startTimeStamp());
+        assertEquals(49, track.endTimeStamp());
+        assertEquals(49, track.lastNonMetaEventTime());
+    }
+
+    @Test
+    public void packedAddMatchesEventAdd() throws Exception {
+        MIDITrack packed = new MIDITrack("packed");
+        MIDITrack events = new MIDITrack("events");
+
+        packed.add(5, ShortMessage.NOTE_ON | 3, 60, 90);
+        events.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 3, 60, 90), 5));
+        packed.add(2, ShortMessage.PROGRAM_CHANGE | 3, 10, 0);
+        events.add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE, 3, 10, 0), 2));
+
+        assertEquals(events(events), events(packed));
+    }
+
+    @Test
+    public void metaMessagesAreKept() throws Exception {
+        MIDITrack track = new MIDITrack("test");
+        MetaMessage tempo = new MetaMessage(0x51, new byte[]{ 0x07, (byte) 0xA1, 0x20 }, 3);
+        track.add(noteOn(60, 0));
+        track.add(new MidiEvent(tempo, 20));
+
+        List<MidiMessage> messages = new ArrayList<>();
+        track.forEach(event -> messages.add(event.getMessage()));
+        assertSame(tempo, messages.get(1));
+        assertEquals(20, track.endTimeStamp());
+        assertEquals(0, track.lastNonMetaEventTime());
+
+        track.remove(new MidiEvent(tempo, 20));
+        assertEquals(1, track.size());
+    }
+
+    @Test
+    public void removeUpdatesTimes() throws Exception {
+        MIDITrack track = new MIDITrack("test");
+        track.add(noteOn(60, 0));
+        track.add(noteOn(61, 8));
+        track.add(noteOn(62, 4));
+
+        track.remove(noteOn(61, 8));
+        assertEquals(2, track.size());
+        assertEquals(4, track.endTimeStamp());
+        assertEquals(4, track.lastNonMetaEventTime());
+
+        //Removing an event that is not in the track does nothing
+        track.remove(noteOn(61, 4));
+        assertEquals(2, track.size());
+    }
+
+    @Test
+    public void rangeIsOffsetIntoLoop() throws Exception {
+        MIDITrack track = new MIDITrack("test");
+        track.add(noteOn(60, 0));
+        track.add(noteOn(61, 5));
+        track.add(noteOn(62, 10));
+
+        List<Long> ticks = new ArrayList<>();
+        track.forEachInRange(12, 18, (message, tick) -> ticks.add(tick));
+
+        assertEquals(1, ticks.size());
+        assertEquals(15L, (long) ticks.get(0));
+    }
+
+    @Test
+    public void cancelledEventsAreDropped() throws Exception {
+        MIDITrack track = new MIDITrack("test");
+        track.add(noteOn(60, 0));
+        long handle = track.addCancellable(10, ShortMessage.NOTE_OFF, 60, 64);
+        assertEquals(10, track.lastNonMetaEventTime());
+
+        track.cancel(handle, 10, ShortMessage.NOTE_OFF, 60, 64);
+        assertEquals(1, track.size());
+        assertEquals(0, track.lastNonMetaEventTime());
+        assertEquals(0, track.endTimeStamp());
+    }
+
+    @Test
+    public void staleHandleFallsBackToRemove() throws Exception {
+        MIDITrack track = new MIDITrack("test");
+        long handle = track.addCancellable(10, ShortMessage.NOTE_OFF, 60, 64);
+        track.add(noteOn(61, 10));
+        track.add(noteOn(62, 5));
+
+        //Reading sorts the events and moves the note off
+        assertEquals(10, track.endTimeStamp());
+        track.cancel(handle, 10, ShortMessage.NOTE_OFF, 60, 64);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("5:" + ShortMessage.NOTE_ON + ":62");
+        expected.add("10:" + ShortMessage.NOTE_ON + ":61");
+        assertEquals(expected, events(track));
+        assertEquals(10, track.lastNonMetaEventTime());
+    }
+}
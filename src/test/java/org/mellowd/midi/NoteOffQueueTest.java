@@ -0,0 +1,51 @@
+package org.mellowd.midi;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class NoteOffQueueTest {
+    @Test
+    public void noteOffsComeOutInOrder() throws Exception {
+        NoteOffQueue queue = new NoteOffQueue();
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++)
+            queue.add(random.nextInt(50), i % 128, i / 128);
+
+        assertEquals(500, queue.size());
+        long lastTick = Long.MIN_VALUE;
+        int lastAdded = -1;
+        while (!queue.isEmpty()) {
+            long tick = queue.peekTick();
+            int added = queue.peekVelocity() * 128 + queue.peekPitch();
+            assertTrue(tick >= lastTick);
+            //Note offs at the same tick come out in the order they were added
+            if (tick == lastTick)
+                assertTrue(added > lastAdded);
+            lastTick = tick;
+            lastAdded = added;
+            queue.remove();
+        }
+    }
+
+    @Test
+    public void relativeArrayRoundTrips() throws Exception {
+        NoteOffQueue queue = new NoteOffQueue();
+        queue.add(30, 60, 96);
+        queue.add(10, 64, 80);
+        queue.add(10, 67, 200);
+
+        long[] relative = queue.toRelativeArray(10);
+        assertArrayEquals(new long[]{ 0, 64, 80, 0, 67, 200, 20, 60, 96 }, relative);
+
+        NoteOffQueue copy = new NoteOffQueue();
+        copy.addRelativeArray(relative, 100);
+        copy.shift(-50);
+        assertArrayEquals(relative, copy.toRelativeArray(50));
+    }
+}
@@ -0,0 +1,82 @@
+package org.mellowd.midi;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mellowd.primitives.Beat;
+import org.mellowd.primitives.Pitch;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class StandardMIDIFileWriterTest {
+    private static final TimingEnvironment TIMING = new TimingEnvironment(3, 4, 100);
+
+    private static void assertSameAsMidiSystem(MIDISequence sequence) throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        MidiSystem.write(sequence.toSequence(), 1, expected);
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        new StandardMIDIFileWriter(sequence).write(Channels.newChannel(written));
+
+        assertArrayEquals(expected.toByteArray(), written.toByteArray());
+    }
+
+    @Test
+    public void matchesMidiSystem() throws Exception {
+        MIDISequence sequence = new MIDISequence(TIMING);
+
+        MIDIChannel melody = new MIDIChannel(sequence.getOrCreateTrack("melody"), false, 0, TIMING);
+        melody.changeInstrument(40, 0);
+        melody.playNote(Pitch.C, 0, Beat.QUARTER(), MIDIChannel.DEFAULT_OFF_VELOCITY);
+        melody.stepIntoFuture(Beat.QUARTER());
+        melody.setSlurred(true);
+        for (int i = 0; i < 4; i++) {
+            melody.playNote(Pitch.E, 0, Beat.EIGHTH(), MIDIChannel.DEFAULT_OFF_VELOCITY);
+            melody.stepIntoFuture(Beat.EIGHTH());
+        }
+        melody.setPitchBend(GeneralMidiConstants.NO_PITCH_BEND + 100);
+        melody.stepIntoFuture(Beat.WHOLE());
+
+        MIDITrack drums = sequence.getOrCreateTrack("drums");
+        drums.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 9, 36, 100), 960));
+        drums.add(new MidiEvent(new SysexMessage(new byte[]{ (byte) SysexMessage.SYSTEM_EXCLUSIVE, 0x7E, 0x7F, 0x09, 0x01, (byte) 0xF7 }, 6), 480));
+        drums.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 9, 36, 0), 1200));
+        //An end of track before the last event is moved to the end
+        drums.add(new MidiEvent(new MetaMessage(0x2F, new byte[0], 0), 1000));
+
+        //An empty track is just its end of track
+        sequence.getOrCreateTrack("empty");
+
+        assertSameAsMidiSystem(sequence);
+    }
+
+    @Test
+    public void endOfTrackExtendsTrack() throws Exception {
+        MIDISequence sequence = new MIDISequence(TIMING);
+        MIDITrack track = sequence.getOrCreateTrack("padded");
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), 0));
+        track.add(new MidiEvent(new MetaMessage(0x2F, new byte[0], 0), 5000));
+
+        assertSameAsMidiSystem(sequence);
+    }
+
+    @Test
+    public void largeTracksAreFlushed() throws Exception {
+        MIDISequence sequence = new MIDISequence(TIMING);
+        MIDITrack track = sequence.getOrCreateTrack("long");
+        //Well over the size of the writer's buffer
+        for (int i = 0; i < 400000; i++)
+            track.add(i * 240L, ShortMessage.NOTE_ON | (i % 16), i % 128, 1 + i % 127);
+
+        assertSameAsMidiSystem(sequence);
+    }
+}